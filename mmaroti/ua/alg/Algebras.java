@@ -5,6 +5,7 @@ package mmaroti.ua.alg;
  */
 
 import java.util.Arrays;
+import org.mmaroti.ua.util.CanonicalForm;
 
 public class Algebras {
 	public static boolean equals(Algebra a, Algebra b) {
@@ -26,4 +27,56 @@ public class Algebras {
 
 		return c;
 	}
+
+	/**
+	 * Returns the canonical form of the algebra, which is equal for
+	 * isomorphic algebras of the same signature.
+	 */
+	public static CanonicalForm canonicalForm(Algebra a) {
+		int size = a.size();
+		Function[] ops = a.operations();
+		Function[] rels = a.relations();
+
+		int[] opArities = new int[ops.length];
+		int[][] opTables = new int[ops.length][];
+		for (int i = 0; i < ops.length; ++i) {
+			opArities[i] = ops[i].arity();
+			opTables[i] = table(ops[i], size);
+		}
+
+		int[] relArities = new int[rels.length];
+		int[][] relTables = new int[rels.length][];
+		for (int i = 0; i < rels.length; ++i) {
+			relArities[i] = rels[i].arity();
+			relTables[i] = table(rels[i], size);
+		}
+
+		return new CanonicalForm(size, opArities, opTables, relArities,
+				relTables);
+	}
+
+	public static boolean isomorphic(Algebra a, Algebra b) {
+		return a.size() == b.size()
+				&& a.operations().length == b.operations().length
+				&& a.relations().length == b.relations().length
+				&& canonicalForm(a).equals(canonicalForm(b));
+	}
+
+	private static int[] table(Function f, int size) {
+		int[] args = new int[f.arity()];
+		int length = 1;
+		for (int i = 0; i < args.length; ++i)
+			length *= size;
+
+		int[] table = new int[length];
+		for (int j = 0; j < length; ++j) {
+			table[j] = f.value(args);
+
+			int i = args.length;
+			while (--i >= 0 && ++args[i] >= size)
+				args[i] = 0;
+		}
+
+		return table;
+	}
 }
@@ -33,9 +33,41 @@ public class ComplexProdAlgebra {
 	}
 
 	protected DecisionDiagram.Node[] nodePair;
+	protected DecisionDiagram.Node[] nodeSingle;
 	protected DecisionDiagram.Node[] subNodes;
 
-	protected SoftArrayHashMap<DecisionDiagram.Node, DecisionDiagram.Node> unionCache;
+	/**
+	 * The results of union, intersection, complement and the operations of
+	 * all levels are cached in a single computed table shared by the levels.
+	 * The operation ids are {@link #UNION}, {@link #INTERSECTION},
+	 * {@link #COMPLEMENT}, {@link #DIFFERENCE} and {@link #OPERATION} plus
+	 * the operation index.
+	 */
+	public static final int CACHE_SIZE = 1 << 18;
+
+	protected static final int UNION = 0;
+	protected static final int INTERSECTION = 1;
+	protected static final int COMPLEMENT = 2;
+	protected static final int DIFFERENCE = 3;
+	protected static final int OPERATION = 4;
+
+	protected ComputedTable<DecisionDiagram.Node> cache;
+
+	public ComputedTable<DecisionDiagram.Node> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Replaces the computed table of this level and the levels below it with
+	 * an empty one of the given size.
+	 */
+	public void setCacheSize(int size) {
+		ComputedTable<DecisionDiagram.Node> table = new ComputedTable<DecisionDiagram.Node>(
+				size, cache.getKeyLength());
+
+		for (ComplexProdAlgebra p = this; p.next != null; p = p.next)
+			p.cache = table;
+	}
 
 	public DecisionDiagram.Node union(DecisionDiagram.Node a,
 			DecisionDiagram.Node b) {
@@ -48,7 +80,7 @@ public class ComplexProdAlgebra {
 
 		nodePair[0] = a;
 		nodePair[1] = b;
-		DecisionDiagram.Node ret = unionCache.get(nodePair);
+		DecisionDiagram.Node ret = cache.get(UNION, nodePair);
 		if (ret != null)
 			return ret;
 
@@ -59,13 +91,11 @@ public class ComplexProdAlgebra {
 			subNodes[i] = next.union(as[i], bs[i]);
 
 		ret = diagram.canonicalize(subNodes);
-		unionCache.put(nodePair.clone(), ret);
+		cache.put(UNION, nodePair, ret);
 
 		return ret;
 	}
 
-	protected SoftArrayHashMap<DecisionDiagram.Node, DecisionDiagram.Node> intersectionCache;
-
 	public DecisionDiagram.Node intersection(DecisionDiagram.Node a,
 			DecisionDiagram.Node b) {
 		if (a == fullSet || a == b)
@@ -77,7 +107,7 @@ public class ComplexProdAlgebra {
 
 		nodePair[0] = a;
 		nodePair[1] = b;
-		DecisionDiagram.Node ret = intersectionCache.get(nodePair);
+		DecisionDiagram.Node ret = cache.get(INTERSECTION, nodePair);
 		if (ret != null)
 			return ret;
 
@@ -87,20 +117,19 @@ public class ComplexProdAlgebra {
 			subNodes[i] = next.intersection(as[i], bs[i]);
 
 		ret = diagram.canonicalize(subNodes);
-		intersectionCache.put(nodePair.clone(), ret);
+		cache.put(INTERSECTION, nodePair, ret);
 
 		return ret;
 	}
 
-	protected SoftHashMap<DecisionDiagram.Node, DecisionDiagram.Node> complementCache;
-
 	public DecisionDiagram.Node complement(DecisionDiagram.Node a) {
 		if (a == emptySet)
 			return fullSet;
 		else if (a == fullSet)
 			return emptySet;
 
-		DecisionDiagram.Node ret = complementCache.get(a);
+		nodeSingle[0] = a;
+		DecisionDiagram.Node ret = cache.get(COMPLEMENT, nodeSingle);
 		if (ret != null)
 			return ret;
 
@@ -109,7 +138,37 @@ public class ComplexProdAlgebra {
 			subNodes[i] = next.complement(as[i]);
 
 		ret = diagram.canonicalize(subNodes);
-		complementCache.put(a, ret);
+		cache.put(COMPLEMENT, nodeSingle, ret);
+
+		return ret;
+	}
+
+	/**
+	 * Returns the set of elements of <code>a</code> that are not in
+	 * <code>b</code>.
+	 */
+	public DecisionDiagram.Node difference(DecisionDiagram.Node a,
+			DecisionDiagram.Node b) {
+		if (a == emptySet || b == fullSet || a == b)
+			return emptySet;
+		else if (b == emptySet)
+			return a;
+		else if (a == fullSet)
+			return complement(b);
+
+		nodePair[0] = a;
+		nodePair[1] = b;
+		DecisionDiagram.Node ret = cache.get(DIFFERENCE, nodePair);
+		if (ret != null)
+			return ret;
+
+		DecisionDiagram.Node[] as = a.subNodes;
+		DecisionDiagram.Node[] bs = b.subNodes;
+		for (int i = 0; i < algebraSize; ++i)
+			subNodes[i] = next.difference(as[i], bs[i]);
+
+		ret = diagram.canonicalize(subNodes);
+		cache.put(DIFFERENCE, nodePair, ret);
 
 		return ret;
 	}
@@ -194,6 +253,7 @@ public class ComplexProdAlgebra {
 	protected class Op extends Arg {
 		protected Function operation;
 		protected Op nextOp;
+		protected int opId;
 
 		public Op() {
 			super(0);
@@ -204,11 +264,9 @@ public class ComplexProdAlgebra {
 
 			operation = algebra.operations()[opIndex];
 			nextOp = next.operations[opIndex];
-			valueCache = new SoftArrayHashMap<DecisionDiagram.Node, DecisionDiagram.Node>();
+			opId = OPERATION + opIndex;
 		}
 
-		protected SoftArrayHashMap<DecisionDiagram.Node, DecisionDiagram.Node> valueCache;
-
 		public DecisionDiagram.Node value(DecisionDiagram.Node[] args) {
 			if (next == null) {
 				int i = args.length;
@@ -219,7 +277,7 @@ public class ComplexProdAlgebra {
 				return fullSet;
 			}
 
-			DecisionDiagram.Node ret = valueCache.get(args);
+			DecisionDiagram.Node ret = cache.get(opId, args);
 			if (ret != null)
 				return ret;
 
@@ -239,7 +297,7 @@ public class ComplexProdAlgebra {
 				} while (next());
 
 			ret = diagram.canonicalize(subNodes);
-			valueCache.put(args.clone(), ret);
+			cache.put(opId, args, ret);
 
 			return ret;
 		}
@@ -292,57 +350,134 @@ public class ComplexProdAlgebra {
 		return node;
 	}
 
-	public DecisionDiagram.Node closure2(DecisionDiagram.Node a) {
-		if (next == null)
-			return a;
+	/**
+	 * Receives the progress of {@link ComplexProdAlgebra#closure}.
+	 */
+	public interface ClosureListener {
+		/**
+		 * Called after the operation of the given index was applied, with the
+		 * closure computed so far.
+		 */
+		public void closureStep(int step, int opIndex,
+				DecisionDiagram.Node closure);
+	}
 
-		DecisionDiagram.Node old;
-		do {
-			old = a;
+	protected ClosureListener closureListener;
 
-			for (int i = 0; i < operations.length; ++i) {
-				DecisionDiagram.Node[] args = new DecisionDiagram.Node[operations[i].operation
-						.arity()];
-				for (int j = 0; j < args.length; ++j)
-					args[j] = a;
+	public void setClosureListener(ClosureListener closureListener) {
+		this.closureListener = closureListener;
+	}
 
-				a = union(a, operations[i].value(args));
-			}
-		} while (old != a);
+	/**
+	 * An operation is applied only to the tuples containing a new element if
+	 * the new elements are at most this fraction of the set. For larger
+	 * frontiers the diagram of the frontier is usually not smaller than that
+	 * of the whole set, so the operation is applied to the whole set.
+	 */
+	protected static final int FRONTIER_RATIO = 16;
+
+	/**
+	 * Returns the values of the operation on the tuples of <code>all</code>
+	 * that contain an element not in <code>old</code>, or possibly on all
+	 * tuples of <code>all</code>. If the first new element of a tuple is at
+	 * coordinate <code>j</code>, then the coordinates before it are in
+	 * <code>old</code>, so the tuples are split by <code>j</code>.
+	 */
+	protected DecisionDiagram.Node image(Op op, DecisionDiagram.Node old,
+			DecisionDiagram.Node all) {
+		DecisionDiagram.Node[] args = new DecisionDiagram.Node[op.operation
+				.arity()];
+		if (args.length == 0 || old == emptySet
+				|| FRONTIER_RATIO * ((long) all.count - old.count) > all.count) {
+			for (int i = 0; i < args.length; ++i)
+				args[i] = all;
+			return op.value(args);
+		}
 
-		return a;
+		DecisionDiagram.Node frontier = difference(all, old);
+
+		DecisionDiagram.Node ret = emptySet;
+		for (int j = 0; j < args.length; ++j) {
+			for (int i = 0; i < args.length; ++i)
+				args[i] = i < j ? old : i == j ? frontier : all;
+
+			ret = union(ret, op.value(args));
+		}
+
+		return ret;
 	}
 
+	/**
+	 * Returns the closure of the given set under the operations. Every
+	 * operation is applied repeatedly until it adds nothing, and then the
+	 * next one. An operation is applied only to the tuples that contain an
+	 * element added since its previous application, if there are few of
+	 * them, and the closure is found when no operation adds anything.
+	 */
 	public DecisionDiagram.Node closure(DecisionDiagram.Node a) {
 		if (next == null)
 			return a;
 
+		// the set each operation was last applied to
+		DecisionDiagram.Node[] done = new DecisionDiagram.Node[operations.length];
+
+		int step = 0;
 		int index = 0;
 		int completed = 0;
 		while (completed < operations.length) {
-			for (;;) {
-				DecisionDiagram.Node[] args = new DecisionDiagram.Node[operations[index].operation
-						.arity()];
+			if (done[index] != a) {
+				DecisionDiagram.Node old = done[index] != null ? done[index]
+						: emptySet;
+				done[index] = a;
+				a = union(a, image(operations[index], old, a));
+
+				if (closureListener != null)
+					closureListener.closureStep(++step, index, a);
+			}
+
+			if (done[index] == a) {
+				++completed;
+				if (++index >= operations.length)
+					index = 0;
+			} else
+				completed = 0;
+		}
+
+		return a;
+	}
 
-				for (int j = 0; j < args.length; ++j)
-					args[j] = a;
+	/**
+	 * Returns the closure of the given set under the operations, as
+	 * {@link #closure(DecisionDiagram.Node)} does, but the operations are
+	 * applied once each in turn. Every operation is applied only to the
+	 * tuples that contain an element added since its previous application, if
+	 * there are few of them.
+	 */
+	public DecisionDiagram.Node closure2(DecisionDiagram.Node a) {
+		if (next == null)
+			return a;
 
-				DecisionDiagram.Node old = a;
-				a = union(a, operations[index].value(args));
-				System.out.println("closure size: " + a.count);
+		// the set each operation was last applied to
+		DecisionDiagram.Node[] done = new DecisionDiagram.Node[operations.length];
 
-				if (old == a)
-					break;
+		int step = 0;
+		DecisionDiagram.Node old;
+		do {
+			old = a;
 
-				completed = 0;
-			}
-			;
+			for (int i = 0; i < operations.length; ++i) {
+				if (done[i] == a)
+					continue;
 
-			++completed;
-			if (++index >= operations.length)
-				index = 0;
-		}
-		;
+				DecisionDiagram.Node applied = done[i] != null ? done[i]
+						: emptySet;
+				done[i] = a;
+				a = union(a, image(operations[i], applied, a));
+
+				if (closureListener != null)
+					closureListener.closureStep(++step, i, a);
+			}
+		} while (old != a);
 
 		return a;
 	}
@@ -376,11 +511,18 @@ public class ComplexProdAlgebra {
 		diagram = new DecisionDiagram();
 
 		nodePair = new DecisionDiagram.Node[2];
+		nodeSingle = new DecisionDiagram.Node[1];
 		subNodes = new DecisionDiagram.Node[algebraSize];
 
-		unionCache = new SoftArrayHashMap<DecisionDiagram.Node, DecisionDiagram.Node>();
-		intersectionCache = new SoftArrayHashMap<DecisionDiagram.Node, DecisionDiagram.Node>();
-		complementCache = new SoftHashMap<DecisionDiagram.Node, DecisionDiagram.Node>();
+		cache = next.cache;
+		if (cache == null) {
+			int keyLength = 2;
+			for (Function op : algebra.operations())
+				keyLength = Math.max(keyLength, op.arity());
+
+			cache = new ComputedTable<DecisionDiagram.Node>(CACHE_SIZE,
+					keyLength);
+		}
 
 		for (int i = 0; i < algebraSize; ++i)
 			subNodes[i] = next.emptySet;
@@ -0,0 +1,496 @@
+package mmaroti.ua.alg;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import mmaroti.ua.util.*;
+
+/**
+ * Generates congruences of a finite algebra. The operations are tabulated once,
+ * so every unary polynomial translation <code>x -> f(a1,...,x,...,an)</code>
+ * is a strided slice of a table and is evaluated without allocation. The
+ * pairs waiting to be processed are kept in a primitive queue. Since a pair is
+ * queued only when it merges two blocks, the queue never holds more than
+ * <code>size-1</code> new pairs.
+ */
+public class CongruenceGenerator {
+	/**
+	 * Operations with larger tables are evaluated through
+	 * {@link Function#value(int[])}, which is not thread safe.
+	 */
+	protected static final int MAX_TABLE = 1 << 24;
+
+	protected int size;
+	protected Function[] operations;
+	protected int[][] tables;
+	protected boolean tabulated;
+
+	public CongruenceGenerator(Algebra algebra) {
+		size = algebra.size();
+
+		Function[] ops = algebra.operations();
+		int count = 0;
+		for (int i = 0; i < ops.length; ++i)
+			if (ops[i].arity() > 0)
+				++count;
+
+		operations = new Function[count];
+		tables = new int[count][];
+		tabulated = true;
+
+		count = 0;
+		for (int i = 0; i < ops.length; ++i)
+			if (ops[i].arity() > 0) {
+				operations[count] = ops[i];
+				tables[count] = tabulate(ops[i]);
+				if (tables[count] == null)
+					tabulated = false;
+				++count;
+			}
+	}
+
+	/**
+	 * Returns the table of the operation, with the first argument being the
+	 * most significant, or <code>null</code> if it would be too large.
+	 */
+	protected int[] tabulate(Function op) {
+		int arity = op.arity();
+
+		long length = 1;
+		for (int i = 0; i < arity; ++i) {
+			length *= size;
+			if (length > MAX_TABLE)
+				return null;
+		}
+
+		int[] table = new int[(int) length];
+		int[] args = new int[arity];
+
+		for (int pos = 0; pos < table.length; ++pos) {
+			table[pos] = op.value(args);
+
+			int i = arity;
+			while (--i >= 0 && ++args[i] >= size)
+				args[i] = 0;
+		}
+
+		return table;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The state of a single generation, one per thread.
+	 */
+	protected class Worker {
+		protected Equivalence equ = Equivalence.zero(size);
+		protected int[] queue = new int[16];
+		protected int head;
+		protected int tail;
+		protected int[] args = new int[0];
+
+		/**
+		 * The running meet of {@link CongruenceGenerator#monolith()}.
+		 */
+		protected Equivalence meet;
+
+		protected void push(int a, int b) {
+			if (tail + 2 > queue.length) {
+				int[] q = new int[Math.max(2 * (tail - head) + 2, 16)];
+				System.arraycopy(queue, head, q, 0, tail - head);
+				queue = q;
+				tail -= head;
+				head = 0;
+			}
+
+			queue[tail++] = a;
+			queue[tail++] = b;
+		}
+
+		/**
+		 * The nontrivial pairs of the principal congruences computed so far,
+		 * indexed by {@link CongruenceGenerator#pairIndex(int, int)}, or
+		 * <code>null</code>.
+		 */
+		protected AtomicReferenceArray<int[]> known;
+
+		/**
+		 * Merges the blocks of <code>c</code> and <code>d</code>. If
+		 * <code>Cg(c,d)</code> is already known, then all of its pairs are
+		 * joined and nothing is queued, since it is closed under the
+		 * translations.
+		 */
+		protected final void join(int c, int d) {
+			if (c != d && equ.join(c, d)) {
+				int[] pairs = known == null ? null : known.get(c < d ? pairIndex(
+						c, d) : pairIndex(d, c));
+
+				if (pairs == null)
+					push(c, d);
+				else
+					for (int i = 0; i < pairs.length; i += 2)
+						equ.join(pairs[i], pairs[i + 1]);
+			}
+		}
+
+		/**
+		 * Closes the relation under the translations of the queued pairs.
+		 */
+		protected void close() {
+			close(null);
+		}
+
+		/**
+		 * Returns <code>true</code> if every pair of <code>bound</code> is
+		 * already in the generated relation.
+		 */
+		protected boolean contains(Equivalence bound) {
+			if (equ.blockCount() > bound.blockCount())
+				return false;
+
+			int[] repr = bound.reprezentation();
+			for (int i = 0; i < repr.length; ++i)
+				if (repr[i] != i && !equ.related(i, repr[i]))
+					return false;
+
+			return true;
+		}
+
+		/**
+		 * Closes the relation under the translations of the queued pairs, but
+		 * stops early and returns <code>false</code> as soon as the relation
+		 * contains <code>bound</code>, if that is not <code>null</code>.
+		 */
+		protected boolean close(Equivalence bound) {
+			while (head < tail) {
+				if (bound != null && contains(bound)) {
+					head = 0;
+					tail = 0;
+					return false;
+				}
+
+				int a = queue[head++];
+				int b = queue[head++];
+
+				for (int i = 0; i < operations.length; ++i) {
+					if (tables[i] != null)
+						closeTable(tables[i], operations[i].arity(), a, b);
+					else
+						closeFunction(operations[i], a, b);
+				}
+			}
+
+			head = 0;
+			tail = 0;
+			return bound == null || !contains(bound);
+		}
+
+		protected void closeTable(int[] table, int arity, int a, int b) {
+			int stride = table.length / size;
+			for (int j = 0; j < arity; ++j) {
+				int block = stride * size;
+				int sa = a * stride;
+				int sb = b * stride;
+
+				for (int hi = 0; hi < table.length; hi += block)
+					for (int o = hi; o < hi + stride; ++o)
+						join(table[o + sa], table[o + sb]);
+
+				stride /= size;
+			}
+		}
+
+		protected void closeFunction(Function op, int a, int b) {
+			int arity = op.arity();
+			if (args.length != arity)
+				args = new int[arity];
+
+			for (int j = 0; j < arity; ++j) {
+				UnaryPolArgument arg = new UnaryPolArgument(args, size, j);
+				if (arg.first())
+					do {
+						args[j] = a;
+						int c = op.value(args);
+
+						args[j] = b;
+						int d = op.value(args);
+
+						join(c, d);
+					} while (arg.next());
+			}
+		}
+
+		/**
+		 * Returns the congruence generated by the given pairs, stored as
+		 * consecutive elements of the array.
+		 */
+		public Equivalence generate(int[] pairs) {
+			equ.setZero();
+
+			for (int i = 0; i + 1 < pairs.length; i += 2)
+				join(pairs[i], pairs[i + 1]);
+
+			close();
+			return (Equivalence) equ.clone();
+		}
+
+		public Equivalence generate(int a, int b) {
+			equ.setZero();
+			join(a, b);
+			close();
+			return (Equivalence) equ.clone();
+		}
+
+		/**
+		 * Replaces <code>meet</code> with its intersection with
+		 * <code>Cg(a,b)</code>. The generation is abandoned as soon as it
+		 * contains <code>meet</code>, since then the meet does not change.
+		 */
+		public void meet(int a, int b) {
+			equ.setZero();
+			join(a, b);
+			if (close(meet))
+				meet.meet(equ);
+		}
+	}
+
+	/**
+	 * Returns the congruence generated by the given pairs, stored as
+	 * consecutive elements of the array.
+	 */
+	public Equivalence congruence(int[] pairs) {
+		return new Worker().generate(pairs);
+	}
+
+	/**
+	 * Returns the principal congruence generated by the pair
+	 * <code>(a,b)</code>.
+	 */
+	public Equivalence congruence(int a, int b) {
+		return new Worker().generate(a, b);
+	}
+
+	/**
+	 * Below this number of pairs the principal congruences are computed on the
+	 * calling thread.
+	 */
+	protected static final long PARALLEL_PAIRS = 1024;
+
+	/**
+	 * Returns the number of pairs from which on the pairs are processed on
+	 * the shared pool. The operations that could not be tabulated are not
+	 * thread safe, so they are always processed on the calling thread.
+	 */
+	protected long parallelThreshold() {
+		return tabulated ? PARALLEL_PAIRS : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the index of the pair <code>(a,b)</code>, where
+	 * <code>a &lt; b</code>, in the list of all pairs ordered by
+	 * <code>b</code> and then by <code>a</code>.
+	 */
+	public static int pairIndex(int a, int b) {
+		return b * (b - 1) / 2 + a;
+	}
+
+	/**
+	 * Returns the larger element of the pair with the given index, see
+	 * {@link #pairIndex(int, int)}.
+	 */
+	public static int pairSecond(long index) {
+		int b = (int) ((1 + Math.sqrt(1 + 8.0 * index)) / 2);
+		while ((long) b * (b - 1) / 2 > index)
+			--b;
+		while ((long) (b + 1) * b / 2 <= index)
+			++b;
+		return b;
+	}
+
+	/**
+	 * Returns the smaller element of the pair with the given index, see
+	 * {@link #pairIndex(int, int)}.
+	 */
+	public static int pairFirst(long index) {
+		int b = pairSecond(index);
+		return (int) (index - (long) b * (b - 1) / 2);
+	}
+
+	/**
+	 * Runs the given task on all pairs <code>a &lt; b</code> on the shared
+	 * pool, see {@link Parallel}, until the task returns <code>false</code>.
+	 * Every worker has its own {@link Worker}.
+	 */
+	protected void forAllPairs(final PairTask task) {
+		long total = (long) size * (size - 1) / 2;
+
+		Parallel.forEach(total, parallelThreshold(), new Parallel.Factory() {
+			@Override
+			public Parallel.Body create() {
+				final Worker worker = new Worker();
+				return new Parallel.Body() {
+					@Override
+					public boolean run(long index) {
+						int b = pairSecond(index);
+						int a = (int) (index - (long) b * (b - 1) / 2);
+						return task.run(worker, a, b);
+					}
+				};
+			}
+		});
+	}
+
+	protected interface PairTask {
+		public boolean run(Worker worker, int a, int b);
+	}
+
+	/**
+	 * Returns all principal congruences <code>Cg(a,b)</code> with
+	 * <code>a &lt; b</code>, indexed by {@link #pairIndex(int, int)}. They
+	 * are computed in parallel.
+	 */
+	public Equivalence[] principalCongruences() {
+		final Equivalence[] congruences = new Equivalence[size * (size - 1) / 2];
+
+		forAllPairs(new PairTask() {
+			@Override
+			public boolean run(Worker worker, int a, int b) {
+				congruences[pairIndex(a, b)] = worker.generate(a, b);
+				return true;
+			}
+		});
+
+		return congruences;
+	}
+
+	/**
+	 * Returns the distinct principal congruences. Each of them is represented
+	 * by the least index, see {@link #pairIndex(int, int)}, of the pairs
+	 * generating it, and the indices are returned in increasing order. The
+	 * congruences are computed in parallel, but only the distinct ones are
+	 * kept in memory. When a generation reaches a pair whose principal
+	 * congruence is already known, it joins that congruence instead of
+	 * processing the pair.
+	 */
+	public int[] principalPairs() {
+		Principal[] principals = principals();
+
+		int[] pairs = new int[principals.length];
+		for (int i = 0; i < pairs.length; ++i)
+			pairs[i] = principals[i].index;
+
+		return pairs;
+	}
+
+	/**
+	 * Returns the distinct principal congruences in the order of
+	 * {@link #principalPairs()}, together with their nontrivial pairs.
+	 */
+	protected Principal[] principals() {
+		final HashMap<Equivalence, Principal> map = new HashMap<Equivalence, Principal>();
+		final AtomicReferenceArray<int[]> known = new AtomicReferenceArray<int[]>(
+				size * (size - 1) / 2);
+
+		forAllPairs(new PairTask() {
+			@Override
+			public boolean run(Worker worker, int a, int b) {
+				worker.known = known;
+				Equivalence equ = worker.generate(a, b);
+				int index = pairIndex(a, b);
+
+				Principal principal;
+				synchronized (map) {
+					principal = map.get(equ);
+					if (principal == null) {
+						principal = new Principal(equ, index);
+						map.put(equ, principal);
+					} else if (principal.index > index)
+						principal.index = index;
+				}
+
+				known.set(index, principal.pairs);
+				return true;
+			}
+		});
+
+		Principal[] principals = map.values().toArray(
+				new Principal[map.size()]);
+		Arrays.sort(principals, new Comparator<Principal>() {
+			@Override
+			public int compare(Principal a, Principal b) {
+				return a.index < b.index ? -1 : a.index == b.index ? 0 : 1;
+			}
+		});
+
+		return principals;
+	}
+
+	/**
+	 * A distinct principal congruence, its nontrivial pairs
+	 * <code>(i, repr[i])</code> stored as consecutive elements, and the least
+	 * index of the pairs generating it.
+	 */
+	protected static class Principal {
+		protected Equivalence congruence;
+		protected int[] pairs;
+		protected int index;
+
+		public Principal(Equivalence equ, int index) {
+			congruence = equ;
+
+			int[] repr = equ.reprezentation();
+
+			pairs = new int[2 * (repr.length - equ.blockCount())];
+			int c = 0;
+			for (int i = 0; i < repr.length; ++i)
+				if (repr[i] != i) {
+					pairs[c++] = i;
+					pairs[c++] = repr[i];
+				}
+
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Returns the intersection of all nonzero congruences. The principal
+	 * congruences are computed in parallel, and every thread keeps its own
+	 * running meet. A principal congruence is generated only until it contains
+	 * the running meet of its thread, and the computation stops as soon as one
+	 * of the meets becomes the zero relation.
+	 */
+	public Equivalence monolith() {
+		final List<Equivalence> meets = new ArrayList<Equivalence>();
+
+		forAllPairs(new PairTask() {
+			@Override
+			public boolean run(Worker worker, int a, int b) {
+				Equivalence meet = worker.meet;
+				if (meet == null) {
+					meet = worker.meet = Equivalence.one(size);
+					synchronized (meets) {
+						meets.add(meet);
+					}
+				}
+
+				worker.meet(a, b);
+				return meet.blockCount() != size;
+			}
+		});
+
+		Equivalence monolith = Equivalence.one(size);
+		for (Equivalence meet : meets) {
+			monolith.meet(meet);
+			if (monolith.isZero())
+				break;
+		}
+
+		return monolith;
+	}
+}
@@ -0,0 +1,592 @@
+package mmaroti.ua.alg;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.*;
+
+/**
+ * The congruence lattice of a finite algebra. Every congruence is the join of
+ * the join irreducible congruences below it, and these are all principal. So
+ * the lattice is generated from the zero relation by joining with the join
+ * irreducible principal congruences, and the results are deduplicated by
+ * hashing their restricted growth strings.
+ * <p>
+ * The congruences are numbered in the order they are found, starting with
+ * zero. Every congruence is encoded by the bitset of the join irreducibles
+ * below it, so comparisons and meets are bitset operations, and the table of
+ * joins with the join irreducibles gives all joins without touching the
+ * partitions again.
+ */
+public class CongruenceLattice {
+	protected int size;
+
+	/**
+	 * The generating pairs of the join irreducible congruences.
+	 */
+	protected int[] firsts;
+	protected int[] seconds;
+
+	/**
+	 * The nontrivial pairs <code>(i, repr[i])</code> of the join irreducible
+	 * congruences, stored as consecutive elements.
+	 */
+	protected int[][] irreduciblePairs;
+
+	protected int count;
+	protected int[][] partitions;
+	protected long[][] bitsets;
+
+	/**
+	 * The index of the join of every congruence with every join irreducible
+	 * congruence.
+	 */
+	protected int[][] joinIrreducible;
+
+	protected int[][] upperCovers;
+	protected int[][] lowerCovers;
+
+	public CongruenceLattice(Algebra algebra) {
+		this(new CongruenceGenerator(algebra));
+	}
+
+	public CongruenceLattice(CongruenceGenerator generator) {
+		size = generator.size();
+
+		findIrreducibles(generator);
+		generate();
+		findCovers();
+	}
+
+	/**
+	 * Returns the restricted growth string of the equivalence, where the
+	 * blocks are numbered in the order of their least elements.
+	 */
+	public static int[] restrictedGrowthString(Equivalence equ) {
+		int[] repr = equ.reprezentation();
+		int[] rgs = new int[repr.length];
+
+		int blocks = 0;
+		for (int i = 0; i < repr.length; ++i)
+			rgs[i] = repr[i] == i ? blocks++ : rgs[repr[i]];
+
+		return rgs;
+	}
+
+	/**
+	 * Returns the canonical representation of the partition given by its
+	 * restricted growth string.
+	 */
+	protected static int[] canonical(int[] rgs, int[] repr, int[] least) {
+		int blocks = 0;
+		for (int i = 0; i < rgs.length; ++i) {
+			if (rgs[i] == blocks)
+				least[blocks++] = i;
+
+			repr[i] = least[rgs[i]];
+		}
+
+		return repr;
+	}
+
+	/**
+	 * A principal congruence <code>Cg(a,b)</code> is join irreducible if and
+	 * only if <code>(a,b)</code> is not in the join of the principal
+	 * congruences strictly below it. The distinct principal congruences and
+	 * their pairs are taken from the generator, and the join is built from
+	 * the pairs until it relates <code>a</code> and <code>b</code>.
+	 */
+	protected void findIrreducibles(CongruenceGenerator generator) {
+		CongruenceGenerator.Principal[] principals = generator.principals();
+
+		int[] firstOf = new int[principals.length];
+		int[] secondOf = new int[principals.length];
+		for (int i = 0; i < principals.length; ++i) {
+			firstOf[i] = CongruenceGenerator.pairFirst(principals[i].index);
+			secondOf[i] = CongruenceGenerator.pairSecond(principals[i].index);
+		}
+
+		List<CongruenceGenerator.Principal> irreducibles;
+		irreducibles = new ArrayList<CongruenceGenerator.Principal>();
+		Equivalence below = new Equivalence(size);
+		for (int i = 0; i < principals.length; ++i) {
+			Equivalence principal = principals[i].congruence;
+			int a = firstOf[i];
+			int b = secondOf[i];
+
+			below.setZero();
+			for (int j = 0; j < principals.length && !below.related(a, b); ++j)
+				if (j != i && principal.related(firstOf[j], secondOf[j])) {
+					int[] list = principals[j].pairs;
+					for (int k = 0; k < list.length; k += 2)
+						below.join(list[k], list[k + 1]);
+				}
+
+			if (!below.related(a, b))
+				irreducibles.add(principals[i]);
+		}
+
+		firsts = new int[irreducibles.size()];
+		seconds = new int[irreducibles.size()];
+		irreduciblePairs = new int[irreducibles.size()][];
+
+		for (int k = 0; k < firsts.length; ++k) {
+			CongruenceGenerator.Principal principal = irreducibles.get(k);
+			firsts[k] = CongruenceGenerator.pairFirst(principal.index);
+			seconds[k] = CongruenceGenerator.pairSecond(principal.index);
+			irreduciblePairs[k] = principal.pairs;
+		}
+	}
+
+	/**
+	 * A restricted growth string with a cached hash code.
+	 */
+	protected static class Key {
+		protected int[] rgs;
+		protected int hashcode;
+
+		public Key(int[] rgs) {
+			this.rgs = rgs;
+			this.hashcode = Arrays.hashCode(rgs);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return Arrays.equals(rgs, ((Key) o).rgs);
+		}
+	}
+
+	protected HashMap<Key, Integer> indices;
+
+	protected int add(Equivalence equ) {
+		Key key = new Key(restrictedGrowthString(equ));
+		Integer index = indices.get(key);
+		if (index != null)
+			return index.intValue();
+
+		if (count == partitions.length) {
+			int length = 2 * count;
+			partitions = Arrays.copyOf(partitions, length);
+			bitsets = Arrays.copyOf(bitsets, length);
+			joinIrreducible = Arrays.copyOf(joinIrreducible, length);
+		}
+
+		long[] bits = new long[(firsts.length + 63) >> 6];
+		for (int j = 0; j < firsts.length; ++j)
+			if (equ.related(firsts[j], seconds[j]))
+				bits[j >> 6] |= 1L << j;
+
+		partitions[count] = key.rgs;
+		bitsets[count] = bits;
+		indices.put(key, count);
+
+		return count++;
+	}
+
+	/**
+	 * Generates the lattice in breadth first order.
+	 */
+	protected void generate() {
+		partitions = new int[16][];
+		bitsets = new long[16][];
+		joinIrreducible = new int[16][];
+		indices = new HashMap<Key, Integer>();
+
+		Equivalence equ = Equivalence.zero(size);
+		add(equ);
+
+		int[] repr = new int[size];
+		int[] least = new int[size];
+
+		for (int i = 0; i < count; ++i) {
+			int[] joins = new int[firsts.length];
+			canonical(partitions[i], repr, least);
+
+			for (int j = 0; j < firsts.length; ++j) {
+				if (leq(j, bitsets[i])) {
+					joins[j] = i;
+					continue;
+				}
+
+				equ.init(repr);
+				int[] list = irreduciblePairs[j];
+				for (int k = 0; k < list.length; k += 2)
+					equ.join(list[k], list[k + 1]);
+
+				joins[j] = add(equ);
+			}
+
+			joinIrreducible[i] = joins;
+		}
+
+		partitions = Arrays.copyOf(partitions, count);
+		bitsets = Arrays.copyOf(bitsets, count);
+		joinIrreducible = Arrays.copyOf(joinIrreducible, count);
+	}
+
+	protected static boolean leq(int irreducible, long[] bits) {
+		return (bits[irreducible >> 6] & (1L << irreducible)) != 0;
+	}
+
+	protected static int bitCount(long[] bits) {
+		int c = 0;
+		for (int i = 0; i < bits.length; ++i)
+			c += Long.bitCount(bits[i]);
+		return c;
+	}
+
+	/**
+	 * The upper covers of a congruence are the minimal ones among its joins
+	 * with the join irreducibles. The candidates are processed by the number
+	 * of join irreducibles below them, so a candidate is minimal if and only
+	 * if it is not above an upper cover found earlier.
+	 */
+	protected void findCovers() {
+		upperCovers = new int[count][];
+		int[] lowerCount = new int[count];
+		int[] stamp = new int[count];
+
+		for (int i = 0; i < count; ++i) {
+			int[] joins = joinIrreducible[i];
+			stamp[i] = i + 1;
+
+			int[] candidates = new int[joins.length];
+			int c = 0;
+			for (int j = 0; j < joins.length; ++j) {
+				int k = joins[j];
+				if (stamp[k] != i + 1) {
+					stamp[k] = i + 1;
+					candidates[c++] = k;
+				}
+			}
+
+			long[] order = new long[c];
+			for (int l = 0; l < c; ++l)
+				order[l] = ((long) bitCount(bitsets[candidates[l]]) << 32)
+						| candidates[l];
+			Arrays.sort(order);
+
+			int[] covers = new int[c];
+			int d = 0;
+			for (int l = 0; l < c; ++l) {
+				int k = (int) order[l];
+
+				int m = 0;
+				while (m < d && !leq(covers[m], k))
+					++m;
+				if (m == d) {
+					covers[d++] = k;
+					++lowerCount[k];
+				}
+			}
+
+			Arrays.sort(covers, 0, d);
+			upperCovers[i] = Arrays.copyOf(covers, d);
+		}
+
+		lowerCovers = new int[count][];
+		for (int i = 0; i < count; ++i)
+			lowerCovers[i] = new int[lowerCount[i]];
+
+		Arrays.fill(lowerCount, 0);
+		for (int i = 0; i < count; ++i)
+			for (int k : upperCovers[i])
+				lowerCovers[k][lowerCount[k]++] = i;
+	}
+
+	/**
+	 * Returns the number of congruences.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the size of the algebra.
+	 */
+	public int algebraSize() {
+		return size;
+	}
+
+	public Equivalence get(int index) {
+		int[] repr = canonical(partitions[index], new int[size],
+				new int[size]);
+		return new Equivalence(repr);
+	}
+
+	/**
+	 * Returns the index of the given congruence, or <code>-1</code> if it is
+	 * not a congruence.
+	 */
+	public int indexOf(Equivalence equ) {
+		if (equ.size() != size)
+			throw new IllegalArgumentException();
+
+		Integer index = indices.get(new Key(restrictedGrowthString(equ)));
+		return index != null ? index.intValue() : -1;
+	}
+
+	public int zero() {
+		return 0;
+	}
+
+	public int one() {
+		int index = 0;
+		for (int j = 0; j < firsts.length; ++j)
+			index = joinIrreducible[index][j];
+
+		return index;
+	}
+
+	/**
+	 * Returns the indices of the join irreducible congruences.
+	 */
+	public int[] joinIrreducibles() {
+		int[] list = new int[firsts.length];
+		for (int j = 0; j < list.length; ++j)
+			list[j] = joinIrreducible[0][j];
+
+		return list;
+	}
+
+	/**
+	 * Returns the indices of the meet irreducible congruences, which have a
+	 * single upper cover.
+	 */
+	public int[] meetIrreducibles() {
+		int c = 0;
+		for (int i = 0; i < count; ++i)
+			if (upperCovers[i].length == 1)
+				++c;
+
+		int[] list = new int[c];
+		c = 0;
+		for (int i = 0; i < count; ++i)
+			if (upperCovers[i].length == 1)
+				list[c++] = i;
+
+		return list;
+	}
+
+	public int[] upperCovers(int index) {
+		return upperCovers[index].clone();
+	}
+
+	public int[] lowerCovers(int index) {
+		return lowerCovers[index].clone();
+	}
+
+	public boolean leq(int a, int b) {
+		long[] x = bitsets[a];
+		long[] y = bitsets[b];
+
+		for (int i = 0; i < x.length; ++i)
+			if ((x[i] & ~y[i]) != 0)
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Returns the join of the given congruence and the join irreducibles
+	 * whose bits are set.
+	 */
+	protected int join(int index, long[] bits) {
+		for (int i = 0; i < bits.length; ++i) {
+			long w = bits[i];
+			while (w != 0) {
+				int j = (i << 6) + Long.numberOfTrailingZeros(w);
+				w &= w - 1;
+				index = joinIrreducible[index][j];
+			}
+		}
+
+		return index;
+	}
+
+	public int join(int a, int b) {
+		return join(a, bitsets[b]);
+	}
+
+	public int meet(int a, int b) {
+		long[] x = bitsets[a];
+		long[] y = bitsets[b];
+
+		long[] bits = new long[x.length];
+		for (int i = 0; i < bits.length; ++i)
+			bits[i] = x[i] & y[i];
+
+		return join(0, bits);
+	}
+
+	/**
+	 * Returns the table of all joins. The table has <code>size()^2</code>
+	 * entries.
+	 */
+	public int[][] joinTable() {
+		int[][] table = new int[count][count];
+
+		for (int a = 0; a < count; ++a)
+			for (int b = a; b < count; ++b)
+				table[a][b] = table[b][a] = join(a, b);
+
+		return table;
+	}
+
+	/**
+	 * Returns the table of all meets. The table has <code>size()^2</code>
+	 * entries.
+	 */
+	public int[][] meetTable() {
+		int[][] table = new int[count][count];
+
+		for (int a = 0; a < count; ++a)
+			for (int b = a; b < count; ++b)
+				table[a][b] = table[b][a] = meet(a, b);
+
+		return table;
+	}
+
+	/**
+	 * Returns <code>true</code> if the lattice is upper semimodular: if two
+	 * congruences cover their meet, then their join covers both of them.
+	 */
+	public boolean isUpperSemimodular() {
+		for (int i = 0; i < count; ++i) {
+			int[] covers = upperCovers[i];
+
+			for (int k = 0; k < covers.length; ++k)
+				for (int l = k + 1; l < covers.length; ++l) {
+					int j = join(covers[k], covers[l]);
+					if (!covers(covers[k], j) || !covers(covers[l], j))
+						return false;
+				}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the lattice is lower semimodular: if two
+	 * congruences are covered by their join, then both of them cover their
+	 * meet.
+	 */
+	public boolean isLowerSemimodular() {
+		for (int i = 0; i < count; ++i) {
+			int[] covers = lowerCovers[i];
+
+			for (int k = 0; k < covers.length; ++k)
+				for (int l = k + 1; l < covers.length; ++l) {
+					int m = meet(covers[k], covers[l]);
+					if (!covers(m, covers[k]) || !covers(m, covers[l]))
+						return false;
+				}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if <code>b</code> covers <code>a</code>.
+	 */
+	public boolean covers(int a, int b) {
+		return Arrays.binarySearch(upperCovers[a], b) >= 0;
+	}
+
+	/**
+	 * A finite lattice is modular if and only if it is both upper and lower
+	 * semimodular.
+	 */
+	public boolean isModular() {
+		return isUpperSemimodular() && isLowerSemimodular();
+	}
+
+	/**
+	 * A finite lattice is meet semidistributive if and only if for every join
+	 * irreducible <code>j</code> with lower cover <code>j*</code> the set of
+	 * elements above <code>j*</code> but not above <code>j</code> has a
+	 * largest element. This holds if and only if the join of this set is not
+	 * above <code>j</code>.
+	 */
+	public boolean isMeetSemidistributive() {
+		int words = (firsts.length + 63) >> 6;
+
+		for (int j = 0; j < firsts.length; ++j) {
+			int irreducible = joinIrreducible[0][j];
+			int lower = lowerCovers[irreducible][0];
+
+			long[] bits = new long[words];
+			for (int i = 0; i < count; ++i)
+				if (!leq(j, bitsets[i]) && leq(lower, i)) {
+					long[] b = bitsets[i];
+					for (int k = 0; k < words; ++k)
+						bits[k] |= b[k];
+				}
+
+			if (leq(j, bitsets[join(0, bits)]))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Dually, a finite lattice is join semidistributive if and only if for
+	 * every meet irreducible <code>m</code> with upper cover <code>m*</code>
+	 * the set of elements below <code>m*</code> but not below <code>m</code>
+	 * has a least element.
+	 */
+	public boolean isJoinSemidistributive() {
+		int words = (firsts.length + 63) >> 6;
+
+		for (int m : meetIrreducibles()) {
+			int upper = upperCovers[m][0];
+
+			long[] bits = null;
+			for (int i = 0; i < count; ++i)
+				if (leq(i, upper) && !leq(i, m)) {
+					long[] b = bitsets[i];
+					if (bits == null)
+						bits = b.clone();
+					else
+						for (int k = 0; k < words; ++k)
+							bits[k] &= b[k];
+				}
+
+			if (leq(join(0, bits), m))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * A modular lattice is distributive if and only if it does not contain
+	 * <code>M3</code>, which is not meet semidistributive.
+	 */
+	public boolean isDistributive() {
+		return isModular() && isMeetSemidistributive();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+
+		for (int i = 0; i < count; ++i) {
+			s.append(i);
+			s.append(": ");
+			s.append(get(i));
+			s.append(" < ");
+			s.append(Arrays.toString(upperCovers[i]));
+			s.append('\n');
+		}
+
+		return s.toString();
+	}
+}
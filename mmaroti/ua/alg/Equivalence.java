@@ -5,51 +5,95 @@ package mmaroti.ua.alg;
  */
 
 import java.util.*;
-import mmaroti.ua.util.*;
 
+/**
+ * An equivalence relation on the set <code>{0,...,size-1}</code>, stored as a
+ * union-find forest with path compression and union by rank. Every root
+ * remembers the least element and the size of its block. The canonical
+ * representation, which maps every element to the least element of its block,
+ * is computed lazily after the relation has been changed.
+ */
 public class Equivalence {
+	protected int[] parent;
+	protected byte[] rank;
+	protected int[] least;
+	protected int[] count;
+	protected int blocks;
+
+	/**
+	 * The canonical representation, valid only if <code>dirty</code> is not
+	 * set.
+	 */
 	protected int[] repr;
+	protected boolean dirty;
 
 	public int size() {
-		return repr.length;
+		return parent.length;
 	}
 
+	/**
+	 * Returns the root of the tree containing the given element, and
+	 * compresses the path leading to it.
+	 */
+	protected final int find(int a) {
+		int r = a;
+		while (parent[r] != r)
+			r = parent[r];
+
+		while (parent[a] != r) {
+			int b = parent[a];
+			parent[a] = r;
+			a = b;
+		}
+
+		return r;
+	}
+
+	/**
+	 * Returns the array that maps every element to the least element of its
+	 * block. The returned array must not be modified.
+	 */
 	public int[] reprezentation() {
+		if (dirty) {
+			for (int i = 0; i < repr.length; ++i)
+				repr[i] = least[find(i)];
+
+			dirty = false;
+		}
+
 		return repr;
 	}
 
 	public int reprezentative(int a) {
-		return repr[a];
+		return dirty ? least[find(a)] : repr[a];
 	}
 
 	public boolean related(int a, int b) {
-		return repr[a] == repr[b];
+		if (!dirty)
+			return repr[a] == repr[b];
+
+		return find(a) == find(b);
 	}
 
 	public int blockCount() {
-		int c = 0;
-
-		for (int i = 0; i < repr.length; ++i)
-			if (repr[i] == i)
-				++c;
-
-		return c;
+		return blocks;
 	}
 
 	public int blockSize(int a) {
-		int c = 0;
-		a = repr[a];
-
-		for (int i = 0; i < repr.length; ++i)
-			if (repr[i] == a)
-				++c;
-
-		return c;
+		return count[find(a)];
 	}
 
 	public void setZero() {
-		for (int i = 0; i < repr.length; ++i)
+		for (int i = 0; i < parent.length; ++i) {
+			parent[i] = i;
+			least[i] = i;
+			count[i] = 1;
 			repr[i] = i;
+		}
+
+		Arrays.fill(rank, (byte) 0);
+		blocks = parent.length;
+		dirty = false;
 	}
 
 	public boolean isZero() {
@@ -57,70 +101,160 @@ public class Equivalence {
 	}
 
 	public void setOne() {
+		Arrays.fill(parent, 0);
 		Arrays.fill(repr, 0);
+		Arrays.fill(rank, (byte) 0);
+
+		if (parent.length > 0) {
+			least[0] = 0;
+			count[0] = parent.length;
+			rank[0] = 1;
+		}
+
+		blocks = parent.length > 0 ? 1 : 0;
+		dirty = false;
 	}
 
 	public boolean isOne() {
 		return blockCount() == 1;
 	}
 
-	public void join(int a, int b) {
-		a = repr[a];
-		b = repr[b];
+	/**
+	 * Merges the blocks of the two elements. Returns <code>true</code> if
+	 * they were in different blocks.
+	 */
+	public boolean join(int a, int b) {
+		a = find(a);
+		b = find(b);
 
-		if (a < b) {
-			for (int i = b; i < repr.length; ++i)
-				if (repr[i] == b)
-					repr[i] = a;
-		} else if (b < a) {
-			for (int i = a; i < repr.length; ++i)
-				if (repr[i] == a)
-					repr[i] = b;
-		}
+		if (a == b)
+			return false;
+
+		if (rank[a] < rank[b]) {
+			int c = a;
+			a = b;
+			b = c;
+		} else if (rank[a] == rank[b])
+			++rank[a];
+
+		parent[b] = a;
+		count[a] += count[b];
+		if (least[b] < least[a])
+			least[a] = least[b];
+
+		--blocks;
+		dirty = true;
+		return true;
 	}
 
 	public void join(Equivalence equ) {
-		if (equ.repr.length != repr.length)
+		if (equ.size() != size())
 			throw new IllegalArgumentException();
 
-		for (int i = 0; i < repr.length; ++i)
-			join(i, equ.repr[i]);
+		int[] repr2 = equ.reprezentation();
+		for (int i = 0; i < repr2.length; ++i)
+			if (repr2[i] != i)
+				join(i, repr2[i]);
 	}
 
+	/**
+	 * Replaces this relation with its intersection with <code>equ</code>. The
+	 * elements are bucketed by their representative in this relation, and
+	 * within a bucket the representatives in <code>equ</code> are looked up in
+	 * an array stamped with the bucket, so no pairs are hashed or boxed.
+	 */
 	public void meet(Equivalence equ) {
-		int size = repr.length;
-		int[] repr2 = equ.repr;
+		int size = size();
+		if (size != equ.size())
+			throw new IllegalArgumentException();
+
+		int[] repr1 = reprezentation();
+		int[] repr2 = equ.reprezentation();
+
+		// stable counting sort of the elements by their representative
+		int[] start = new int[size + 1];
+		for (int i = 0; i < size; ++i)
+			++start[repr1[i] + 1];
+		for (int i = 0; i < size; ++i)
+			start[i + 1] += start[i];
+
+		int[] order = new int[size];
+		for (int i = 0; i < size; ++i)
+			order[start[repr1[i]]++] = i;
+
+		int[] stamp = new int[size];
+		int[] first = new int[size];
+		int[] result = new int[size];
+
+		for (int k = 0; k < size; ++k) {
+			int i = order[k];
+
+			// the stamp is the representative plus one, so zero is unused
+			int bucket = repr1[i] + 1;
+			int b = repr2[i];
+			if (stamp[b] != bucket) {
+				stamp[b] = bucket;
+				first[b] = i;
+			}
 
-		if (size != repr2.length)
+			result[i] = first[b];
+		}
+
+		init(result);
+	}
+
+	/**
+	 * Sets this relation from a canonical representation, where every element
+	 * is mapped to the least element of its block.
+	 */
+	protected void init(int[] canonical) {
+		if (canonical.length != parent.length)
 			throw new IllegalArgumentException();
 
-		HashMap<IntPair, Integer> map = new HashMap<IntPair, Integer>();
-		IntPair pair = new IntPair();
+		Arrays.fill(count, 0);
+		Arrays.fill(rank, (byte) 0);
+		blocks = 0;
 
-		for (int i = 0; i < size; ++i) {
-			pair.first = repr[i];
-			pair.second = repr2[i];
+		for (int i = 0; i < canonical.length; ++i) {
+			int r = canonical[i];
+			if (r < 0 || r > i || canonical[r] != r)
+				throw new IllegalArgumentException("not canonical");
 
-			Integer n = map.get(pair);
-			if (n == null) {
-				repr[i] = i;
-				map.put(new IntPair(pair), i);
+			parent[i] = r;
+			repr[i] = r;
+			++count[r];
+
+			if (r == i) {
+				least[i] = i;
+				++blocks;
 			} else
-				repr[i] = n;
+				rank[r] = 1;
 		}
+
+		dirty = false;
 	}
 
+	/**
+	 * Creates the total relation, where all elements are related to zero.
+	 */
 	public Equivalence(int size) {
+		parent = new int[size];
+		rank = new byte[size];
+		least = new int[size];
+		count = new int[size];
 		repr = new int[size];
+
+		setOne();
 	}
 
 	protected Equivalence(int[] repr) {
-		this.repr = repr;
+		this(repr.length);
+		init(repr);
 	}
 
 	@Override
 	public Object clone() {
-		return new Equivalence(repr.clone());
+		return new Equivalence(reprezentation());
 	}
 
 	@Override
@@ -130,11 +264,13 @@ public class Equivalence {
 
 		Equivalence e = (Equivalence) o;
 
-		return Arrays.equals(repr, e.repr);
+		return blocks == e.blocks
+				&& Arrays.equals(reprezentation(), e.reprezentation());
 	}
 
 	@Override
 	public int hashCode() {
+		int[] repr = reprezentation();
 		int a = 0;
 
 		for (int i = 0; i < repr.length; ++i) {
@@ -173,6 +309,8 @@ public class Equivalence {
 
 	@Override
 	public String toString() {
+		int[] repr = reprezentation();
+
 		StringBuilder s = new StringBuilder();
 		s.append("[ ");
 
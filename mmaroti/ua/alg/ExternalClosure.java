@@ -0,0 +1,743 @@
+package mmaroti.ua.alg;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Computes the subuniverse of a product of finite algebras generated by a set
+ * of tuples without keeping the subuniverse in memory. The elements are
+ * generated level by level: level 0 contains the generators, and level
+ * <code>k+1</code> contains the new values of the operations on tuples that
+ * have at least one argument from level <code>k</code>. The candidates of a
+ * level are collected in a bounded buffer, which is sorted and written out as
+ * a run file whenever it fills up. When the level is done the runs are merged,
+ * duplicates are removed and the elements of earlier levels are subtracted
+ * using the sorted, memory mapped level files. Every level file is kept, so
+ * the elements can be accessed by index afterwards.
+ */
+public class ExternalClosure {
+	/**
+	 * The maximal number of bytes mapped by a single buffer.
+	 */
+	protected static final int CHUNK_BYTES = 1 << 30;
+
+	protected Algebra[] algebras;
+	protected File directory;
+
+	/**
+	 * The number of bits occupied by the coordinates, and the number of long
+	 * words in a record. Only 63 bits of every word are used, so the signed
+	 * comparison of the words is the lexicographic order of the tuples.
+	 */
+	protected int[] bits;
+	protected int words;
+
+	protected long[] buffer;
+	protected int[] slots;
+	protected long[] record;
+	protected int bufferCount;
+	protected int bufferCapacity;
+
+	protected List<Run> levels = new ArrayList<Run>();
+	protected List<Long> levelStarts = new ArrayList<Long>();
+	protected List<Long> levelBytes = new ArrayList<Long>();
+
+	protected long spilledBytes;
+	protected PrintStream log;
+
+	public Algebra[] algebras() {
+		return algebras;
+	}
+
+	/**
+	 * Sets the stream where the statistics of the levels are printed, or
+	 * <code>null</code> to turn reporting off.
+	 */
+	public void setLog(PrintStream log) {
+		this.log = log;
+	}
+
+	/**
+	 * Returns the number of elements generated so far.
+	 */
+	public long size() {
+		int i = levels.size();
+		if (i == 0)
+			return 0;
+
+		return levelStarts.get(i - 1) + levels.get(i - 1).count;
+	}
+
+	public int levelCount() {
+		return levels.size();
+	}
+
+	public long levelElements(int level) {
+		return levels.get(level).count;
+	}
+
+	/**
+	 * Returns the number of bytes written to disk while computing the given
+	 * level, including the temporary runs and the level file itself.
+	 */
+	public long levelBytes(int level) {
+		return levelBytes.get(level);
+	}
+
+	/**
+	 * A finished level: a sorted file of records, mapped into memory in chunks
+	 * that never split a record.
+	 */
+	protected class Run {
+		protected File file;
+		protected long count;
+		protected int chunkRecords;
+		protected LongBuffer[] chunks;
+
+		public Run(File file, long count) throws IOException {
+			this.file = file;
+			this.count = count;
+
+			chunkRecords = CHUNK_BYTES / (8 * words);
+			chunks = new LongBuffer[(int) ((count + chunkRecords - 1) / chunkRecords)];
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				for (int i = 0; i < chunks.length; ++i) {
+					long start = (long) i * chunkRecords;
+					long length = Math.min(chunkRecords, count - start);
+					chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+							start * 8 * words, length * 8 * words)
+							.asLongBuffer();
+				}
+			} finally {
+				raf.close();
+			}
+		}
+
+		public final void get(long index, long[] record, int offset) {
+			LongBuffer chunk = chunks[(int) (index / chunkRecords)];
+			int pos = (int) (index % chunkRecords) * words;
+			for (int i = 0; i < words; ++i)
+				record[offset + i] = chunk.get(pos + i);
+		}
+
+		public final int compare(long index, long[] record, int offset) {
+			LongBuffer chunk = chunks[(int) (index / chunkRecords)];
+			int pos = (int) (index % chunkRecords) * words;
+			for (int i = 0; i < words; ++i) {
+				long a = chunk.get(pos + i);
+				long b = record[offset + i];
+				if (a != b)
+					return a < b ? -1 : 1;
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the first index at or after <code>from</code> whose record is
+		 * not smaller than the given one. Uses exponential search, so scanning
+		 * the run with an increasing sequence of records is cheap.
+		 */
+		public long seek(long from, long[] record, int offset) {
+			long step = 1;
+			long lo = from;
+			long hi = from;
+			while (hi < count && compare(hi, record, offset) < 0) {
+				lo = hi + 1;
+				hi += step;
+				step <<= 1;
+			}
+			if (hi > count)
+				hi = count;
+
+			while (lo < hi) {
+				long mid = (lo + hi) >>> 1;
+				if (compare(mid, record, offset) < 0)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		public void delete() {
+			chunks = null;
+			file.delete();
+		}
+	}
+
+	/**
+	 * Writes sorted records to a new file and counts the bytes spilled. The
+	 * temporary runs are only read sequentially, so they are not mapped.
+	 */
+	protected class RunWriter {
+		protected File file;
+		protected DataOutputStream output;
+		protected long count;
+
+		public RunWriter() throws IOException {
+			file = File.createTempFile("closure", ".run", directory);
+			output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file), 1 << 16));
+		}
+
+		public void write(long[] record, int offset) throws IOException {
+			for (int i = 0; i < words; ++i)
+				output.writeLong(record[offset + i]);
+			++count;
+		}
+
+		public void close() throws IOException {
+			output.close();
+			output = null;
+			spilledBytes += count * 8 * words;
+		}
+	}
+
+	protected class RunReader {
+		protected DataInputStream input;
+		protected long remaining;
+
+		public RunReader(RunWriter run) throws IOException {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(run.file), 1 << 13));
+			remaining = run.count;
+		}
+
+		public boolean read(long[] record, int offset) throws IOException {
+			if (remaining <= 0) {
+				input.close();
+				return false;
+			}
+
+			for (int i = 0; i < words; ++i)
+				record[offset + i] = input.readLong();
+			--remaining;
+			return true;
+		}
+	}
+
+	public final void pack(int[] coords, long[] record, int offset) {
+		for (int i = 0; i < words; ++i)
+			record[offset + i] = 0;
+
+		int word = offset;
+		int used = 0;
+		for (int i = 0; i < coords.length; ++i) {
+			if (used + bits[i] > 63) {
+				++word;
+				used = 0;
+			}
+			used += bits[i];
+			record[word] |= ((long) coords[i]) << (63 - used);
+		}
+	}
+
+	public final void unpack(long[] record, int offset, int[] coords) {
+		int word = offset;
+		int used = 0;
+		for (int i = 0; i < coords.length; ++i) {
+			if (used + bits[i] > 63) {
+				++word;
+				used = 0;
+			}
+			used += bits[i];
+			coords[i] = (int) (record[word] >>> (63 - used))
+					& ((1 << bits[i]) - 1);
+		}
+	}
+
+	/**
+	 * Returns the coordinates of the element with the given index. The
+	 * elements are indexed level by level, and sorted within each level.
+	 */
+	public void getElement(long index, int[] coords) {
+		if (index < 0 || index >= size() || coords.length != algebras.length)
+			throw new IllegalArgumentException();
+
+		int level = levels.size();
+		while (levelStarts.get(--level) > index)
+			;
+
+		levels.get(level).get(index - levelStarts.get(level), record, 0);
+		unpack(record, 0, coords);
+	}
+
+	protected final int compare(long[] a, int i, long[] b, int j) {
+		for (int k = 0; k < words; ++k) {
+			long x = a[i + k];
+			long y = b[j + k];
+			if (x != y)
+				return x < y ? -1 : 1;
+		}
+		return 0;
+	}
+
+	protected final void swap(long[] a, int i, int j) {
+		for (int k = 0; k < words; ++k) {
+			long t = a[i + k];
+			a[i + k] = a[j + k];
+			a[j + k] = t;
+		}
+	}
+
+	/**
+	 * Sorts the records with indices in <code>[lo, hi)</code> of the buffer.
+	 */
+	protected void sort(int lo, int hi) {
+		while (hi - lo > 16) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(buffer, mid * words, buffer, lo * words) < 0)
+				swap(buffer, mid * words, lo * words);
+			if (compare(buffer, (hi - 1) * words, buffer, lo * words) < 0)
+				swap(buffer, (hi - 1) * words, lo * words);
+			if (compare(buffer, (hi - 1) * words, buffer, mid * words) < 0)
+				swap(buffer, (hi - 1) * words, mid * words);
+
+			// the pivot is moved to position lo
+			swap(buffer, mid * words, lo * words);
+			int i = lo;
+			int j = hi;
+			for (;;) {
+				while (compare(buffer, (++i) * words, buffer, lo * words) < 0)
+					;
+				while (compare(buffer, (--j) * words, buffer, lo * words) > 0)
+					;
+				if (i >= j)
+					break;
+				swap(buffer, i * words, j * words);
+			}
+			swap(buffer, lo * words, j * words);
+
+			if (j - lo < hi - j - 1) {
+				sort(lo, j);
+				lo = j + 1;
+			} else {
+				sort(j + 1, hi);
+				hi = j;
+			}
+		}
+
+		for (int i = lo + 1; i < hi; ++i)
+			for (int j = i; j > lo
+					&& compare(buffer, (j - 1) * words, buffer, j * words) > 0; --j)
+				swap(buffer, (j - 1) * words, j * words);
+	}
+
+	/**
+	 * Sorts the buffer and writes it out as a run.
+	 */
+	protected void spill(List<RunWriter> runs) throws IOException {
+		if (bufferCount == 0)
+			return;
+
+		sort(0, bufferCount);
+
+		RunWriter writer = new RunWriter();
+		for (int i = 0; i < bufferCount; ++i)
+			writer.write(buffer, i * words);
+
+		writer.close();
+		runs.add(writer);
+
+		bufferCount = 0;
+		Arrays.fill(slots, -1);
+	}
+
+	protected final int hash(long[] record, int offset) {
+		long h = 0;
+		for (int i = 0; i < words; ++i) {
+			h = (h ^ record[offset + i]) * 0x9e3779b97f4a7c15L;
+			h ^= h >>> 32;
+		}
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/**
+	 * Adds the tuple to the buffer unless it is already there, and spills
+	 * the buffer when it is full. The buffer is indexed by an open addressing
+	 * hash table, so the runs contain no duplicates.
+	 */
+	protected void add(int[] coords, List<RunWriter> runs) throws IOException {
+		if (bufferCount == bufferCapacity)
+			spill(runs);
+
+		int offset = bufferCount * words;
+		pack(coords, buffer, offset);
+
+		int mask = slots.length - 1;
+		int slot = hash(buffer, offset) & mask;
+		while (slots[slot] >= 0) {
+			if (compare(buffer, slots[slot] * words, buffer, offset) == 0)
+				return;
+			slot = (slot + 1) & mask;
+		}
+
+		slots[slot] = bufferCount++;
+	}
+
+	/**
+	 * The maximal number of runs merged in a single pass.
+	 */
+	protected static final int MERGE_WAYS = 64;
+
+	/**
+	 * Merges the given runs into a single sorted run without duplicates, and
+	 * deletes them. If <code>subtract</code> is set, then the elements of the
+	 * earlier levels are removed as well.
+	 */
+	protected RunWriter merge(List<RunWriter> runs, boolean subtract)
+			throws IOException {
+		int n = runs.size();
+		long[] heads = new long[n * words];
+		RunReader[] readers = new RunReader[n];
+		int[] heap = new int[n];
+		int heapSize = 0;
+
+		for (int i = 0; i < n; ++i) {
+			readers[i] = new RunReader(runs.get(i));
+			if (readers[i].read(heads, i * words)) {
+				heap[heapSize++] = i;
+				siftUp(heap, heapSize - 1, heads);
+			}
+		}
+
+		long[] cursors = new long[subtract ? levels.size() : 0];
+		long[] last = new long[words];
+		boolean first = true;
+
+		RunWriter writer = new RunWriter();
+		while (heapSize > 0) {
+			int r = heap[0];
+			int offset = r * words;
+
+			if (first || compare(last, 0, heads, offset) != 0) {
+				first = false;
+				System.arraycopy(heads, offset, last, 0, words);
+
+				boolean found = false;
+				for (int i = 0; i < cursors.length && !found; ++i) {
+					Run level = levels.get(i);
+					cursors[i] = level.seek(cursors[i], heads, offset);
+					found = cursors[i] < level.count
+							&& level.compare(cursors[i], heads, offset) == 0;
+				}
+
+				if (!found)
+					writer.write(heads, offset);
+			}
+
+			if (!readers[r].read(heads, offset))
+				heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize, heads);
+		}
+		writer.close();
+
+		for (int i = 0; i < n; ++i)
+			runs.get(i).file.delete();
+
+		return writer;
+	}
+
+	protected void siftUp(int[] heap, int pos, long[] heads) {
+		while (pos > 0) {
+			int parent = (pos - 1) >> 1;
+			if (compare(heads, heap[parent] * words, heads, heap[pos] * words) <= 0)
+				break;
+
+			int t = heap[parent];
+			heap[parent] = heap[pos];
+			heap[pos] = t;
+			pos = parent;
+		}
+	}
+
+	protected void siftDown(int[] heap, int size, long[] heads) {
+		int pos = 0;
+		for (;;) {
+			int child = 2 * pos + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size
+					&& compare(heads, heap[child + 1] * words, heads,
+							heap[child] * words) < 0)
+				++child;
+			if (compare(heads, heap[pos] * words, heads, heap[child] * words) <= 0)
+				break;
+
+			int t = heap[child];
+			heap[child] = heap[pos];
+			heap[pos] = t;
+			pos = child;
+		}
+	}
+
+	/**
+	 * Merges the runs of the current level, removes the elements of the
+	 * earlier levels, and maps the result as a new level.
+	 */
+	protected void finishLevel(List<RunWriter> runs) throws IOException {
+		long spilled = spilledBytes;
+		spill(runs);
+
+		while (runs.size() > MERGE_WAYS) {
+			List<RunWriter> group = new ArrayList<RunWriter>(runs.subList(0,
+					MERGE_WAYS));
+			runs.subList(0, MERGE_WAYS).clear();
+			runs.add(merge(group, false));
+		}
+
+		RunWriter level = merge(runs, true);
+		levelStarts.add(size());
+		levels.add(new Run(level.file, level.count));
+		long count = level.count;
+
+		spilled = spilledBytes - spilled;
+		levelBytes.add(spilled);
+
+		if (log != null)
+			log.println("level " + (levels.size() - 1) + ": " + count
+					+ " elements, " + spilled + " bytes spilled, " + size()
+					+ " total");
+	}
+
+	/**
+	 * Evaluates every operation on the tuples that have at least one argument
+	 * in the last level, and adds the results to the given runs.
+	 */
+	protected void generateLevel(List<RunWriter> runs) throws IOException {
+		long start = levelStarts.get(levels.size() - 1);
+		long end = size();
+
+		int[] value = new int[algebras.length];
+		int[] args = new int[0];
+		for (int op = 0; op < algebras[0].operations().length; ++op) {
+			int arity = algebras[0].operations()[op].arity();
+			if (arity == 0)
+				continue;
+
+			Function[] functions = new Function[algebras.length];
+			for (int i = 0; i < algebras.length; ++i)
+				functions[i] = algebras[i].operations()[op];
+
+			if (args.length != arity)
+				args = new int[arity];
+
+			long[] indices = new long[arity];
+			long[] cached = new long[arity];
+			int[][] coords = new int[arity][algebras.length];
+
+			// the first argument from the last level is at position p
+			for (int p = 0; p < arity; ++p) {
+				if (p > 0 && start == 0)
+					break;
+
+				for (int k = 0; k < arity; ++k) {
+					indices[k] = k == p ? start : 0;
+					cached[k] = -1;
+				}
+
+				for (;;) {
+					for (int k = 0; k < arity; ++k)
+						if (cached[k] != indices[k]) {
+							getElement(indices[k], coords[k]);
+							cached[k] = indices[k];
+						}
+
+					for (int i = 0; i < algebras.length; ++i) {
+						for (int k = 0; k < arity; ++k)
+							args[k] = coords[k][i];
+						value[i] = functions[i].value(args);
+					}
+					add(value, runs);
+
+					int k = arity;
+					while (--k >= 0) {
+						long limit = k < p ? start : end;
+						if (++indices[k] < limit)
+							break;
+						indices[k] = k == p ? start : 0;
+					}
+					if (k < 0)
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generates the closure level by level. Returns the number of elements.
+	 */
+	public long generate() throws IOException {
+		while (levels.get(levels.size() - 1).count > 0) {
+			List<RunWriter> runs = new ArrayList<RunWriter>();
+			generateLevel(runs);
+			finishLevel(runs);
+		}
+
+		return size();
+	}
+
+	/**
+	 * Returns the generated subuniverse as a decision diagram over the given
+	 * complex product, which must be built from the same algebras. The level
+	 * files are merged in lexicographic order and the diagram is built bottom
+	 * up, so only a single path of partial nodes is kept in memory.
+	 */
+	public DecisionDiagram.Node toUniverse(ComplexProdAlgebra complex) {
+		ComplexProdAlgebra[] products = complex.productLevels();
+		if (products.length != algebras.length + 1)
+			throw new IllegalArgumentException();
+
+		int length = algebras.length;
+		DecisionDiagram.Node[][] pending = new DecisionDiagram.Node[length][];
+		for (int i = 0; i < length; ++i) {
+			pending[i] = new DecisionDiagram.Node[algebras[i].size()];
+			Arrays.fill(pending[i], products[i + 1].emptySet);
+		}
+
+		int n = levels.size();
+		long[] heads = new long[n * words];
+		long[] positions = new long[n];
+		int[] heap = new int[n];
+		int heapSize = 0;
+		for (int i = 0; i < n; ++i)
+			if (levels.get(i).count > 0) {
+				levels.get(i).get(0, heads, i * words);
+				heap[heapSize++] = i;
+				siftUp(heap, heapSize - 1, heads);
+			}
+
+		int[] prefix = null;
+		int[] coords = new int[length];
+		while (heapSize > 0) {
+			int r = heap[0];
+			unpack(heads, r * words, coords);
+
+			if (prefix == null)
+				prefix = coords.clone();
+			else {
+				int d = 0;
+				while (prefix[d] == coords[d])
+					++d;
+				close(pending, products, prefix, d);
+				System.arraycopy(coords, 0, prefix, 0, length);
+			}
+			pending[length - 1][coords[length - 1]] = products[length].fullSet;
+
+			Run run = levels.get(r);
+			if (++positions[r] < run.count)
+				run.get(positions[r], heads, r * words);
+			else
+				heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize, heads);
+		}
+
+		if (prefix == null)
+			return complex.emptySet();
+
+		close(pending, products, prefix, 0);
+		return products[0].diagram.canonicalize(pending[0]);
+	}
+
+	/**
+	 * Closes the partial nodes below the given depth.
+	 */
+	private static void close(DecisionDiagram.Node[][] pending,
+			ComplexProdAlgebra[] products, int[] prefix, int depth) {
+		for (int i = pending.length - 1; i > depth; --i) {
+			pending[i - 1][prefix[i - 1]] = products[i].diagram
+					.canonicalize(pending[i]);
+			Arrays.fill(pending[i], products[i + 1].emptySet);
+		}
+	}
+
+	/**
+	 * Deletes all level files. The object cannot be used afterwards.
+	 */
+	public void delete() {
+		for (int i = 0; i < levels.size(); ++i)
+			levels.get(i).delete();
+		levels.clear();
+		levelStarts.clear();
+	}
+
+	/**
+	 * Creates the generator with the given generating tuples and the values
+	 * of the constants as level 0.
+	 *
+	 * @param directory
+	 *            the directory of the temporary run and level files
+	 * @param bufferSize
+	 *            the number of elements sorted in memory before a run is
+	 *            spilled to disk
+	 */
+	public ExternalClosure(List<Algebra> algebras,
+			List<List<Integer>> generators, File directory, int bufferSize)
+			throws IOException {
+		if (algebras.isEmpty() || bufferSize <= 0)
+			throw new IllegalArgumentException();
+
+		this.algebras = algebras.toArray(new Algebra[algebras.size()]);
+		this.directory = directory;
+
+		bits = new int[this.algebras.length];
+		words = 1;
+		int used = 0;
+		for (int i = 0; i < bits.length; ++i) {
+			int size = this.algebras[i].size();
+			bits[i] = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+			if (used + bits[i] > 63) {
+				++words;
+				used = 0;
+			}
+			used += bits[i];
+		}
+
+		bufferCapacity = bufferSize;
+		buffer = new long[bufferCapacity * words];
+		record = new long[words];
+
+		slots = new int[Integer.highestOneBit(bufferCapacity) << 2];
+		Arrays.fill(slots, -1);
+
+		List<RunWriter> runs = new ArrayList<RunWriter>();
+		int[] coords = new int[this.algebras.length];
+
+		Iterator<List<Integer>> iter = generators.iterator();
+		while (iter.hasNext()) {
+			List<Integer> gen = iter.next();
+			if (gen.size() != coords.length)
+				throw new IllegalArgumentException();
+
+			for (int i = 0; i < coords.length; ++i) {
+				coords[i] = gen.get(i);
+				if (coords[i] < 0 || coords[i] >= this.algebras[i].size())
+					throw new IllegalArgumentException();
+			}
+			add(coords, runs);
+		}
+
+		int[] args = new int[0];
+		for (int op = 0; op < this.algebras[0].operations().length; ++op)
+			if (this.algebras[0].operations()[op].arity() == 0) {
+				for (int i = 0; i < coords.length; ++i)
+					coords[i] = this.algebras[i].operations()[op].value(args);
+				add(coords, runs);
+			}
+
+		finishLevel(runs);
+	}
+}
@@ -93,7 +93,7 @@ public class FactorAlgebra implements Algebra {
 		if (size != equ.size())
 			throw new IllegalArgumentException();
 
-		int[] repr = equ.repr;
+		int[] repr = equ.reprezentation();
 		abstractElems = new int[size];
 
 		int blockCount = 0;
@@ -116,72 +116,62 @@ public class FactorAlgebra implements Algebra {
 			this.operations[i] = new Op(operations[i]);
 	}
 
+	/**
+	 * Returns the congruence generated by the given pairs. The list is
+	 * consumed.
+	 * 
+	 * @deprecated Every call tabulates the operations of the algebra again.
+	 *             Create a {@link CongruenceGenerator} once and use
+	 *             {@link CongruenceGenerator#congruence(int[])} instead.
+	 */
+	@Deprecated
 	public static Equivalence congruence(Algebra algebra,
 			LinkedList<IntPair> pairs) {
-		int size = algebra.size();
-		Function[] operations = algebra.operations();
-		Equivalence equ = Equivalence.zero(size);
-
-		Iterator<IntPair> iter = pairs.iterator();
-		while (iter.hasNext()) {
-			IntPair pair = iter.next();
-			equ.join(pair.first, pair.second);
-		}
+		int[] array = new int[2 * pairs.size()];
 
+		int i = 0;
 		while (!pairs.isEmpty()) {
 			IntPair pair = pairs.removeFirst();
-			int a = pair.first;
-			int b = pair.second;
-
-			for (int i = 0; i < operations.length; ++i) {
-				Function op = operations[i];
-				int arity = op.arity();
-				for (int j = 0; j < arity; ++j) {
-					UnaryPolArgument arg = new UnaryPolArgument(arity, size, j);
-					int[] args = arg.args();
-					if (arg.first())
-						do {
-							args[j] = a;
-							int c = op.value(args);
-
-							args[j] = b;
-							int d = op.value(args);
-
-							if (!equ.related(c, d)) {
-								equ.join(c, d);
-								pairs.add(new IntPair(c, d));
-							}
-						} while (arg.next());
-				}
-			}
+			array[i++] = pair.first;
+			array[i++] = pair.second;
 		}
 
-		return equ;
+		return new CongruenceGenerator(algebra).congruence(array);
 	}
 
+	/**
+	 * Returns the principal congruence generated by <code>(a,b)</code>.
+	 * 
+	 * @deprecated Every call tabulates the operations of the algebra again.
+	 *             Create a {@link CongruenceGenerator} once and use
+	 *             {@link CongruenceGenerator#congruence(int, int)} instead.
+	 */
+	@Deprecated
 	public static Equivalence congruence(Algebra algebra, int a, int b) {
-		LinkedList<IntPair> pairs = new LinkedList<IntPair>();
-		pairs.add(new IntPair(a, b));
-		return congruence(algebra, pairs);
+		return new CongruenceGenerator(algebra).congruence(a, b);
 	}
 
+	/**
+	 * Returns the intersection of all nonzero congruences, see
+	 * {@link CongruenceGenerator#monolith()}. The operations are tabulated
+	 * for this call, so use {@link #getMonolith(CongruenceGenerator)} if a
+	 * generator of the algebra is at hand.
+	 */
 	public static Equivalence getMonolith(Algebra algebra) {
-		int size = algebra.size();
-		Equivalence cong = Equivalence.one(size);
-
-		for (int i = 0; i < size - 1; ++i)
-			for (int j = i + 1; j < size; ++j) {
-				if (cong.blockCount() == size)
-					break;
-
-				cong.meet(congruence(algebra, i, j));
-			}
+		return getMonolith(new CongruenceGenerator(algebra));
+	}
 
-		return cong;
+	public static Equivalence getMonolith(CongruenceGenerator generator) {
+		return generator.monolith();
 	}
 
 	public static boolean isSubdirectlyIrreducible(Algebra algebra) {
-		return getMonolith(algebra).blockCount() != algebra.size();
+		return isSubdirectlyIrreducible(new CongruenceGenerator(algebra));
+	}
+
+	public static boolean isSubdirectlyIrreducible(
+			CongruenceGenerator generator) {
+		return getMonolith(generator).blockCount() != generator.size();
 	}
 
 }
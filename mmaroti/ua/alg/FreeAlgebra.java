@@ -4,45 +4,119 @@ package mmaroti.ua.alg;
  *	Copyright (C) 2001 Miklos Maroti
  */
 
+import java.io.*;
 import java.util.*;
+import mmaroti.ua.util.*;
 
 public class FreeAlgebra implements Algebra {
+	/**
+	 * A partial map between the elements of two algebras, stored in an int
+	 * array indexed by the elements of the domain, where <code>-1</code>
+	 * means undefined. The defined elements are also listed in the order they
+	 * were added, and this list is the worklist of
+	 * {@link FreeAlgebra#extendToHomomorphism(Algebra, Algebra, PartialMap)}.
+	 */
+	public static class PartialMap {
+		protected int[] map = new int[0];
+		protected int[] elements = new int[0];
+		protected int count;
+
+		/**
+		 * Makes room for a domain of the given size and clears the map.
+		 */
+		public void reset(int size) {
+			clear();
+
+			if (map.length < size) {
+				map = new int[size];
+				elements = new int[size];
+				Arrays.fill(map, -1);
+			}
+		}
+
+		/**
+		 * Clears the map, touching only the defined elements.
+		 */
+		public void clear() {
+			while (count > 0)
+				map[elements[--count]] = -1;
+		}
+
+		public int get(int a) {
+			return map[a];
+		}
+
+		/**
+		 * Maps <code>a</code> to <code>b</code>. Returns <code>false</code>
+		 * if <code>a</code> is already mapped to some other element.
+		 */
+		public boolean put(int a, int b) {
+			int c = map[a];
+			if (c < 0) {
+				map[a] = b;
+				elements[count++] = a;
+				return true;
+			}
+
+			return c == b;
+		}
+
+		public int count() {
+			return count;
+		}
+
+		/**
+		 * Returns the element of the domain that was defined as the
+		 * <code>index</code>-th one.
+		 */
+		public int element(int index) {
+			return elements[index];
+		}
+	}
+
+	/**
+	 * Extends the partial map to the subalgebra generated by its domain. The
+	 * elements are processed in the order they were added: the tuples whose
+	 * last new coordinate is the current element are evaluated, and new
+	 * values are appended to the worklist. Returns <code>false</code> if the
+	 * map does not extend to a homomorphism.
+	 */
 	public static boolean extendToHomomorphism(Algebra domain,
-			Algebra coDomain, HashMap<Integer, Integer> map) {
-		ArrayList<Integer> elements = new ArrayList<Integer>(map.keySet());
+			Algebra coDomain, PartialMap map) {
+		Function[] ops = domain.operations();
+		Function[] coOps = coDomain.operations();
+
+		int[][] indices = new int[ops.length][];
+		int[][] args = new int[ops.length][];
+		int[][] coArgs = new int[ops.length][];
+		for (int i = 0; i < ops.length; ++i) {
+			indices[i] = new int[ops[i].arity()];
+			args[i] = new int[ops[i].arity()];
+			coArgs[i] = new int[ops[i].arity()];
+		}
 
 		int radius = -2;
-		while (++radius < elements.size()) {
-			int opIndex = domain.operations().length;
+		while (++radius < map.count) {
+			int opIndex = ops.length;
 			while (--opIndex >= 0) {
-				Function op = domain.operations()[opIndex];
-				Function coOp = coDomain.operations()[opIndex];
-
-				SphereArgument arg = new SphereArgument(op.arity(), radius);
-				int[] as = arg.args();
+				Function op = ops[opIndex];
+				Function coOp = coOps[opIndex];
 
-				int[] args = new int[as.length];
-				int[] coArgs = new int[as.length];
+				int[] as = indices[opIndex];
+				int[] xs = args[opIndex];
+				int[] ys = coArgs[opIndex];
 
+				SphereArgument arg = new SphereArgument(as, radius);
 				if (arg.first())
 					do {
 						int i = as.length;
 						while (--i >= 0) {
-							Integer n = elements.get(as[i]);
-							args[i] = n.intValue();
-							n = map.get(n);
-							coArgs[i] = n.intValue();
-
+							int n = map.elements[as[i]];
+							xs[i] = n;
+							ys[i] = map.map[n];
 						}
 
-						Integer a = new Integer(op.value(args));
-						Integer b = map.get(a);
-						int c = coOp.value(coArgs);
-
-						if (b == null) {
-							elements.add(a);
-							map.put(a, new Integer(c));
-						} else if (b.intValue() != c)
+						if (!map.put(op.value(xs), coOp.value(ys)))
 							return false;
 
 					} while (arg.next());
@@ -52,50 +126,166 @@ public class FreeAlgebra implements Algebra {
 		return true;
 	}
 
-	public static boolean isRedundantFactor(List<Algebra> algebras,
-			List<List<Integer>> generators, int target, int testSize) {
-		if (testSize < 1 || target < 0 || target >= algebras.size())
-			throw new IllegalArgumentException();
+	public static boolean extendToHomomorphism(Algebra domain,
+			Algebra coDomain, HashMap<Integer, Integer> map) {
+		PartialMap partial = new PartialMap();
+		partial.reset(domain.size());
 
-		SubsetArgument arg = new SubsetArgument(testSize, algebras.size());
+		Iterator<Map.Entry<Integer, Integer>> iter = map.entrySet()
+				.iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Integer, Integer> entry = iter.next();
+			partial.put(entry.getKey().intValue(), entry.getValue()
+					.intValue());
+		}
+
+		int count = partial.count;
+		if (!extendToHomomorphism(domain, coDomain, partial))
+			return false;
+
+		for (int i = count; i < partial.count; ++i) {
+			int a = partial.elements[i];
+			map.put(a, partial.map[a]);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the generators as an array indexed by the generators and then
+	 * by the factors.
+	 */
+	protected static int[][] toArray(List<List<Integer>> generators) {
+		int[][] gens = new int[generators.size()][];
+
+		Iterator<List<Integer>> iter = generators.iterator();
+		for (int i = 0; i < gens.length; ++i)
+			gens[i] = Arrays2.toIntArray(iter.next());
+
+		return gens;
+	}
+
+	/**
+	 * Returns the first set of <code>testSize</code> factors, in the order
+	 * of {@link SubsetArgument}, whose product determines the target factor on
+	 * the generated subalgebra, or <code>null</code> if there is none. The
+	 * target and the excluded factors are not used.
+	 */
+	protected static int[] findWitness(Algebra[] algebras, int[][] generators,
+			int target, int testSize, boolean[] excluded, PartialMap map) {
+		SubsetArgument arg = new SubsetArgument(testSize, algebras.length);
 		int[] args = arg.args();
-		arg.selected()[target] = true; // skip the target algebra
+		boolean[] selected = arg.selected();
+
+		for (int i = 0; i < selected.length; ++i)
+			selected[i] = excluded != null && excluded[i];
+		selected[target] = true; // skip the target algebra
+
+		Algebra[] algs = new Algebra[testSize];
+		int[] func = new int[testSize];
 
 		if (arg.first())
 			outer: do {
-				Algebra[] algs = new Algebra[testSize];
 				for (int i = 0; i < testSize; ++i)
-					algs[i] = (Algebra) algebras.get(args[i]);
+					algs[i] = algebras[args[i]];
 
 				ProductAlgebra prod = new ProductAlgebra(algs);
+				map.reset(prod.size());
 
-				HashMap<Integer, Integer> map = new HashMap<Integer, Integer>();
-				int[] func = new int[testSize];
-
-				Iterator<List<Integer>> iter = generators.iterator();
-				while (iter.hasNext()) {
-					List<Integer> function = iter.next();
-					for (int i = 0; i < testSize; ++i) {
-						Integer n = function.get(args[i]);
-						func[i] = n.intValue();
-					}
-
-					Integer a = new Integer(prod.toAbstractElem(func));
-					Integer b = map.get(a);
-					Integer c = function.get(target);
+				for (int j = 0; j < generators.length; ++j) {
+					int[] function = generators[j];
+					for (int i = 0; i < testSize; ++i)
+						func[i] = function[args[i]];
 
-					if (b != null && !b.equals(c))
+					if (!map.put(prod.toAbstractElem(func), function[target]))
 						continue outer;
-
-					map.put(a, c);
 				}
 
-				if (extendToHomomorphism(prod, algebras.get(target), map))
-					return true;
+				if (extendToHomomorphism(prod, algebras[target], map)) {
+					map.clear();
+					return args.clone();
+				}
 
 			} while (arg.next());
 
-		return false;
+		map.clear();
+		return null;
+	}
+
+	public static boolean isRedundantFactor(List<Algebra> algebras,
+			List<List<Integer>> generators, int target, int testSize) {
+		if (testSize < 1 || target < 0 || target >= algebras.size())
+			throw new IllegalArgumentException();
+
+		return findWitness(algebras.toArray(new Algebra[algebras.size()]),
+				toArray(generators), target, testSize, null, new PartialMap()) != null;
+	}
+
+	/**
+	 * Below this number of factors the witnesses are searched for on the
+	 * calling thread.
+	 */
+	protected static final int PARALLEL_FACTORS = 4;
+
+	/**
+	 * Returns the factors that are redundant, that is, determined by at most
+	 * <code>testSize</code> of the remaining ones, and the list of factors is
+	 * processed from the last one to the first. The result is the same as
+	 * testing and removing the factors one by one, but the first round of
+	 * tests runs on the shared pool, see {@link Parallel}. A factor found
+	 * redundant in it is tested again only if its witness uses a factor
+	 * removed before it.
+	 */
+	protected static boolean[] findRedundantFactors(List<Algebra> algebras,
+			List<List<Integer>> generators, final int testSize) {
+		// the tables of the factors can be read by several threads
+		final Algebra[] algs = new Algebra[algebras.size()];
+		Iterator<Algebra> iter = algebras.iterator();
+		for (int i = 0; i < algs.length; ++i) {
+			Algebra alg = iter.next();
+			algs[i] = alg instanceof AlgebraBuffer ? alg : new AlgebraBuffer(
+					alg);
+		}
+
+		final int[][] gens = toArray(generators);
+		final int[][] witnesses = new int[algs.length][];
+
+		Parallel.forEach(algs.length, PARALLEL_FACTORS, new Parallel.Factory() {
+			@Override
+			public Parallel.Body create() {
+				final PartialMap map = new PartialMap();
+				return new Parallel.Body() {
+					@Override
+					public boolean run(long index) {
+						int target = (int) index;
+						witnesses[target] = findWitness(algs, gens, target,
+								testSize, null, map);
+						return true;
+					}
+				};
+			}
+		});
+
+		boolean[] removed = new boolean[algs.length];
+		PartialMap map = new PartialMap();
+
+		int target = algs.length;
+		while (--target >= 0) {
+			int[] witness = witnesses[target];
+			if (witness == null)
+				continue;
+
+			for (int i = 0; i < witness.length; ++i)
+				if (removed[witness[i]]) {
+					witness = findWitness(algs, gens, target, testSize,
+							removed, map);
+					break;
+				}
+
+			removed[target] = witness != null;
+		}
+
+		return removed;
 	}
 
 	public static void removeFactor(List<Algebra> algebras,
@@ -109,13 +299,42 @@ public class FreeAlgebra implements Algebra {
 		}
 	}
 
+	/**
+	 * Appends a factor, where the generators take the given values, unless it
+	 * is determined by one or two of the earlier factors. Returns
+	 * <code>true</code> if the factor was kept.
+	 */
+	public static boolean addFactor(List<Algebra> algebras,
+			List<List<Integer>> generators, Algebra algebra, int[] values) {
+		if (values.length != generators.size())
+			throw new IllegalArgumentException();
+
+		algebras.add(algebra);
+
+		Iterator<List<Integer>> iter = generators.iterator();
+		for (int i = 0; i < values.length; ++i)
+			iter.next().add(values[i]);
+
+		int target = algebras.size() - 1;
+		if (isRedundantFactor(algebras, generators, target, 1)
+				|| isRedundantFactor(algebras, generators, target, 2)) {
+			removeFactor(algebras, generators, target);
+			return false;
+		}
+
+		return true;
+	}
+
 	public static void removeRedundantFactors(List<Algebra> algebras,
 			List<List<Integer>> generators) {
 		for (int testSize = 1; testSize <= 5; ++testSize) {
 			int size = algebras.size();
+			boolean[] removed = findRedundantFactors(algebras, generators,
+					testSize);
+
 			int target = size;
 			while (--target >= 0)
-				if (isRedundantFactor(algebras, generators, target, testSize))
+				if (removed[target])
 					removeFactor(algebras, generators, target);
 
 			if (algebras.size() == size && testSize >= 3)
@@ -155,6 +374,17 @@ public class FreeAlgebra implements Algebra {
 			generators[i] = algebra.toAbstractElem(iter.next());
 	}
 
+	protected void Init(List<Algebra> algs, List<List<Integer>> gens,
+			File directory, PrintStream log) throws IOException {
+		removeRedundantFactors(algs, gens);
+		algebra = new SubProdAlgebra(algs, gens, directory, log);
+
+		generators = new int[gens.size()];
+		Iterator<List<Integer>> iter = gens.iterator();
+		for (int i = 0; i < generators.length; ++i)
+			generators[i] = algebra.toAbstractElem(iter.next());
+	}
+
 	protected void Init(List<Algebra> algs, int size) {
 		List<Algebra> algebras = new ArrayList<Algebra>();
 		List<List<Integer>> generators = new ArrayList<List<Integer>>();
@@ -172,23 +402,14 @@ public class FreeAlgebra implements Algebra {
 				do {
 					SubAlgebra alg = new SubAlgebra(algebra);
 
-					for (int i = 0; i < size; ++i) {
-						// add the generator
-						int b = alg.toAbstractElem(args[i]);
-
-						List<Integer> function = generators.get(i);
-						function.add(b);
-					}
+					// add the generators
+					int[] values = new int[size];
+					for (int i = 0; i < size; ++i)
+						values[i] = alg.toAbstractElem(args[i]);
 
 					alg.generate();
-					algebras.add(new AlgebraBuffer(alg));
-
-					int target = algebras.size() - 1;
-					if (isRedundantFactor(algebras, generators, target, 1)
-							|| isRedundantFactor(algebras, generators, target,
-									2)) {
-						removeFactor(algebras, generators, target);
-					}
+					addFactor(algebras, generators, new AlgebraBuffer(alg),
+							values);
 				} while (arg.next());
 		}
 
@@ -215,4 +436,36 @@ public class FreeAlgebra implements Algebra {
 	public FreeAlgebra(List<Algebra> algebras, List<List<Integer>> generators) {
 		Init(algebras, generators);
 	}
+
+	/**
+	 * Generates the free algebra over the factors produced by the iterator,
+	 * where the generators take the same given values in every factor. The
+	 * factors are consumed one at a time and the redundant ones are dropped
+	 * right away, so only the surviving factors are kept in memory.
+	 */
+	public FreeAlgebra(Iterator<? extends Algebra> factors, int[] values) {
+		List<Algebra> algebras = new ArrayList<Algebra>();
+		List<List<Integer>> generators = new ArrayList<List<Integer>>();
+		for (int i = 0; i < values.length; ++i)
+			generators.add(new ArrayList<Integer>());
+
+		while (factors.hasNext())
+			addFactor(algebras, generators, factors.next(), values);
+
+		if (algebras.isEmpty())
+			throw new IllegalArgumentException();
+
+		Init(algebras, generators);
+	}
+
+	/**
+	 * Generates the free algebra with the closure spilled to the given
+	 * directory, see {@link ExternalClosure}. The statistics of the levels
+	 * are printed to <code>log</code> if it is not <code>null</code>.
+	 */
+	public FreeAlgebra(List<Algebra> algebras,
+			List<List<Integer>> generators, File directory, PrintStream log)
+			throws IOException {
+		Init(algebras, generators, directory, log);
+	}
 }
@@ -0,0 +1,526 @@
+package mmaroti.ua.alg;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.*;
+import mmaroti.ua.util.*;
+
+/**
+ * The same as {@link ComplexProdAlgebra}, but the sets of tuples are int
+ * handles of {@link IntDecisionDiagram} nodes. The handles of the empty and
+ * full sets are fixed, and the nodes are freed only by {@link #collect()},
+ * so the sets kept across a collection must be referenced.
+ */
+public class IntComplexProdAlgebra {
+	protected Algebra algebra;
+	protected int algebraSize;
+
+	public Algebra algebra() {
+		return algebra;
+	}
+
+	protected IntComplexProdAlgebra next;
+	protected int productLength;
+
+	protected IntDecisionDiagram diagram;
+
+	public IntDecisionDiagram diagram() {
+		return diagram;
+	}
+
+	protected int emptySet;
+
+	public int emptySet() {
+		return emptySet;
+	}
+
+	protected int fullSet;
+
+	public int fullSet() {
+		return fullSet;
+	}
+
+	public int count(int node) {
+		return diagram.getCount(node);
+	}
+
+	public void reference(int node) {
+		diagram.reference(node);
+	}
+
+	public void dereference(int node) {
+		diagram.dereference(node);
+	}
+
+	protected int[] nodePair;
+	protected int[] nodeSingle;
+
+	/**
+	 * The results of all levels are cached in a single computed table shared
+	 * by the levels, as in {@link ComplexProdAlgebra}. The handles of
+	 * different levels are not distinct, so the operation ids of a level
+	 * start at <code>cacheBase</code>.
+	 */
+	protected IntComputedTable cache;
+	protected int cacheBase;
+
+	public IntComputedTable getCache() {
+		return cache;
+	}
+
+	/**
+	 * Replaces the computed table of this level and the levels below it with
+	 * an empty one of the given size.
+	 */
+	public void setCacheSize(int size) {
+		IntComputedTable table = new IntComputedTable(size, cache
+				.getKeyLength());
+
+		for (IntComplexProdAlgebra p = this; p.next != null; p = p.next)
+			p.cache = table;
+	}
+
+	public int union(int a, int b) {
+		if (a == emptySet || a == b)
+			return b;
+		else if (b == emptySet)
+			return a;
+		else if (a == fullSet || b == fullSet)
+			return fullSet;
+
+		nodePair[0] = a;
+		nodePair[1] = b;
+		int ret = cache.get(cacheBase + ComplexProdAlgebra.UNION, nodePair);
+		if (ret >= 0)
+			return ret;
+
+		int[] subNodes = new int[algebraSize];
+		for (int i = 0; i < algebraSize; ++i)
+			subNodes[i] = next.union(diagram.getChild(a, i), diagram
+					.getChild(b, i));
+
+		int node = diagram.canonicalize(subNodes);
+		cache.put(cacheBase + ComplexProdAlgebra.UNION, nodePair, node);
+
+		return node;
+	}
+
+	public int intersection(int a, int b) {
+		if (a == fullSet || a == b)
+			return b;
+		else if (b == fullSet)
+			return a;
+		else if (a == emptySet || b == emptySet)
+			return emptySet;
+
+		nodePair[0] = a;
+		nodePair[1] = b;
+		int ret = cache.get(cacheBase + ComplexProdAlgebra.INTERSECTION,
+				nodePair);
+		if (ret >= 0)
+			return ret;
+
+		int[] subNodes = new int[algebraSize];
+		for (int i = 0; i < algebraSize; ++i)
+			subNodes[i] = next.intersection(diagram.getChild(a, i), diagram
+					.getChild(b, i));
+
+		int node = diagram.canonicalize(subNodes);
+		cache.put(cacheBase + ComplexProdAlgebra.INTERSECTION, nodePair,
+				node);
+
+		return node;
+	}
+
+	public int complement(int a) {
+		if (a == emptySet)
+			return fullSet;
+		else if (a == fullSet)
+			return emptySet;
+
+		nodeSingle[0] = a;
+		int ret = cache.get(cacheBase + ComplexProdAlgebra.COMPLEMENT,
+				nodeSingle);
+		if (ret >= 0)
+			return ret;
+
+		int[] subNodes = new int[algebraSize];
+		for (int i = 0; i < algebraSize; ++i)
+			subNodes[i] = next.complement(diagram.getChild(a, i));
+
+		int node = diagram.canonicalize(subNodes);
+		cache.put(cacheBase + ComplexProdAlgebra.COMPLEMENT, nodeSingle,
+				node);
+
+		return node;
+	}
+
+	/**
+	 * Returns the set of elements of <code>a</code> that are not in
+	 * <code>b</code>.
+	 */
+	public int difference(int a, int b) {
+		if (a == emptySet || b == fullSet || a == b)
+			return emptySet;
+		else if (b == emptySet)
+			return a;
+		else if (a == fullSet)
+			return complement(b);
+
+		nodePair[0] = a;
+		nodePair[1] = b;
+		int ret = cache.get(cacheBase + ComplexProdAlgebra.DIFFERENCE,
+				nodePair);
+		if (ret >= 0)
+			return ret;
+
+		int[] subNodes = new int[algebraSize];
+		for (int i = 0; i < algebraSize; ++i)
+			subNodes[i] = next.difference(diagram.getChild(a, i), diagram
+					.getChild(b, i));
+
+		int node = diagram.canonicalize(subNodes);
+		cache.put(cacheBase + ComplexProdAlgebra.DIFFERENCE, nodePair, node);
+
+		return node;
+	}
+
+	protected Op[] operations;
+
+	public int operationValue(int opIndex, int[] args) {
+		return operations[opIndex].value(args);
+	}
+
+	protected class Op {
+		protected Function operation;
+		protected Op nextOp;
+		protected int arity;
+		protected int opId;
+
+		public Op() {
+		}
+
+		public Op(int opIndex) {
+			operation = algebra.operations()[opIndex];
+			nextOp = next.operations[opIndex];
+			arity = operation.arity();
+			opId = cacheBase + ComplexProdAlgebra.OPERATION + opIndex;
+		}
+
+		public int value(int[] args) {
+			if (next == null) {
+				int i = args.length;
+				while (--i >= 0)
+					if (args[i] == emptySet)
+						return emptySet;
+
+				return fullSet;
+			}
+
+			int ret = cache.get(opId, args);
+			if (ret >= 0)
+				return ret;
+
+			int[] subNodes = new int[algebraSize];
+			Arrays.fill(subNodes, next.emptySet);
+
+			int[] intArgs = new int[arity];
+			int[] nodeArgs = new int[arity];
+			if (first(args, intArgs, nodeArgs))
+				do {
+					int value = operation.value(intArgs);
+					subNodes[value] = next.union(subNodes[value], nextOp
+							.value(nodeArgs));
+				} while (next(args, intArgs, nodeArgs));
+
+			int node = diagram.canonicalize(subNodes);
+			cache.put(opId, args, node);
+
+			return node;
+		}
+
+		/**
+		 * Iterates over the tuples of coordinates where none of the
+		 * children of the arguments is empty, like the inner
+		 * <code>Arg</code> class of {@link ComplexProdAlgebra}.
+		 */
+		protected boolean first(int[] args, int[] intArgs, int[] nodeArgs) {
+			int i = arity;
+			while (--i >= 0) {
+				int j = 0;
+				while (j < algebraSize
+						&& diagram.getChild(args[i], j) == next.emptySet)
+					++j;
+
+				if (j >= algebraSize)
+					return false;
+
+				intArgs[i] = j;
+				nodeArgs[i] = diagram.getChild(args[i], j);
+			}
+
+			return true;
+		}
+
+		protected boolean next(int[] args, int[] intArgs, int[] nodeArgs) {
+			int i = arity;
+			while (--i >= 0) {
+				int j = intArgs[i];
+				while (++j < algebraSize
+						&& diagram.getChild(args[i], j) == next.emptySet)
+					;
+
+				if (j < algebraSize) {
+					intArgs[i] = j;
+					nodeArgs[i] = diagram.getChild(args[i], j);
+					return true;
+				}
+
+				j = 0;
+				while (diagram.getChild(args[i], j) == next.emptySet)
+					++j;
+
+				intArgs[i] = j;
+				nodeArgs[i] = diagram.getChild(args[i], j);
+			}
+
+			return false;
+		}
+	}
+
+	protected IntComplexProdAlgebra[] productLevels() {
+		IntComplexProdAlgebra[] levels = new IntComplexProdAlgebra[productLength + 1];
+
+		IntComplexProdAlgebra p = this;
+		for (int i = 0; i <= productLength; ++i) {
+			levels[i] = p;
+			p = p.next;
+		}
+
+		return levels;
+	}
+
+	public Algebra[] algebras() {
+		Algebra[] algebras = new Algebra[productLength];
+
+		IntComplexProdAlgebra p = this;
+		for (int i = 0; i < productLength; ++i) {
+			algebras[i] = p.algebra;
+			p = p.next;
+		}
+
+		return algebras;
+	}
+
+	protected final int spike(int a, int rest) {
+		int[] subNodes = new int[algebraSize];
+		Arrays.fill(subNodes, next.emptySet);
+		subNodes[a] = rest;
+
+		return diagram.canonicalize(subNodes);
+	}
+
+	public int spike(int[] coords) {
+		if (coords.length != productLength)
+			throw new IllegalArgumentException();
+
+		IntComplexProdAlgebra[] levels = productLevels();
+
+		int node = levels[productLength].fullSet;
+		int i = productLength;
+		while (--i >= 0)
+			node = levels[i].spike(coords[i], node);
+
+		return node;
+	}
+
+	/**
+	 * Receives the progress of {@link IntComplexProdAlgebra#closure}, as
+	 * {@link ComplexProdAlgebra.ClosureListener} does.
+	 */
+	public interface ClosureListener {
+		public void closureStep(int step, int opIndex, int closure);
+	}
+
+	protected ClosureListener closureListener;
+
+	public void setClosureListener(ClosureListener closureListener) {
+		this.closureListener = closureListener;
+	}
+
+	/**
+	 * Returns the values of the operation on the tuples of <code>all</code>
+	 * that contain an element not in <code>old</code>, or possibly on all
+	 * tuples, as in {@link ComplexProdAlgebra}.
+	 */
+	protected int image(Op op, int old, int all) {
+		int[] args = new int[op.arity];
+		if (args.length == 0
+				|| old == emptySet
+				|| ComplexProdAlgebra.FRONTIER_RATIO
+						* ((long) count(all) - count(old)) > count(all)) {
+			Arrays.fill(args, all);
+			return op.value(args);
+		}
+
+		int frontier = difference(all, old);
+
+		int ret = emptySet;
+		for (int j = 0; j < args.length; ++j) {
+			for (int i = 0; i < args.length; ++i)
+				args[i] = i < j ? old : i == j ? frontier : all;
+
+			ret = union(ret, op.value(args));
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Returns the closure of the given set under the operations, as in
+	 * {@link ComplexProdAlgebra}. The intermediate sets are not referenced,
+	 * so {@link #collect()} must not be called from the listener.
+	 */
+	public int closure(int a) {
+		if (next == null)
+			return a;
+
+		// the set each operation was last applied to, or -1
+		int[] done = new int[operations.length];
+		Arrays.fill(done, -1);
+
+		int step = 0;
+		int index = 0;
+		int completed = 0;
+		while (completed < operations.length) {
+			if (done[index] != a) {
+				int old = done[index] >= 0 ? done[index] : emptySet;
+				done[index] = a;
+				a = union(a, image(operations[index], old, a));
+
+				if (closureListener != null)
+					closureListener.closureStep(++step, index, a);
+			}
+
+			if (done[index] == a) {
+				++completed;
+				if (++index >= operations.length)
+					index = 0;
+			} else
+				completed = 0;
+		}
+
+		return a;
+	}
+
+	/**
+	 * Clears the caches of this level and the levels below it, and frees the
+	 * nodes that are not reachable from the referenced ones. Returns the
+	 * number of freed nodes.
+	 */
+	public int collect() {
+		for (IntComplexProdAlgebra p = this; p.next != null; p = p.next)
+			p.cache.clear();
+
+		return diagram.collect();
+	}
+
+	/**
+	 * Returns the number of live nodes of this level and the levels below it.
+	 */
+	public long nodeCount() {
+		long count = 0;
+		for (IntComplexProdAlgebra p = this; p.next != null; p = p.next)
+			count += p.diagram.size();
+
+		return count;
+	}
+
+	protected void InitBoolean(int operationCount, int relationCount) {
+		algebraSize = 0;
+		productLength = 0;
+
+		diagram = new IntDecisionDiagram();
+		emptySet = IntDecisionDiagram.EMPTY;
+		fullSet = IntDecisionDiagram.FULL;
+
+		Op op = new Op();
+		operations = new Op[operationCount];
+		for (int i = 0; i < operationCount; ++i)
+			operations[i] = op;
+	}
+
+	protected void InitAlgebra(Algebra algebra) {
+		if (next == null)
+			throw new IllegalStateException();
+
+		this.algebra = algebra;
+		algebraSize = algebra.size();
+
+		productLength = next.productLength + 1;
+		diagram = new IntDecisionDiagram(algebraSize, next.diagram);
+
+		nodePair = new int[2];
+		nodeSingle = new int[1];
+
+		Function[] funcs = algebra.operations();
+		cacheBase = (productLength - 1)
+				* (ComplexProdAlgebra.OPERATION + funcs.length);
+
+		cache = next.cache;
+		if (cache == null) {
+			int keyLength = 2;
+			for (Function op : funcs)
+				keyLength = Math.max(keyLength, op.arity());
+
+			cache = new IntComputedTable(ComplexProdAlgebra.CACHE_SIZE,
+					keyLength);
+		}
+
+		int[] subNodes = new int[algebraSize];
+
+		Arrays.fill(subNodes, next.emptySet);
+		emptySet = diagram.canonicalize(subNodes);
+		diagram.reference(emptySet);
+
+		Arrays.fill(subNodes, next.fullSet);
+		fullSet = diagram.canonicalize(subNodes);
+		diagram.reference(fullSet);
+
+		operations = new Op[funcs.length];
+		for (int i = 0; i < funcs.length; ++i)
+			operations[i] = new Op(i);
+	}
+
+	public IntComplexProdAlgebra(int operationCount, int relationCount) {
+		InitBoolean(operationCount, relationCount);
+	}
+
+	public IntComplexProdAlgebra(Algebra algebra, IntComplexProdAlgebra next) {
+		this.next = next;
+		InitAlgebra(algebra);
+	}
+
+	public IntComplexProdAlgebra(Algebra algebra) {
+		next = new IntComplexProdAlgebra(algebra.operations().length, algebra
+				.relations().length);
+		InitAlgebra(algebra);
+	}
+
+	public IntComplexProdAlgebra(List<Algebra> algebras) {
+		if (algebras.isEmpty())
+			throw new IllegalArgumentException();
+
+		Algebra a = algebras.get(0);
+		next = new IntComplexProdAlgebra(a.operations().length, a
+				.relations().length);
+
+		int i = algebras.size();
+		while (--i >= 1)
+			next = new IntComplexProdAlgebra(algebras.get(i), next);
+
+		InitAlgebra(algebras.get(0));
+	}
+}
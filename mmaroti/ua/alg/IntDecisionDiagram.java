@@ -0,0 +1,260 @@
+package mmaroti.ua.alg;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.*;
+
+/**
+ * A decision diagram whose nodes are int handles. The children of node
+ * <code>h</code> are stored at <code>children[h * width]</code> through
+ * <code>children[h * width + width - 1]</code>, and they are handles of the
+ * next diagram. The nodes are made unique by an open addressing hash table
+ * of handles, so a node costs <code>4 * width + 12</code> bytes or so, and
+ * no objects or weak references are involved.
+ * <p>
+ * Nodes are never freed implicitly. The diagrams of a chain are collected
+ * together by {@link #collect()}, which keeps the nodes reachable from the
+ * referenced ones of every diagram of the chain and frees all others. The
+ * freed handles are reused, so every handle not referenced or reachable
+ * from a referenced one becomes invalid, and all caches keyed by handles
+ * must be cleared.
+ */
+public class IntDecisionDiagram {
+	public static final int EMPTY = 0;
+	public static final int FULL = 1;
+
+	protected final int width;
+	protected final IntDecisionDiagram next;
+
+	protected int[] children;
+	protected int[] counts;
+
+	/**
+	 * The number of handles ever allocated, the number of live nodes and the
+	 * first free handle, the free handles being linked through their counts
+	 * as <code>-2 - next</code>.
+	 */
+	protected int top;
+	protected int size;
+	protected int free = -1;
+
+	/**
+	 * The unique table containing <code>handle + 1</code> or zero for the
+	 * empty slots. Its length is a power of two at least twice the number of
+	 * live nodes.
+	 */
+	protected int[] table;
+
+	protected long[] marks;
+
+	/**
+	 * The number of times each node is referenced, indexed by handle.
+	 */
+	protected int[] references;
+
+	/**
+	 * Creates the terminal diagram with the two nodes {@link #EMPTY} and
+	 * {@link #FULL} of count zero and one.
+	 */
+	public IntDecisionDiagram() {
+		width = 0;
+		next = null;
+
+		children = new int[0];
+		counts = new int[] { 0, 1 };
+		references = new int[2];
+		top = size = 2;
+		table = new int[0];
+	}
+
+	/**
+	 * Creates an empty diagram whose nodes have the given number of children
+	 * from the given diagram.
+	 */
+	public IntDecisionDiagram(int width, IntDecisionDiagram next) {
+		if (width <= 0 || next == null)
+			throw new IllegalArgumentException();
+
+		this.width = width;
+		this.next = next;
+
+		children = new int[16 * width];
+		counts = new int[16];
+		references = new int[16];
+		table = new int[32];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public IntDecisionDiagram getNext() {
+		return next;
+	}
+
+	/**
+	 * Returns the number of live nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public final int getCount(int node) {
+		return counts[node];
+	}
+
+	public final int getChild(int node, int index) {
+		return children[node * width + index];
+	}
+
+	protected final int hash(int[] subNodes, int start) {
+		int a = 0x9e3779b9;
+		for (int i = 0; i < width; ++i)
+			a = (a ^ subNodes[start + i]) * 0x01000193;
+
+		return a ^ (a >>> 16);
+	}
+
+	protected final boolean matches(int node, int[] subNodes) {
+		int base = node * width;
+		for (int i = 0; i < width; ++i)
+			if (children[base + i] != subNodes[i])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Returns the unique node with the given children.
+	 */
+	public int canonicalize(int[] subNodes) {
+		if (width == 0 || subNodes.length != width)
+			throw new IllegalArgumentException();
+
+		int mask = table.length - 1;
+		int slot = hash(subNodes, 0) & mask;
+		for (int h; (h = table[slot]) != 0; slot = (slot + 1) & mask)
+			if (matches(h - 1, subNodes))
+				return h - 1;
+
+		int node = allocate();
+		System.arraycopy(subNodes, 0, children, node * width, width);
+
+		int count = 0;
+		for (int i = 0; i < width; ++i)
+			count += next.counts[subNodes[i]];
+		counts[node] = count;
+
+		if (2 * ++size > table.length)
+			rehash(2 * table.length);
+		else
+			table[slot] = node + 1;
+
+		return node;
+	}
+
+	protected int allocate() {
+		if (free >= 0) {
+			int node = free;
+			free = -2 - counts[node];
+			return node;
+		}
+
+		if (top == counts.length) {
+			counts = Arrays.copyOf(counts, 2 * top);
+			references = Arrays.copyOf(references, 2 * top);
+			children = Arrays.copyOf(children, 2 * top * width);
+		}
+
+		return top++;
+	}
+
+	protected void rehash(int length) {
+		table = new int[length];
+		int mask = length - 1;
+
+		for (int node = 0; node < top; ++node)
+			if (counts[node] >= 0) {
+				int slot = hash(children, node * width) & mask;
+				while (table[slot] != 0)
+					slot = (slot + 1) & mask;
+				table[slot] = node + 1;
+			}
+	}
+
+	/**
+	 * Protects the node and its descendants from collection until it is
+	 * dereferenced the same number of times.
+	 */
+	public void reference(int node) {
+		++references[node];
+	}
+
+	public void dereference(int node) {
+		if (references[node] <= 0)
+			throw new IllegalArgumentException("node is not referenced");
+
+		--references[node];
+	}
+
+	protected void mark(int node) {
+		if ((marks[node >>> 6] & (1L << node)) != 0)
+			return;
+
+		marks[node >>> 6] |= 1L << node;
+		if (next.width != 0) {
+			int base = node * width;
+			for (int i = 0; i < width; ++i)
+				next.mark(children[base + i]);
+		}
+	}
+
+	protected int sweep() {
+		int freed = 0;
+		for (int node = 0; node < top; ++node)
+			if (counts[node] >= 0
+					&& (marks[node >>> 6] & (1L << node)) == 0) {
+				counts[node] = -2 - free;
+				free = node;
+				++freed;
+			}
+
+		size -= freed;
+		marks = null;
+
+		int length = table.length;
+		while (length > 32 && 8 * size < length)
+			length >>>= 1;
+		rehash(length);
+
+		return freed;
+	}
+
+	/**
+	 * Frees the nodes of this diagram and the diagrams below it that are not
+	 * reachable from referenced nodes, and returns their number.
+	 */
+	public int collect() {
+		for (IntDecisionDiagram d = this; d.width != 0; d = d.next)
+			d.marks = new long[(d.top + 63) >>> 6];
+
+		for (IntDecisionDiagram d = this; d.width != 0; d = d.next)
+			for (int node = 0; node < d.top; ++node)
+				if (d.references[node] > 0)
+					d.mark(node);
+
+		int freed = 0;
+		for (IntDecisionDiagram d = this; d.width != 0; d = d.next)
+			freed += d.sweep();
+
+		return freed;
+	}
+
+	@Override
+	public String toString() {
+		return "IntDecisionDiagram width " + width + " size " + size
+				+ " capacity " + counts.length;
+	}
+}
@@ -4,37 +4,273 @@ package mmaroti.ua.alg;
  *	Copyright (C) 2001 Miklos Maroti
  */
 
+import java.io.*;
 import java.util.*;
 import mmaroti.ua.util.*;
 
 public class SubProdAlgebra implements Algebra {
 	protected DecisionDiagram.Node universe;
+	protected int universeSize;
 	protected Algebra[] algebras;
 
 	@Override
 	public int size() {
-		return universe.count;
+		return universeSize;
 	}
 
 	public Algebra[] algebras() {
 		return algebras;
 	}
 
-	public void toConcreteElem(int index, int[] func) {
-		if (index < 0 || index >= universe.count
-				|| func.length != algebras.length)
+	/**
+	 * The nodes of the universe are numbered in depth first order, the root
+	 * being zero. For every node we keep the numbers of its children and the
+	 * prefix sums of their counts, so the child containing an index is found
+	 * by a division if all children have the same count, and by a binary
+	 * search otherwise.
+	 */
+	protected int[][] children;
+	protected int[][] offsets;
+	protected int[] strides;
+
+	protected void numberNodes() {
+		universeSize = universe.count;
+
+		IdentityHashMap<DecisionDiagram.Node, Integer> numbers = new IdentityHashMap<DecisionDiagram.Node, Integer>();
+		List<DecisionDiagram.Node> nodes = new ArrayList<DecisionDiagram.Node>();
+
+		numbers.put(universe, 0);
+		nodes.add(universe);
+
+		for (int v = 0; v < nodes.size(); ++v) {
+			DecisionDiagram.Node[] subNodes = nodes.get(v).subNodes;
+			for (int j = 0; j < subNodes.length; ++j)
+				if (!numbers.containsKey(subNodes[j])) {
+					numbers.put(subNodes[j], nodes.size());
+					nodes.add(subNodes[j]);
+				}
+		}
+
+		children = new int[nodes.size()][];
+		offsets = new int[nodes.size()][];
+		strides = new int[nodes.size()];
+
+		for (int v = 0; v < children.length; ++v) {
+			DecisionDiagram.Node[] subNodes = nodes.get(v).subNodes;
+			int[] child = new int[subNodes.length];
+			int[] offset = new int[subNodes.length + 1];
+
+			int stride = subNodes.length > 0 ? subNodes[0].count : 0;
+			for (int j = 0; j < subNodes.length; ++j) {
+				child[j] = numbers.get(subNodes[j]);
+				offset[j + 1] = offset[j] + subNodes[j].count;
+
+				if (subNodes[j].count != stride)
+					stride = 0;
+			}
+
+			children[v] = child;
+			offsets[v] = offset;
+			strides[v] = stride;
+		}
+	}
+
+	/**
+	 * Numbers the nodes of a universe given as a node of an
+	 * {@link IntComplexProdAlgebra}. The nodes of a level are the children of
+	 * the nodes of the previous level, so they are numbered level by level.
+	 */
+	protected void numberNodes(IntComplexProdAlgebra complex, int root) {
+		universeSize = complex.count(root);
+
+		List<int[]> levels = new ArrayList<int[]>();
+		int total = 0;
+
+		int[] level = new int[] { root };
+		IntDecisionDiagram diagram = complex.diagram();
+		for (;;) {
+			levels.add(level);
+			total += level.length;
+			if (diagram.getWidth() == 0)
+				break;
+
+			HashMap<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+			List<Integer> nodes = new ArrayList<Integer>();
+			for (int node : level)
+				for (int j = 0; j < diagram.getWidth(); ++j) {
+					int c = diagram.getChild(node, j);
+					if (!numbers.containsKey(c)) {
+						numbers.put(c, nodes.size());
+						nodes.add(c);
+					}
+				}
+
+			level = new int[nodes.size()];
+			for (int k = 0; k < level.length; ++k)
+				level[k] = nodes.get(k);
+			diagram = diagram.getNext();
+		}
+
+		children = new int[total][];
+		offsets = new int[total][];
+		strides = new int[total];
+
+		int v = 0;
+		int first = 0;
+		diagram = complex.diagram();
+		for (int i = 0; i < levels.size(); ++i) {
+			level = levels.get(i);
+			first += level.length;
+
+			HashMap<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+			if (i + 1 < levels.size()) {
+				int[] below = levels.get(i + 1);
+				for (int k = 0; k < below.length; ++k)
+					numbers.put(below[k], first + k);
+			}
+
+			int width = diagram.getWidth();
+			for (int node : level) {
+				int[] child = new int[width];
+				int[] offset = new int[width + 1];
+
+				int stride = width > 0 ? diagram.getNext().getCount(
+						diagram.getChild(node, 0)) : 0;
+				for (int j = 0; j < width; ++j) {
+					int c = diagram.getChild(node, j);
+					int count = diagram.getNext().getCount(c);
+
+					child[j] = numbers.get(c);
+					offset[j + 1] = offset[j] + count;
+
+					if (count != stride)
+						stride = 0;
+				}
+
+				children[v] = child;
+				offsets[v] = offset;
+				strides[v] = stride;
+				++v;
+			}
+
+			diagram = diagram.getNext();
+		}
+	}
+
+	/**
+	 * Returns the child of the given node that contains the given index,
+	 * which must be less than the count of the node.
+	 */
+	protected final int findChild(int node, int index) {
+		int stride = strides[node];
+		if (stride > 0)
+			return index / stride;
+
+		int[] offset = offsets[node];
+		int lo = 0;
+		int hi = offset.length - 1;
+
+		// the last j with offset[j] <= index, where the child is not empty
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (offset[mid] <= index)
+				lo = mid;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+
+	protected void decode(int index, int[] func, int pos) {
+		int v = 0;
+		for (int i = 0; i < algebras.length; ++i) {
+			int j = findChild(v, index);
+			index -= offsets[v][j];
+
+			func[pos + i] = j;
+			v = children[v][j];
+		}
+	}
+
+	/**
+	 * The decoded elements, stored consecutively in a flat array if that
+	 * fits in {@link #MAX_ELEMENTS} entries, otherwise the most recently used
+	 * ones in a bounded map.
+	 */
+	protected static final int MAX_ELEMENTS = 1 << 24;
+	protected static final int RECENT_ELEMENTS = 1 << 14;
+
+	protected int[] elements;
+	protected LinkedHashMap<Integer, int[]> recentElements;
+
+	protected void fillElements(int node, int depth, int[] func, int[] pos) {
+		if (depth == algebras.length) {
+			System.arraycopy(func, 0, elements, pos[0], depth);
+			pos[0] += depth;
+			return;
+		}
+
+		int[] child = children[node];
+		int[] offset = offsets[node];
+		for (int j = 0; j < child.length; ++j)
+			if (offset[j + 1] > offset[j]) {
+				func[depth] = j;
+				fillElements(child[j], depth + 1, func, pos);
+			}
+	}
+
+	protected void initElements() {
+		if ((long) universeSize * algebras.length <= MAX_ELEMENTS) {
+			elements = new int[universeSize * algebras.length];
+			if (universeSize > 0)
+				fillElements(0, 0, new int[algebras.length], new int[1]);
+		} else {
+			recentElements = new LinkedHashMap<Integer, int[]>(
+					2 * RECENT_ELEMENTS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, int[]> e) {
+					return size() > RECENT_ELEMENTS;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns the array containing the decoded element of the given index,
+	 * starting at <code>index * algebras.length</code> if the flat cache is
+	 * used and at zero otherwise. The returned array must not be modified.
+	 */
+	protected final int[] element(int index) {
+		if (index < 0 || index >= universeSize)
 			throw new IllegalArgumentException();
 
-		DecisionDiagram.Node[] subNodes = universe.subNodes;
-		for (int i = 0; i < func.length; ++i) {
-			int j = 0;
-			while ((index -= subNodes[j].count) >= 0)
-				++j;
-			index += subNodes[j].count;
+		if (elements != null)
+			return elements;
 
-			func[i] = j;
-			subNodes = subNodes[j].subNodes;
+		int[] func = recentElements.get(index);
+		if (func == null) {
+			func = new int[algebras.length];
+			decode(index, func, 0);
+			recentElements.put(index, func);
 		}
+
+		return func;
+	}
+
+	protected final int elementBase(int index) {
+		return elements != null ? index * algebras.length : 0;
+	}
+
+	public void toConcreteElem(int index, int[] func) {
+		if (index < 0 || index >= universeSize
+				|| func.length != algebras.length)
+			throw new IllegalArgumentException();
+
+		System.arraycopy(element(index), elementBase(index), func, 0,
+				func.length);
 	}
 
 	public int[] toConcreteElem(int index) {
@@ -48,13 +284,10 @@ public class SubProdAlgebra implements Algebra {
 			throw new IllegalArgumentException();
 
 		int index = 0;
-		DecisionDiagram.Node[] subNodes = universe.subNodes;
+		int v = 0;
 		for (int i = 0; i < func.length; ++i) {
-			int j = func[i];
-			while (--j >= 0)
-				index += subNodes[j].count;
-
-			subNodes = subNodes[func[i]].subNodes;
+			index += offsets[v][func[i]];
+			v = children[v][func[i]];
 		}
 
 		return index;
@@ -65,16 +298,13 @@ public class SubProdAlgebra implements Algebra {
 			throw new IllegalArgumentException();
 
 		int index = 0;
-		DecisionDiagram.Node[] subNodes = universe.subNodes;
+		int v = 0;
 		Iterator<Integer> iter = func.iterator();
 		while (iter.hasNext()) {
 			int a = iter.next();
 
-			int j = a;
-			while (--j >= 0)
-				index += subNodes[j].count;
-
-			subNodes = subNodes[a].subNodes;
+			index += offsets[v][a];
+			v = children[v][a];
 		}
 
 		return index;
@@ -93,7 +323,7 @@ public class SubProdAlgebra implements Algebra {
 
 		@Override
 		public int size() {
-			return universe.count;
+			return universeSize;
 		}
 
 		@Override
@@ -102,8 +332,8 @@ public class SubProdAlgebra implements Algebra {
 		}
 
 		protected int[] funcArgs; // arity
-		protected int[] indices; // arity
-		protected DecisionDiagram.Node[] nodes; // arity
+		protected int[][] sources; // arity
+		protected int[] bases; // arity
 
 		@Override
 		public int value(int[] args) {
@@ -111,37 +341,20 @@ public class SubProdAlgebra implements Algebra {
 				throw new IllegalArgumentException();
 
 			for (int k = 0; k < arity; ++k) {
-				if (args[k] < 0 || args[k] >= universe.count)
-					throw new IllegalArgumentException();
-
-				nodes[k] = universe;
-				indices[k] = args[k];
+				sources[k] = element(args[k]);
+				bases[k] = elementBase(args[k]);
 			}
 
 			int resultIndex = 0;
-			DecisionDiagram.Node resultNode = universe;
+			int resultNode = 0;
 
 			for (int i = 0; i < functions.length; ++i) {
-				for (int k = 0; k < arity; ++k) {
-					DecisionDiagram.Node[] subNodes = nodes[k].subNodes;
-					int index = indices[k];
-
-					int j = 0;
-					while ((index -= subNodes[j].count) >= 0)
-						++j;
-					index += subNodes[j].count;
-
-					funcArgs[k] = j;
-					nodes[k] = subNodes[j];
-					indices[k] = index;
-				}
+				for (int k = 0; k < arity; ++k)
+					funcArgs[k] = sources[k][bases[k] + i];
 
-				DecisionDiagram.Node[] subNodes = resultNode.subNodes;
 				int j = functions[i].value(funcArgs);
-				resultNode = subNodes[j];
-
-				while (--j >= 0)
-					resultIndex += subNodes[j].count;
+				resultIndex += offsets[resultNode][j];
+				resultNode = children[resultNode][j];
 			}
 
 			return resultIndex;
@@ -155,8 +368,8 @@ public class SubProdAlgebra implements Algebra {
 			arity = functions[0].arity();
 
 			funcArgs = new int[arity];
-			indices = new int[arity];
-			nodes = new DecisionDiagram.Node[arity];
+			sources = new int[arity][];
+			bases = new int[arity];
 		}
 	}
 
@@ -173,7 +386,7 @@ public class SubProdAlgebra implements Algebra {
 
 		@Override
 		public int size() {
-			return universe.count;
+			return universeSize;
 		}
 
 		@Override
@@ -182,8 +395,8 @@ public class SubProdAlgebra implements Algebra {
 		}
 
 		protected int[] funcArgs; // arity
-		protected int[] indices; // arity
-		protected DecisionDiagram.Node[] nodes; // arity
+		protected int[][] sources; // arity
+		protected int[] bases; // arity
 
 		@Override
 		public int value(int[] args) {
@@ -191,27 +404,13 @@ public class SubProdAlgebra implements Algebra {
 				throw new IllegalArgumentException();
 
 			for (int k = 0; k < arity; ++k) {
-				if (args[k] < 0 || args[k] >= universe.count)
-					throw new IllegalArgumentException();
-
-				nodes[k] = universe;
-				indices[k] = args[k];
+				sources[k] = element(args[k]);
+				bases[k] = elementBase(args[k]);
 			}
 
 			for (int i = 0; i < functions.length; ++i) {
-				for (int k = 0; k < arity; ++k) {
-					DecisionDiagram.Node[] subNodes = nodes[k].subNodes;
-					int index = indices[k];
-
-					int j = 0;
-					while ((index -= subNodes[j].count) >= 0)
-						++j;
-					index += subNodes[j].count;
-
-					funcArgs[k] = j;
-					nodes[k] = subNodes[j];
-					indices[k] = index;
-				}
+				for (int k = 0; k < arity; ++k)
+					funcArgs[k] = sources[k][bases[k] + i];
 
 				int a = functions[i].value(funcArgs);
 				if (a != 1)
@@ -229,12 +428,14 @@ public class SubProdAlgebra implements Algebra {
 			arity = functions[0].arity();
 
 			funcArgs = new int[arity];
-			indices = new int[arity];
-			nodes = new DecisionDiagram.Node[arity];
+			sources = new int[arity][];
+			bases = new int[arity];
 		}
 	}
 
 	protected void InitOpRel() {
+		initElements();
+
 		int index = algebras[0].operations().length;
 		operations = new Op[index];
 		while (--index >= 0)
@@ -249,12 +450,51 @@ public class SubProdAlgebra implements Algebra {
 	public SubProdAlgebra(Algebra[] algebras, DecisionDiagram.Node universe) {
 		this.algebras = algebras;
 		this.universe = universe;
+		numberNodes();
+		InitOpRel();
+	}
+
+	/**
+	 * Creates the subproduct whose universe is the given node of the given
+	 * {@link IntComplexProdAlgebra}.
+	 */
+	public SubProdAlgebra(Algebra[] algebras, IntComplexProdAlgebra complex,
+			int universe) {
+		this.algebras = algebras;
+		numberNodes(complex, universe);
 		InitOpRel();
 	}
 
 	public SubProdAlgebra(List<Algebra> algebras, List<List<Integer>> generators) {
+		this(algebras, generators, false);
+	}
+
+	/**
+	 * Generates the universe in an {@link IntComplexProdAlgebra} if
+	 * <code>compact</code> is set, and in a {@link ComplexProdAlgebra}
+	 * otherwise. The former needs much less memory for the same number of
+	 * nodes.
+	 */
+	public SubProdAlgebra(List<Algebra> algebras,
+			List<List<Integer>> generators, boolean compact) {
 		this.algebras = algebras.toArray(new Algebra[algebras.size()]);
 
+		if (compact) {
+			IntComplexProdAlgebra complex = new IntComplexProdAlgebra(
+					algebras);
+			int universe = complex.emptySet();
+
+			Iterator<List<Integer>> iter = generators.iterator();
+			while (iter.hasNext())
+				universe = complex.union(universe, complex.spike(Arrays2
+						.toIntArray(iter.next())));
+
+			universe = complex.closure(universe);
+			numberNodes(complex, universe);
+			InitOpRel();
+			return;
+		}
+
 		ComplexProdAlgebra complex = new ComplexProdAlgebra(algebras);
 		universe = complex.emptySet();
 
@@ -266,6 +506,32 @@ public class SubProdAlgebra implements Algebra {
 		}
 
 		universe = complex.closure(universe);
+		numberNodes();
+		InitOpRel();
+	}
+
+	/**
+	 * Generates the universe with an {@link ExternalClosure} that keeps the
+	 * levels of the closure in files of the given directory, and converts the
+	 * result to a decision diagram. Use this when the set of tuples does not
+	 * fit in memory but its decision diagram does.
+	 */
+	public SubProdAlgebra(List<Algebra> algebras,
+			List<List<Integer>> generators, File directory, PrintStream log)
+			throws IOException {
+		this.algebras = algebras.toArray(new Algebra[algebras.size()]);
+
+		ExternalClosure closure = new ExternalClosure(algebras, generators,
+				directory, 1 << 22);
+		try {
+			closure.setLog(log);
+			closure.generate();
+			universe = closure.toUniverse(new ComplexProdAlgebra(algebras));
+		} finally {
+			closure.delete();
+		}
+
+		numberNodes();
 		InitOpRel();
 	}
 }
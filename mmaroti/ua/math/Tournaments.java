@@ -32,58 +32,270 @@ public class Tournaments
 		return alg;
 	}
 	
-	public static List<Algebra> createAllCompletions(FunctionBuffer relation)
+	/**
+	 * Enumerates the completions of a partial tournament one at a time. The
+	 * relation is not changed, negative values mark the undetermined edges.
+	 * If <code>skipIsomorphic</code> is set, then the completions isomorphic
+	 * to an earlier one are skipped. This is only correct for questions that
+	 * do not depend on the labeling of the elements, for example the variety
+	 * generated by the completions, but not for the free algebra over the
+	 * partial tournament.
+	 */
+	public static Iterator<Algebra> completions(FunctionBuffer relation,
+		boolean skipIsomorphic)
+	{
+		return new Completions(relation, skipIsomorphic);
+	}
+
+	protected static class Completions implements Iterator<Algebra>
+	{
+		protected FunctionBuffer relation;
+		protected int[] indices;
+		protected boolean hasNext;
+		protected Set<BitSet> seen;
+		protected Algebra next;
+
+		public Completions(FunctionBuffer relation, boolean skipIsomorphic)
+		{
+			int size = relation.size();
+			this.relation = (FunctionBuffer)relation.clone();
+
+			indices = new int[(size * (size-1)) / 2];
+			int indexCount = 0;
+			for(int i = 0; i < size-1; ++i)
+				for(int j = i+1; j < size; ++j)
+					if( relation.value(i,j) < 0 )
+					{
+						indices[indexCount++] = relation.index(i,j);
+						this.relation.set(i,j,0);
+					}
+
+			indices = Arrays.copyOf(indices, indexCount);
+			hasNext = true;
+
+			if( skipIsomorphic )
+				seen = new HashSet<BitSet>();
+
+			advance();
+		}
+
+		/**
+		 * Finds the next completion to be returned.
+		 */
+		protected void advance()
+		{
+			int[] buffer = relation.buffer();
+			next = null;
+
+			while( next == null && hasNext )
+			{
+				if( seen == null || seen.add(canonicalKey(relation)) )
+					next = createTournament(relation);
+
+				int i;
+				for(i = 0; i < indices.length && ++buffer[indices[i]] > 1 ; ++i)
+					buffer[indices[i]] = 0;
+
+				hasNext = i < indices.length;
+			}
+		}
+
+		public boolean hasNext()
+		{
+			return next != null;
+		}
+
+		public Algebra next()
+		{
+			if( next == null )
+				throw new NoSuchElementException();
+
+			Algebra alg = next;
+			advance();
+			return alg;
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Returns the adjacency bits of the tournament, where <code>i</code> beats
+	 * <code>j</code> if <code>i &lt; j</code> and the relation is nonzero at
+	 * <code>(i,j)</code>, or <code>j &lt; i</code> and it is zero at
+	 * <code>(j,i)</code>.
+	 */
+	protected static boolean[][] beats(FunctionBuffer relation)
 	{
 		int size = relation.size();
-		int[] indices = new int[(size * (size-1)) / 2];
-		
-		int indexCount = 0;
+		boolean[][] beats = new boolean[size][size];
+
 		for(int i = 0; i < size-1; ++i)
 			for(int j = i+1; j < size; ++j)
-				if( relation.value(i,j) < 0 )
+			{
+				boolean b = relation.value(i,j) != 0;
+				beats[i][j] = b;
+				beats[j][i] = !b;
+			}
+
+		return beats;
+	}
+
+	/**
+	 * Returns a key that is the same for two tournaments if and only if they
+	 * are isomorphic. The vertices are first colored by their score, and the
+	 * colors are refined by the colors of the vertices they beat until they
+	 * are stable. Then the key is the least adjacency bit string over the
+	 * orderings that list the color classes in order, where the bits are
+	 * ordered by their larger position, so partial orderings that already
+	 * produce a larger prefix are pruned.
+	 */
+	public static BitSet canonicalKey(FunctionBuffer relation)
+	{
+		boolean[][] beats = beats(relation);
+		int size = beats.length;
+
+		int[] colors = new int[size];
+		int colorCount = 1;
+		for(;;)
+		{
+			long[] signatures = new long[size];
+			for(int i = 0; i < size; ++i)
+			{
+				int[] counts = new int[colorCount];
+				for(int j = 0; j < size; ++j)
+					if( beats[i][j] )
+						++counts[colors[j]];
+
+				signatures[i] = ((long)colors[i] << 32) | (Arrays.hashCode(counts) & 0xffffffffL);
+			}
+
+			long[] sorted = signatures.clone();
+			Arrays.sort(sorted);
+
+			int[] newColors = new int[size];
+			int newCount = 0;
+			for(int k = 0; k < size; ++k)
+				if( k == 0 || sorted[k] != sorted[k-1] )
+					sorted[newCount++] = sorted[k];
+
+			for(int i = 0; i < size; ++i)
+				newColors[i] = Arrays.binarySearch(sorted, 0, newCount, signatures[i]);
+
+			colors = newColors;
+			if( newCount == colorCount )
+				break;
+
+			colorCount = newCount;
+		}
+
+		Canonizer canonizer = new Canonizer(beats, colors);
+		canonizer.search(0);
+		return canonizer.best;
+	}
+
+	protected static class Canonizer
+	{
+		protected boolean[][] beats;
+		protected int[] colors;
+		protected int[] order;
+		protected boolean[] used;
+		protected BitSet current;
+		protected BitSet best;
+
+		/**
+		 * The color of every position, in increasing order.
+		 */
+		protected int[] positions;
+
+		public Canonizer(boolean[][] beats, int[] colors)
+		{
+			this.beats = beats;
+			this.colors = colors;
+			order = new int[beats.length];
+			used = new boolean[beats.length];
+			current = new BitSet();
+
+			positions = colors.clone();
+			Arrays.sort(positions);
+		}
+
+		/**
+		 * Compares the bits of <code>current</code> and <code>best</code>
+		 * below the given bit, where <code>best</code> is not <code>null</code>.
+		 */
+		protected int compare(int length)
+		{
+			BitSet diff = (BitSet)current.clone();
+			diff.xor(best);
+
+			int i = diff.nextSetBit(0);
+			if( i < 0 || i >= length )
+				return 0;
+
+			return current.get(i) ? 1 : -1;
+		}
+
+		protected void search(int position)
+		{
+			if( position == order.length )
+			{
+				if( best == null || compare(position * (position-1) / 2) < 0 )
+					best = (BitSet)current.clone();
+
+				return;
+			}
+
+			int offset = position * (position-1) / 2;
+			for(int v = 0; v < order.length; ++v)
+				if( !used[v] && colors[v] == positions[position] )
 				{
-					indices[indexCount++] = relation.index(i,j);
-					relation.set(i,j,0);
+					for(int p = 0; p < position; ++p)
+						current.set(offset + p, beats[order[p]][v]);
+
+					int length = offset + position;
+					if( best != null && compare(length) > 0 )
+						continue;
+
+					used[v] = true;
+					order[position] = v;
+					search(position + 1);
+					used[v] = false;
 				}
-				
-		int[] buffer = relation.buffer();
+
+			current.clear(offset, offset + position);
+		}
+	}
+
+	public static List<Algebra> createAllCompletions(FunctionBuffer relation)
+	{
 		List<Algebra> algebras = new ArrayList<Algebra>();
 
-		int i;
-		do
-		{
-			algebras.add(createTournament(relation));
-			
-			for(i = 0; i < indexCount && ++buffer[indices[i]] > 1 ; ++i)
-				buffer[indices[i]] = 0;
+		Iterator<Algebra> iter = completions(relation, false);
+		while( iter.hasNext() )
+			algebras.add(iter.next());
 
-		} while( i < indexCount );
-		
 		return algebras;
 	}
-	
+
+	/**
+	 * Returns the free algebra over the partial tournament. The completions
+	 * are generated lazily, and the ones that are redundant in the free
+	 * algebra are dropped as soon as they are generated.
+	 */
 	public static Tournament freeAlgebraOver(int[] partial)
 	{
 		int size = (int)Math.round(Math.sqrt(partial.length));
 		if( size * size != partial.length )
 			throw new IllegalArgumentException();
 
-		List<Algebra> algebras = createAllCompletions(
-			new FunctionBuffer(size, 2, partial));
-
-		List<List<Integer>> generators = new ArrayList<List<Integer>>();
+		int[] values = new int[size];
 		for(int i = 0; i < size; ++i)
-		{
-			List<Integer> function = new ArrayList<Integer>();
-			Integer n = new Integer(i);
-
-			int j = algebras.size();
-			while( --j >= 0 )
-				function.add(n);
-
-			generators.add(function);
-		}
+			values[i] = i;
 
-		return new Tournament(new FreeAlgebra(algebras, generators));
+		return new Tournament(new FreeAlgebra(
+			completions(new FunctionBuffer(size, 2, partial), false), values));
 	}
 }
@@ -51,6 +51,7 @@ public class FilterNode extends Node
 	{
 		int size = algebra.size();
 		Function ops = algebra.operations()[0];
+		CongruenceGenerator generator = new CongruenceGenerator(algebra);
 		
 		for(int a = 0; a < size-1; ++a)
 			for(int b = a+1; b< size; ++b)
@@ -59,8 +60,8 @@ public class FilterNode extends Node
 				if( c == a || c == b )
 					continue;
 				
-				Equivalence ac = FactorAlgebra.congruence(algebra, a, c);
-				Equivalence bc = FactorAlgebra.congruence(algebra, b, c);
+				Equivalence ac = generator.congruence(a, c);
+				Equivalence bc = generator.congruence(b, c);
 				
 				if( ! Equivalence.meet(ac, bc).isZero() )
 					return false;
@@ -0,0 +1,149 @@
+package mmaroti.ua.util;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.Arrays;
+
+/**
+ * A fixed size, direct mapped cache of operation results, as the computed
+ * table of a BDD package. An entry is keyed by an operation id and at most
+ * <code>keyLength</code> operands compared by identity, and a colliding entry
+ * simply overwrites the old one. The table holds strong references to at
+ * most <code>size</code> entries, so its memory use is fixed.
+ */
+public class ComputedTable<T> {
+	protected final int keyLength;
+	protected final int mask;
+
+	/**
+	 * The operation id plus one of the entries, or zero for the empty slots,
+	 * and the operands followed by the result.
+	 */
+	protected final int[] ops;
+	protected final Object[] entries;
+
+	protected long hits;
+	protected long misses;
+	protected long overwrites;
+
+	/**
+	 * Creates a table with <code>size</code> rounded up to a power of two
+	 * slots whose entries have at most <code>keyLength</code> operands.
+	 */
+	public ComputedTable(int size, int keyLength) {
+		if (size <= 0 || size > 1 << 30 || keyLength < 0)
+			throw new IllegalArgumentException();
+
+		int length = Integer.highestOneBit(size);
+		if (length < size)
+			length <<= 1;
+
+		this.keyLength = keyLength;
+		mask = length - 1;
+		ops = new int[length];
+		entries = new Object[length * (keyLength + 1)];
+	}
+
+	public int size() {
+		return mask + 1;
+	}
+
+	public int getKeyLength() {
+		return keyLength;
+	}
+
+	protected final int slot(int op, T[] args) {
+		int a = (op + 1) * 0x9e3779b9;
+		for (int i = 0; i < args.length; ++i)
+			a = (a ^ System.identityHashCode(args[i])) * 0x01000193;
+
+		return (a ^ (a >>> 15)) & mask;
+	}
+
+	protected final boolean matches(int slot, int op, T[] args) {
+		if (ops[slot] != op + 1)
+			return false;
+
+		int base = slot * (keyLength + 1);
+		for (int i = 0; i < args.length; ++i)
+			if (entries[base + i] != args[i])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Returns the cached result of the operation on the given operands, or
+	 * <code>null</code> if it is not in the table.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int op, T[] args) {
+		if (args.length > keyLength)
+			return null;
+
+		int slot = slot(op, args);
+		if (matches(slot, op, args)) {
+			++hits;
+			return (T) entries[slot * (keyLength + 1) + keyLength];
+		}
+
+		++misses;
+		return null;
+	}
+
+	/**
+	 * Stores the result of the operation on the given operands, overwriting
+	 * the entry in its slot. The operands are copied.
+	 */
+	public void put(int op, T[] args, T result) {
+		if (args.length > keyLength)
+			return;
+
+		int slot = slot(op, args);
+		if (ops[slot] != 0 && !matches(slot, op, args))
+			++overwrites;
+
+		int base = slot * (keyLength + 1);
+		System.arraycopy(args, 0, entries, base, args.length);
+		for (int i = args.length; i < keyLength; ++i)
+			entries[base + i] = null;
+		entries[base + keyLength] = result;
+		ops[slot] = op + 1;
+	}
+
+	/**
+	 * Removes all entries, but keeps the counters.
+	 */
+	public void clear() {
+		Arrays.fill(ops, 0);
+		Arrays.fill(entries, null);
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getOverwrites() {
+		return overwrites;
+	}
+
+	/**
+	 * Returns the ratio of hits to lookups, or zero if there were none.
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "ComputedTable size " + size() + " hits " + hits + " misses "
+				+ misses + " overwrites " + overwrites;
+	}
+}
@@ -0,0 +1,143 @@
+package mmaroti.ua.util;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.Arrays;
+
+/**
+ * The same as {@link ComputedTable}, but the operands and results are
+ * non-negative ints, such as the handles of an
+ * {@link mmaroti.ua.alg.IntDecisionDiagram}.
+ */
+public class IntComputedTable {
+	protected final int keyLength;
+	protected final int mask;
+
+	/**
+	 * The operation id plus one of the entries, or zero for the empty slots,
+	 * and the operands followed by the result.
+	 */
+	protected final int[] ops;
+	protected final int[] entries;
+
+	protected long hits;
+	protected long misses;
+	protected long overwrites;
+
+	/**
+	 * Creates a table with <code>size</code> rounded up to a power of two
+	 * slots whose entries have at most <code>keyLength</code> operands.
+	 */
+	public IntComputedTable(int size, int keyLength) {
+		if (size <= 0 || size > 1 << 30 || keyLength < 0)
+			throw new IllegalArgumentException();
+
+		int length = Integer.highestOneBit(size);
+		if (length < size)
+			length <<= 1;
+
+		this.keyLength = keyLength;
+		mask = length - 1;
+		ops = new int[length];
+		entries = new int[length * (keyLength + 1)];
+	}
+
+	public int size() {
+		return mask + 1;
+	}
+
+	public int getKeyLength() {
+		return keyLength;
+	}
+
+	protected final int slot(int op, int[] args) {
+		int a = (op + 1) * 0x9e3779b9;
+		for (int i = 0; i < args.length; ++i)
+			a = (a ^ args[i]) * 0x01000193;
+
+		return (a ^ (a >>> 15)) & mask;
+	}
+
+	protected final boolean matches(int slot, int op, int[] args) {
+		if (ops[slot] != op + 1)
+			return false;
+
+		int base = slot * (keyLength + 1);
+		for (int i = 0; i < args.length; ++i)
+			if (entries[base + i] != args[i])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Returns the cached result of the operation on the given operands, or
+	 * <code>-1</code> if it is not in the table.
+	 */
+	public int get(int op, int[] args) {
+		if (args.length > keyLength)
+			return -1;
+
+		int slot = slot(op, args);
+		if (matches(slot, op, args)) {
+			++hits;
+			return entries[slot * (keyLength + 1) + keyLength];
+		}
+
+		++misses;
+		return -1;
+	}
+
+	/**
+	 * Stores the result of the operation on the given operands, overwriting
+	 * the entry in its slot. The operands are copied.
+	 */
+	public void put(int op, int[] args, int result) {
+		if (args.length > keyLength)
+			return;
+
+		int slot = slot(op, args);
+		if (ops[slot] != 0 && !matches(slot, op, args))
+			++overwrites;
+
+		int base = slot * (keyLength + 1);
+		System.arraycopy(args, 0, entries, base, args.length);
+		entries[base + keyLength] = result;
+		ops[slot] = op + 1;
+	}
+
+	/**
+	 * Removes all entries, but keeps the counters.
+	 */
+	public void clear() {
+		Arrays.fill(ops, 0);
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getOverwrites() {
+		return overwrites;
+	}
+
+	/**
+	 * Returns the ratio of hits to lookups, or zero if there were none.
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "IntComputedTable size " + size() + " hits " + hits + " misses "
+				+ misses + " overwrites " + overwrites;
+	}
+}
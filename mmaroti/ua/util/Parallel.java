@@ -0,0 +1,137 @@
+package mmaroti.ua.util;
+
+/**
+ *	Copyright (C) 2026 Miklos Maroti
+ */
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Runs loops over the indices <code>0, ..., count-1</code> on a shared
+ * fork/join pool. Every worker creates its own {@link Body}, so the bodies
+ * can keep scratch space and running results without synchronization, and
+ * the indices are handed out one by one. Short loops are run on the calling
+ * thread with a single body, so the pool costs nothing for small inputs.
+ */
+public class Parallel {
+	/**
+	 * The loop body of a single worker.
+	 */
+	public interface Body {
+		/**
+		 * Processes the given index, and returns <code>false</code> to stop
+		 * the loop. The other workers finish their current index, and no new
+		 * indices are handed out.
+		 */
+		public boolean run(long index);
+	}
+
+	/**
+	 * Creates the body of a worker. It is called on the thread of the worker.
+	 */
+	public interface Factory {
+		public Body create();
+	}
+
+	private static ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Returns the pool used by {@link #forEach(long, long, Factory)}, which
+	 * is the common pool by default.
+	 */
+	public static ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public static void setPool(ForkJoinPool pool) {
+		if (pool == null)
+			throw new IllegalArgumentException();
+
+		Parallel.pool = pool;
+	}
+
+	/**
+	 * Returns the number of workers used for a loop of the given length, which
+	 * is one below the threshold, and at most the number of processors and
+	 * the length otherwise.
+	 */
+	public static int workerCount(long count, long threshold) {
+		if (count < threshold || count <= 1)
+			return 1;
+
+		return (int) Math.min(count, Math.max(1, Runtime.getRuntime()
+				.availableProcessors()));
+	}
+
+	/**
+	 * Runs the loop on the shared pool, or on the calling thread if
+	 * <code>count</code> is below <code>threshold</code>. The first runtime
+	 * exception or error thrown by a body stops the loop and is rethrown.
+	 */
+	public static void forEach(long count, long threshold, Factory factory) {
+		forEach(count, threshold, factory, pool);
+	}
+
+	public static void forEach(final long count, long threshold,
+			final Factory factory, ForkJoinPool pool) {
+		int workers = workerCount(count, threshold);
+		if (workers <= 1) {
+			Body body = factory.create();
+			for (long i = 0; i < count; ++i)
+				if (!body.run(i))
+					break;
+			return;
+		}
+
+		final AtomicLong next = new AtomicLong();
+		final AtomicBoolean stop = new AtomicBoolean();
+
+		final Worker[] tasks = new Worker[workers];
+		for (int i = 0; i < workers; ++i)
+			tasks[i] = new Worker(count, factory, next, stop);
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	@SuppressWarnings("serial")
+	protected static class Worker extends RecursiveAction {
+		protected final long count;
+		protected final Factory factory;
+		protected final AtomicLong next;
+		protected final AtomicBoolean stop;
+
+		protected Worker(long count, Factory factory, AtomicLong next,
+				AtomicBoolean stop) {
+			this.count = count;
+			this.factory = factory;
+			this.next = next;
+			this.stop = stop;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				Body body = factory.create();
+
+				long index;
+				while (!stop.get() && (index = next.getAndIncrement()) < count)
+					if (!body.run(index))
+						stop.set(true);
+			} catch (RuntimeException e) {
+				stop.set(true);
+				throw e;
+			} catch (Error e) {
+				stop.set(true);
+				throw e;
+			}
+		}
+	}
+}
@@ -25,8 +25,10 @@ public class WeakHashSet<T> {
 			if (this == other)
 				return true;
 
+			// the other key may be cleared but not yet enqueued
 			T ref = this.get();
-			return ref != null && ref.equals(other.get());
+			T otherRef = other.get();
+			return ref != null && otherRef != null && ref.equals(otherRef);
 		}
 
 		public Key(T referent, ReferenceQueue<T> queue) {
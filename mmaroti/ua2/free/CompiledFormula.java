@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2026 Miklos Maroti
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published by
+ * the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mmaroti.ua2.free;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import mmaroti.ua.util.Parallel;
+
+/**
+ * A formula compiled against a structure. The expression is translated once
+ * into a flat program over integer slots: the first slots hold the values of
+ * the variables, and every instruction writes one slot. The operations are
+ * resolved up front, and the tables of fixed operations are read directly.
+ * Equal subterms are computed only once on every path of the program, and
+ * the connectives short-circuit the same way as
+ * {@link Structure#evaluate(Expression, HashMap)}.
+ */
+public class CompiledFormula {
+	private static final int TABLE = 0;
+	private static final int CALL = 1;
+	private static final int EQUALS = 2;
+	private static final int NOT = 3;
+	private static final int CONST = 4;
+	private static final int MOVE = 5;
+	private static final int BRANCH = 6;
+
+	public CompiledFormula(Structure structure, Expression formula) {
+		if (!formula.isFormula())
+			throw new IllegalArgumentException("Expression is not a formula");
+
+		this.structure = structure;
+		this.size = structure.size;
+		this.variables = formula.getVariables();
+
+		for (int i = 0; i < variables.length; ++i)
+			cache.put(new Key(variables[i]), i);
+		slotCount = variables.length;
+
+		result = compile(formula);
+		code = Arrays.copyOf(buffer, length);
+		tables = tableList.toArray(new int[tableList.size()][]);
+		calls = callList.toArray(new Structure.Operation[callList.size()]);
+
+		buffer = null;
+		cache = null;
+		tableList = null;
+		callList = null;
+	}
+
+	public final Structure structure;
+	public final int size;
+
+	/**
+	 * The variables of the formula, in the order of
+	 * {@link Expression#getVariables()}. The first variable changes the
+	 * fastest when the assignments are enumerated.
+	 */
+	public final Symbol[] variables;
+
+	private final int[] code;
+	private final int result;
+	private int slotCount;
+
+	private final int[][] tables;
+	private final Structure.Operation[] calls;
+
+	private List<int[]> tableList = new ArrayList<int[]>();
+	private List<Structure.Operation> callList = new ArrayList<Structure.Operation>();
+
+	private int[] buffer = new int[64];
+	private int length;
+
+	private void emit(int a) {
+		if (length == buffer.length)
+			buffer = Arrays.copyOf(buffer, 2 * length);
+
+		buffer[length++] = a;
+	}
+
+	/**
+	 * Structural key of a term, used to find the slot of a subterm that has
+	 * been computed already.
+	 */
+	private static final class Key {
+		private final Symbol symbol;
+		private final int[] subs;
+		private final int hashCode;
+
+		Key(Symbol variable) {
+			this.symbol = variable;
+			this.subs = null;
+			this.hashCode = System.identityHashCode(symbol);
+		}
+
+		Key(Symbol symbol, int[] subs) {
+			this.symbol = symbol;
+			this.subs = subs;
+			this.hashCode = System.identityHashCode(symbol) * 31
+					+ Arrays.hashCode(subs);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object o) {
+			Key other = (Key) o;
+			return symbol == other.symbol && Arrays.equals(subs, other.subs);
+		}
+	}
+
+	private HashMap<Key, Integer> cache = new HashMap<Key, Integer>();
+
+	private int compileTerm(Expression expr) {
+		if (expr.symbol.type == Symbol.VARIABLE)
+			return cache.get(new Key(expr.symbol));
+
+		int[] subs = new int[expr.subs.length];
+		for (int i = 0; i < subs.length; ++i)
+			subs[i] = compileTerm(expr.subs[i]);
+
+		Key key = new Key(expr.symbol, subs);
+		Integer slot = cache.get(key);
+		if (slot != null)
+			return slot;
+
+		Structure.Operation op = structure.getOperation(expr.symbol);
+		int dst = slotCount++;
+
+		if (op instanceof FixedStructure.Operation) {
+			emit(TABLE);
+			emit(dst);
+			emit(tableList.size());
+			tableList.add(((FixedStructure.Operation) op).table);
+		} else {
+			emit(CALL);
+			emit(dst);
+			emit(callList.size());
+			callList.add(op);
+		}
+
+		emit(subs.length);
+		for (int i = 0; i < subs.length; ++i)
+			emit(subs[i]);
+
+		cache.put(key, dst);
+		return dst;
+	}
+
+	/**
+	 * Emits a conditional jump, returning the position of its target to be
+	 * patched. If the slot <code>test</code> holds <code>value</code>, then
+	 * <code>dst</code> is set to <code>result</code> and the execution
+	 * continues at the target.
+	 */
+	private int branch(int test, int value, int dst, int result) {
+		emit(BRANCH);
+		emit(test);
+		emit(value);
+		emit(dst);
+		emit(result);
+		emit(-1);
+		return length - 1;
+	}
+
+	private int compile(Expression expr) {
+		final Symbol symbol = expr.symbol;
+		final Expression[] subs = expr.subs;
+
+		if (symbol.type != Symbol.RELATION && symbol.type != Symbol.CONNECTIVE)
+			return compileTerm(expr);
+
+		if (symbol == Symbol.EQUALS || symbol == Symbol.LIFF) {
+			int a = compile(subs[0]);
+			int b = compile(subs[1]);
+
+			int dst = slotCount++;
+			emit(EQUALS);
+			emit(dst);
+			emit(a);
+			emit(b);
+			return dst;
+		} else if (symbol == Symbol.LNOT) {
+			int a = compile(subs[0]);
+
+			int dst = slotCount++;
+			emit(NOT);
+			emit(dst);
+			emit(a);
+			return dst;
+		} else if (symbol == Symbol.LAND || symbol == Symbol.LOR
+				|| symbol == Symbol.LIMP) {
+			int dst = slotCount++;
+			int[] jumps = new int[subs.length];
+
+			// terms computed after the first jump are not available later
+			HashMap<Key, Integer> saved = null;
+
+			for (int i = 0; i < subs.length; ++i) {
+				int a = compile(subs[i]);
+
+				if (saved == null)
+					saved = new HashMap<Key, Integer>(cache);
+
+				if (symbol == Symbol.LAND)
+					jumps[i] = branch(a, 0, dst, 0);
+				else if (symbol == Symbol.LOR)
+					jumps[i] = branch(a, 1, dst, 1);
+				else if (i == 0)
+					jumps[i] = branch(a, 0, dst, 1);
+				else {
+					emit(MOVE);
+					emit(dst);
+					emit(a);
+					jumps[i] = -1;
+				}
+			}
+
+			if (symbol != Symbol.LIMP) {
+				emit(CONST);
+				emit(dst);
+				emit(symbol == Symbol.LAND ? 1 : 0);
+			}
+
+			for (int i = 0; i < jumps.length; ++i)
+				if (jumps[i] >= 0)
+					buffer[jumps[i]] = length;
+
+			if (saved != null)
+				cache = saved;
+
+			return dst;
+		} else
+			throw new IllegalArgumentException("Unsupported symbol: "
+					+ symbol.name);
+	}
+
+	/**
+	 * Runs the program on the assignment stored in the first slots, and
+	 * returns the value of the formula.
+	 */
+	private int run(int[] slots, int[][] args) {
+		int pc = 0;
+		while (pc < code.length) {
+			int dst = code[pc + 1];
+
+			switch (code[pc]) {
+			case TABLE: {
+				int[] table = tables[code[pc + 2]];
+				int arity = code[pc + 3];
+				int pos = 0;
+				for (int i = 0; i < arity; ++i)
+					pos = pos * size + slots[code[pc + 4 + i]];
+				slots[dst] = table[pos];
+				pc += 4 + arity;
+				break;
+			}
+			case CALL: {
+				int arity = code[pc + 3];
+				int[] elements = args[arity];
+				for (int i = 0; i < arity; ++i)
+					elements[i] = slots[code[pc + 4 + i]];
+				slots[dst] = calls[code[pc + 2]].getValue(elements);
+				pc += 4 + arity;
+				break;
+			}
+			case EQUALS:
+				slots[dst] = slots[code[pc + 2]] == slots[code[pc + 3]] ? 1 : 0;
+				pc += 4;
+				break;
+			case NOT:
+				slots[dst] = slots[code[pc + 2]] > 0 ? 0 : 1;
+				pc += 3;
+				break;
+			case CONST:
+				slots[dst] = code[pc + 2];
+				pc += 3;
+				break;
+			case MOVE:
+				slots[dst] = slots[code[pc + 2]];
+				pc += 3;
+				break;
+			case BRANCH:
+				if (slots[code[pc + 1]] == code[pc + 2]) {
+					slots[code[pc + 3]] = code[pc + 4];
+					pc = code[pc + 5];
+				} else
+					pc += 6;
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+
+		return slots[result];
+	}
+
+	private int[][] createArgs() {
+		int max = 0;
+		for (Structure.Operation op : calls)
+			max = Math.max(max, op.symbol.arity);
+
+		int[][] args = new int[max + 1][];
+		for (int i = 0; i <= max; ++i)
+			args[i] = new int[i];
+
+		return args;
+	}
+
+	/**
+	 * Checks the assignments where the last variable takes the given value.
+	 * Returns the first falsifying assignment, or <code>null</code> if there
+	 * is none.
+	 */
+	private int[] check(int last) {
+		int[] slots = new int[slotCount];
+		int[][] args = createArgs();
+
+		int n = variables.length;
+		if (n > 0)
+			slots[n - 1] = last;
+
+		for (;;) {
+			if (run(slots, args) == 0)
+				return Arrays.copyOf(slots, n);
+
+			int i = 0;
+			for (; i < n - 1; ++i) {
+				if (++slots[i] < size)
+					break;
+				slots[i] = 0;
+			}
+
+			if (i >= n - 1)
+				return null;
+		}
+	}
+
+	/**
+	 * Below this number of assignments the formula is evaluated on the calling
+	 * thread.
+	 */
+	private static final long SEQUENTIAL_ASSIGNMENTS = 1 << 14;
+
+	/**
+	 * Returns the first falsifying assignment of the formula, in the same
+	 * order as {@link Structure#evaluate(Expression, boolean)} enumerates them,
+	 * or <code>null</code> if the formula holds. When there are many
+	 * assignments, the values of the last variable are distributed among the
+	 * workers of the shared pool, see {@link Parallel}.
+	 */
+	public int[] findFalsifyingAssignment() {
+		if (size <= 0)
+			return null;
+
+		if (variables.length == 0)
+			return check(0);
+
+		long assignments = 1;
+		for (int i = 0; i < variables.length
+				&& assignments < SEQUENTIAL_ASSIGNMENTS; ++i)
+			assignments *= size;
+
+		if (assignments < SEQUENTIAL_ASSIGNMENTS) {
+			for (int last = 0; last < size; ++last) {
+				int[] failure = check(last);
+				if (failure != null)
+					return failure;
+			}
+			return null;
+		}
+
+		final int[][] failures = new int[size][];
+		final AtomicInteger first = new AtomicInteger(size);
+
+		Parallel.forEach(size, 2, new Parallel.Factory() {
+			public Parallel.Body create() {
+				return new Parallel.Body() {
+					public boolean run(long index) {
+						int last = (int) index;
+						if (last >= first.get())
+							return false;
+
+						int[] failure = check(last);
+						if (failure != null) {
+							failures[last] = failure;
+
+							int f;
+							while (last < (f = first.get())
+									&& !first.compareAndSet(f, last))
+								;
+						}
+
+						return true;
+					}
+				};
+			}
+		});
+
+		int f = first.get();
+		return f < size ? failures[f] : null;
+	}
+
+	public boolean evaluate() {
+		return findFalsifyingAssignment() == null;
+	}
+}
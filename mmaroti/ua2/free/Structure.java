@@ -154,40 +154,25 @@ public abstract class Structure {
 	}
 
 	public boolean evaluate(final Expression expr, boolean print) {
-		if (!expr.isFormula())
-			throw new IllegalArgumentException("Expression is not a formula");
-
-		if (size <= 0)
-			return true;
-
-		Symbol[] variables = expr.getVariables();
-
-		HashMap<Symbol, Integer> assignment = new HashMap<Symbol, Integer>();
-		for (int i = 0; i < variables.length; ++i)
-			assignment.put(variables[i], 0);
-
-		outer: for (;;) {
-			if (evaluate(expr, assignment) == 0) {
-				if (print) {
-					System.out.print("Falsifying assignment:");
-					for (int i = 0; i < variables.length; ++i)
-						System.out.print(" " + variables[i].name + "="
-								+ getName(assignment.get(variables[i])));
-					System.out.println();
-				}
-				return false;
-			}
-
-			for (int i = 0; i < variables.length; ++i) {
-				int a = assignment.get(variables[i]) + 1;
-				if (a < size) {
-					assignment.put(variables[i], a);
-					continue outer;
-				} else
-					assignment.put(variables[i], 0);
-			}
-
-			return true;
+		CompiledFormula formula = compile(expr);
+		int[] failure = formula.findFalsifyingAssignment();
+
+		if (failure != null && print) {
+			System.out.print("Falsifying assignment:");
+			for (int i = 0; i < failure.length; ++i)
+				System.out.print(" " + formula.variables[i].name + "="
+						+ getName(failure[i]));
+			System.out.println();
 		}
+
+		return failure == null;
+	}
+
+	/**
+	 * Compiles the formula against this structure, so that it can be
+	 * evaluated on many assignments without walking the expression tree.
+	 */
+	public CompiledFormula compile(final Expression expr) {
+		return new CompiledFormula(this, expr);
 	}
 }
@@ -21,7 +21,9 @@ package org.mmaroti.ua.alg;
 /**
  * A finite algebra whose operation tables are explicitly stored in tables.
  * Sometimes, it is advisable to copy small derived algebras to AlgebraBuffers
- * to speed up operations.
+ * to speed up operations. The entries of the operation tables are stored in
+ * the narrowest primitive type (byte, short or int) that can hold every
+ * element index of the algebra.
  * 
  * @author mmaroti@math.u-szeged.hu
  */
@@ -64,7 +66,7 @@ public class AlgebraBuffer extends Algebra {
 		if (index < 0 || index >= size)
 			throw new IllegalArgumentException("invalid index");
 
-		return new Integer(index);
+		return Integer.valueOf(index);
 	}
 
 	public int getIndex(Object elem) {
@@ -102,6 +104,7 @@ public class AlgebraBuffer extends Algebra {
 	 * @throws IllegalArgumentException
 	 *             if the exponent is negative, or the result does not fit in an
 	 *             Integer.
+	 * @see MappedAlgebraBuffer
 	 */
 	protected static int power(int base, int exponent) {
 		if (exponent < 0)
@@ -119,6 +122,21 @@ public class AlgebraBuffer extends Algebra {
 		return (int) result;
 	}
 
+	/**
+	 * Returns the number of bytes needed to store the values
+	 * <code>[-1,size-1]</code> of an operation table: <code>1</code> for
+	 * algebras of at most 127 elements, <code>2</code> for algebras of at most
+	 * 32767 elements, and <code>4</code> otherwise.
+	 */
+	public static int getCellWidth(int size) {
+		if (size <= Byte.MAX_VALUE)
+			return 1;
+		else if (size <= Short.MAX_VALUE)
+			return 2;
+		else
+			return 4;
+	}
+
 	/**
 	 * The list of fundamental operations of the algebra.
 	 * 
@@ -140,7 +158,8 @@ public class AlgebraBuffer extends Algebra {
 
 	/**
 	 * An operation table that can be modified. The entries in the operation
-	 * table are stored in an array.
+	 * table are stored in a byte, short or int array depending on the size of
+	 * the algebra.
 	 */
 	public class Op extends Operation {
 		/**
@@ -240,13 +259,40 @@ public class AlgebraBuffer extends Algebra {
 			return arg0 * size + arg1;
 		}
 
+		/**
+		 * Returns the position of an entry in a ternary operation table.
+		 */
+		public final int getPosition(int arg0, int arg1, int arg2) {
+			if (symbol.arity != 3)
+				throw new UnsupportedOperationException(
+						"this operation is not ternary");
+
+			if (arg0 < 0 || arg0 >= size || arg1 < 0 || arg1 >= size
+					|| arg2 < 0 || arg2 >= size)
+				throw new IndexOutOfBoundsException("invalid argument");
+
+			return (arg0 * size + arg1) * size + arg2;
+		}
+
+		/**
+		 * Returns the position of the single entry in a constant operation
+		 * table.
+		 */
+		public final int getPosition() {
+			if (symbol.arity != 0)
+				throw new UnsupportedOperationException(
+						"this operation is not constant");
+
+			return 0;
+		}
+
 		/**
 		 * Creates an empty operation table.
 		 */
 		public Op(Symbol symbol) {
 			this.symbol = symbol;
 
-			table = new int[power(size, symbol.arity)];
+			allocate(power(size, symbol.arity));
 		}
 
 		/**
@@ -255,13 +301,14 @@ public class AlgebraBuffer extends Algebra {
 		public Op(Operation operation) {
 			symbol = operation.getSymbol();
 
-			table = new int[power(size, symbol.arity)];
+			int length = power(size, symbol.arity);
+			allocate(length);
 
 			int[] args = new int[symbol.arity];
 			int index = 0;
 			for (;;) {
-				table[index] = operation.getValue(args);
-				if (++index >= table.length)
+				setValueByPosition(index, operation.getValue(args));
+				if (++index >= length)
 					break;
 
 				int i = symbol.arity;
@@ -271,18 +318,136 @@ public class AlgebraBuffer extends Algebra {
 		}
 
 		/**
-		 * An array holding the underlying operation table.
+		 * Allocates the narrowest table that can hold the values
+		 * <code>[-1,size-1]</code>.
+		 */
+		private void allocate(int length) {
+			switch (AlgebraBuffer.getCellWidth(size)) {
+			case 1:
+				bytes = new byte[length];
+				break;
+			case 2:
+				shorts = new short[length];
+				break;
+			default:
+				table = new int[length];
+			}
+		}
+
+		/**
+		 * The underlying operation table if the entries are stored in bytes,
+		 * <code>null</code> otherwise.
+		 * 
+		 * @see #getCellWidth
+		 */
+		protected byte[] bytes;
+
+		/**
+		 * The underlying operation table if the entries are stored in shorts,
+		 * <code>null</code> otherwise.
+		 * 
+		 * @see #getCellWidth
+		 */
+		protected short[] shorts;
+
+		/**
+		 * The underlying operation table if the entries are stored in
+		 * integers, <code>null</code> otherwise.
 		 * 
 		 * @see #getTable
 		 */
 		protected int[] table;
 
 		/**
-		 * Returns an array holding the underlying operation table. The number
-		 * of entries in the table is <code>size^arity</code>.
+		 * Returns the number of bytes used to store a single entry of the
+		 * operation table. This is <code>1</code>, <code>2</code> or
+		 * <code>4</code>, and is determined by the size of the algebra.
+		 */
+		public final int getCellWidth() {
+			return bytes != null ? 1 : shorts != null ? 2 : 4;
+		}
+
+		/**
+		 * Returns the number of entries in the operation table, which is
+		 * <code>size^arity</code>.
 		 */
+		public final int getLength() {
+			if (bytes != null)
+				return bytes.length;
+			else if (shorts != null)
+				return shorts.length;
+			else
+				return table.length;
+		}
+
+		/**
+		 * Returns an array holding the operation table. The number of entries
+		 * in the table is <code>size^arity</code>. If the entries are stored
+		 * in integers, then this is the underlying table. Otherwise it is a
+		 * widened copy, and writes to it are not reflected in the operation,
+		 * so use {@link #setValueByPosition} to modify the table.
+		 * 
+		 * @deprecated The underlying table is an <code>int[]</code> only for
+		 *             algebras with at least 32768 elements. Use
+		 *             {@link #getValues}, {@link #getByteTable} or
+		 *             {@link #getShortTable} instead.
+		 * @see #getCellWidth
+		 */
+		@Deprecated
 		public final int[] getTable() {
-			return table;
+			if (table != null)
+				return table;
+
+			int[] copy = new int[getLength()];
+			getValues(0, copy, 0, copy.length);
+			return copy;
+		}
+
+		/**
+		 * Returns the underlying operation table without widening.
+		 * 
+		 * @throws UnsupportedOperationException
+		 *             if the entries are not stored in bytes.
+		 * @see #getCellWidth
+		 */
+		public final byte[] getByteTable() {
+			if (bytes == null)
+				throw new UnsupportedOperationException(
+						"the entries are not stored in bytes");
+
+			return bytes;
+		}
+
+		/**
+		 * Returns the underlying operation table without widening.
+		 * 
+		 * @throws UnsupportedOperationException
+		 *             if the entries are not stored in shorts.
+		 * @see #getCellWidth
+		 */
+		public final short[] getShortTable() {
+			if (shorts == null)
+				throw new UnsupportedOperationException(
+						"the entries are not stored in shorts");
+
+			return shorts;
+		}
+
+		/**
+		 * Copies <code>length</code> many entries starting at
+		 * <code>position</code> of the operation table into the
+		 * <code>values</code> array starting at <code>offset</code>.
+		 */
+		public final void getValues(int position, int[] values, int offset,
+				int length) {
+			if (bytes != null) {
+				for (int i = 0; i < length; ++i)
+					values[offset + i] = bytes[position + i];
+			} else if (shorts != null) {
+				for (int i = 0; i < length; ++i)
+					values[offset + i] = shorts[position + i];
+			} else
+				System.arraycopy(table, position, values, offset, length);
 		}
 
 		/**
@@ -292,17 +457,28 @@ public class AlgebraBuffer extends Algebra {
 		 * @see #getPosition(int[])
 		 */
 		public final int getValueByPosition(int position) {
-			return table[position];
+			if (bytes != null)
+				return bytes[position];
+			else if (shorts != null)
+				return shorts[position];
+			else
+				return table[position];
 		}
 
 		/**
-		 * Sets the entry at the specified position.
+		 * Sets the entry at the specified position. The value must be in the
+		 * range <code>[-1,size-1]</code>.
 		 * 
 		 * @see #getTable
 		 * @see #getPosition(int[])
 		 */
 		public final void setValueByPosition(int position, int value) {
-			table[position] = value;
+			if (bytes != null)
+				bytes[position] = (byte) value;
+			else if (shorts != null)
+				shorts[position] = (short) value;
+			else
+				table[position] = value;
 		}
 
 		/**
@@ -312,7 +488,47 @@ public class AlgebraBuffer extends Algebra {
 		 * @see #getPosition(int[])
 		 */
 		public final int getValue(int[] args) {
-			return table[getPosition(args)];
+			return getValueByPosition(getPosition(args));
+		}
+
+		/**
+		 * Evaluates the mapping at many arguments at once by first computing
+		 * the positions column by column in <code>out</code>, then gathering
+		 * the entries from the table.
+		 * 
+		 * @see Operation#getValues(int[][], int, int[])
+		 */
+		public final void getValues(int[][] argumentColumns, int count,
+				int[] out) {
+			if (argumentColumns.length != symbol.arity)
+				throw new IllegalArgumentException(
+						"the number of columns must be the arity");
+
+			for (int k = 0; k < count; ++k)
+				out[k] = 0;
+
+			for (int i = 0; i < symbol.arity; ++i) {
+				int[] column = argumentColumns[i];
+				for (int k = 0; k < count; ++k) {
+					int a = column[k];
+					if (a < 0 || a >= size)
+						throw new IndexOutOfBoundsException(
+								"invalid argument at index " + i);
+
+					out[k] = out[k] * size + a;
+				}
+			}
+
+			if (bytes != null) {
+				for (int k = 0; k < count; ++k)
+					out[k] = bytes[out[k]];
+			} else if (shorts != null) {
+				for (int k = 0; k < count; ++k)
+					out[k] = shorts[out[k]];
+			} else {
+				for (int k = 0; k < count; ++k)
+					out[k] = table[out[k]];
+			}
 		}
 
 		/**
@@ -320,7 +536,7 @@ public class AlgebraBuffer extends Algebra {
 		 * short-hand notation for unary operations.
 		 */
 		public final int getValue(int arg0) {
-			return table[getPosition(arg0)];
+			return getValueByPosition(getPosition(arg0));
 		}
 
 		/**
@@ -328,7 +544,23 @@ public class AlgebraBuffer extends Algebra {
 		 * short-hand notation for binary operations.
 		 */
 		public final int getValue(int arg0, int arg1) {
-			return table[getPosition(arg0, arg1)];
+			return getValueByPosition(getPosition(arg0, arg1));
+		}
+
+		/**
+		 * Evaluates the ternary mapping at the given argument. This is a
+		 * short-hand notation for ternary operations.
+		 */
+		public final int getValue(int arg0, int arg1, int arg2) {
+			return getValueByPosition(getPosition(arg0, arg1, arg2));
+		}
+
+		/**
+		 * Evaluates the constant mapping. This is a short-hand notation for
+		 * constant operations.
+		 */
+		public final int getConstant() {
+			return getValueByPosition(getPosition());
 		}
 
 		/**
@@ -339,7 +571,7 @@ public class AlgebraBuffer extends Algebra {
 		 * @see #getPosition(int[])
 		 */
 		public final void setValue(int[] args, int value) {
-			table[getPosition(args)] = value;
+			setValueByPosition(getPosition(args), value);
 		}
 
 		/**
@@ -347,7 +579,7 @@ public class AlgebraBuffer extends Algebra {
 		 * short-hand notation for unary operations.
 		 */
 		public void setValue(int arg0, int value) {
-			table[getPosition(arg0)] = value;
+			setValueByPosition(getPosition(arg0), value);
 		}
 
 		/**
@@ -355,7 +587,15 @@ public class AlgebraBuffer extends Algebra {
 		 * short-hand notation for unary operations.
 		 */
 		public void setValue(int arg0, int arg1, int value) {
-			table[getPosition(arg0, arg1)] = value;
+			setValueByPosition(getPosition(arg0, arg1), value);
+		}
+
+		/**
+		 * Sets the value of a ternary mapping at the given arguments. This is
+		 * a short-hand notation for ternary operations.
+		 */
+		public void setValue(int arg0, int arg1, int arg2, int value) {
+			setValueByPosition(getPosition(arg0, arg1, arg2), value);
 		}
 
 		/**
@@ -367,7 +607,7 @@ public class AlgebraBuffer extends Algebra {
 		 * @see #getValueByPosition
 		 */
 		public final Object getValue(Object[] args) {
-			return getElement(table[getPosition(args)]);
+			return getElement(getValueByPosition(getPosition(args)));
 		}
 
 		/**
@@ -380,7 +620,7 @@ public class AlgebraBuffer extends Algebra {
 		 * @see #setValueByPosition
 		 */
 		public final void setValue(Object[] args, Object value) {
-			table[getPosition(args)] = getIndex(value);
+			setValueByPosition(getPosition(args), getIndex(value));
 		}
 	}
 
@@ -390,7 +630,7 @@ public class AlgebraBuffer extends Algebra {
 	 * @see #getRelations
 	 * @see #getRelationTables
 	 */
-	protected Rel[] relations;
+	protected Rel[] relations = new Rel[0];
 
 	public final Relation[] getRelations() {
 		return relations;
@@ -505,6 +745,21 @@ public class AlgebraBuffer extends Algebra {
 			return arg0 * size + arg1;
 		}
 
+		/**
+		 * Returns the position of an entry in a ternary relation table.
+		 */
+		public final int getPosition(int arg0, int arg1, int arg2) {
+			if (symbol.arity != 3)
+				throw new UnsupportedOperationException(
+						"this relation is not ternary");
+
+			if (arg0 < 0 || arg0 >= size || arg1 < 0 || arg1 >= size
+					|| arg2 < 0 || arg2 >= size)
+				throw new IndexOutOfBoundsException("invalid argument");
+
+			return (arg0 * size + arg1) * size + arg2;
+		}
+
 		/**
 		 * Creates an empty relational table.
 		 */
@@ -596,6 +851,25 @@ public class AlgebraBuffer extends Algebra {
 			return table[getPosition(arg0, arg1)];
 		}
 
+		/**
+		 * Evaluates the ternary mapping at the given argument. This is a
+		 * short-hand notation for ternary relations.
+		 */
+		public final byte getValue(int arg0, int arg1, int arg2) {
+			return table[getPosition(arg0, arg1, arg2)];
+		}
+
+		/**
+		 * Evaluates a constant relational value.
+		 */
+		public final byte getConstant() {
+			if (symbol.arity != 0)
+				throw new UnsupportedOperationException(
+						"this relation is not constant");
+
+			return table[0];
+		}
+
 		/**
 		 * Sets the value of the mapping at the arguments. This operation is
 		 * equivalent to
@@ -623,6 +897,14 @@ public class AlgebraBuffer extends Algebra {
 			table[getPosition(arg0, arg1)] = value;
 		}
 
+		/**
+		 * Sets the value of a ternary mapping at the given arguments. This is
+		 * a short-hand notation for ternary relations.
+		 */
+		public void setValue(int arg0, int arg1, int arg2, byte value) {
+			table[getPosition(arg0, arg1, arg2)] = value;
+		}
+
 		/**
 		 * Evaluates the mapping at the given arguments. This function is
 		 * equivalend to
@@ -150,4 +150,88 @@ public class Algebras {
 
 		writer.endElem();
 	}
+
+	/**
+	 * Returns the canonical form of an algebra. Two algebras with compatible
+	 * signatures are isomorphic if and only if their canonical forms are
+	 * equal. The canonical form also lists generators of the automorphism
+	 * group.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the algebra cannot be enumerated
+	 */
+	public static CanonicalForm canonicalForm(Algebra algebra) {
+		int size = algebra.getSize();
+
+		Operation[] ops = algebra.getOperations();
+		int[] opArities = new int[ops.length];
+		int[][] opTables = new int[ops.length][];
+		for (int i = 0; i < ops.length; ++i) {
+			opArities[i] = ops[i].getArity();
+			opTables[i] = new int[power(size, opArities[i])];
+
+			if (algebra instanceof AlgebraBuffer) {
+				((AlgebraBuffer.Op) ops[i]).getValues(0, opTables[i], 0,
+						opTables[i].length);
+				continue;
+			}
+
+			int[] args = new int[opArities[i]];
+			for (int j = 0; j < opTables[i].length; ++j) {
+				opTables[i][j] = ops[i].getValue(args);
+				next(args, size);
+			}
+		}
+
+		Relation[] rels = algebra.getRelations();
+		int[] relArities = new int[rels.length];
+		int[][] relTables = new int[rels.length][];
+		for (int i = 0; i < rels.length; ++i) {
+			relArities[i] = rels[i].getArity();
+			relTables[i] = new int[power(size, relArities[i])];
+
+			int[] args = new int[relArities[i]];
+			for (int j = 0; j < relTables[i].length; ++j) {
+				relTables[i][j] = rels[i].getValue(args);
+				next(args, size);
+			}
+		}
+
+		return new CanonicalForm(size, opArities, opTables, relArities,
+				relTables);
+	}
+
+	/**
+	 * Returns the automorphism group of an algebra. The generators are found
+	 * by the refinement and backtracking search of the canonical form, which
+	 * uses the operation tables directly for an {@link AlgebraBuffer}.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the algebra cannot be enumerated
+	 */
+	public static PermutationGroup automorphismGroup(Algebra algebra) {
+		return new PermutationGroup(algebra.getSize(), canonicalForm(algebra)
+				.getAutomorphisms());
+	}
+
+	/**
+	 * Returns <code>true</code> if the two algebras are isomorphic.
+	 */
+	public static boolean isomorphic(Algebra a, Algebra b) {
+		return a.getSize() == b.getSize() && a.isCompatible(b)
+				&& canonicalForm(a).equals(canonicalForm(b));
+	}
+
+	private static int power(int base, int exp) {
+		int a = 1;
+		while (--exp >= 0)
+			a *= base;
+		return a;
+	}
+
+	private static void next(int[] args, int size) {
+		int i = args.length;
+		while (--i >= 0 && ++args[i] >= size)
+			args[i] = 0;
+	}
 }
@@ -66,13 +66,16 @@ public class Evaluation {
 	/**
 	 * Evaluates the specified term in the target algebra using the specified
 	 * map of generators to elements. This method returns an element of the
-	 * target algebra.
+	 * target algebra. The variables of an endomorphism that are not set are
+	 * mapped to themselves.
 	 */
 	public Object getValue(TermAlgebra.Term term) {
 		if (term.isVariable()) {
 			Object image = map[term.getVariableIndex()];
 			if (image != null)
 				return image;
+			else if (codomain == domain)
+				return term;
 
 			throw new IllegalArgumentException(
 					"the image of a variable is not set");
@@ -98,7 +101,8 @@ public class Evaluation {
 					"the codomain does not match the domain of other homomorphism");
 
 		for (int i = 0; i < map.length; ++i)
-			map[i] = homomorphism.getValue((TermAlgebra.Term) map[i]);
+			map[i] = homomorphism.getValue(map[i] != null ? (TermAlgebra.Term) map[i]
+					: domain.getVariable(i));
 
 		// update the codomain
 		codomain = homomorphism.codomain;
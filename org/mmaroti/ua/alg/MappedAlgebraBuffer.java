@@ -0,0 +1,535 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.alg;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * A finite algebra whose operation tables are stored in a memory mapped file.
+ * Unlike {@link AlgebraBuffer}, the positions in the operation tables are
+ * long integers, so the tables can have more than <code>2^31</code> entries.
+ * The file can be reopened later with {@link #open}, so large operation
+ * tables need to be computed only once. The entries are stored in the same
+ * cell width as in {@link AlgebraBuffer}.
+ *
+ * <p>
+ * The file starts with a header containing the size of the algebra, the cell
+ * width and the operation symbols, followed by the operation tables, each
+ * starting at an offset divisible by 8.
+ *
+ * @author mmaroti@math.u-szeged.hu
+ */
+public class MappedAlgebraBuffer extends Algebra implements Closeable {
+	/**
+	 * Identifies the files written by this class.
+	 */
+	protected static final int MAGIC = 0x55414d42;
+
+	/**
+	 * The version of the file format.
+	 */
+	protected static final int VERSION = 1;
+
+	/**
+	 * The maximum number of bytes mapped into a single buffer.
+	 */
+	protected static final int CHUNK_BYTES = 1 << 30;
+
+	/**
+	 * Creates a new file holding an algebra of the given signature with
+	 * operation tables filled with zeros. An existing file is overwritten.
+	 */
+	public MappedAlgebraBuffer(File file, Signature signature, int size)
+			throws IOException {
+		if (size <= 0)
+			throw new IllegalArgumentException(
+					"the size of an algebra must be positive");
+
+		this.size = size;
+		this.writable = true;
+
+		Symbol[] symbols = signature.getOperations();
+		create(file, symbols);
+	}
+
+	/**
+	 * Creates a new file holding a copy of the given algebra. An existing file
+	 * is overwritten.
+	 */
+	public MappedAlgebraBuffer(File file, Algebra algebra) throws IOException {
+		this.size = algebra.getSize();
+		this.writable = true;
+
+		Operation[] ops = algebra.getOperations();
+		Symbol[] symbols = new Symbol[ops.length];
+		for (int i = 0; i < ops.length; ++i)
+			symbols[i] = ops[i].getSymbol();
+
+		create(file, symbols);
+
+		for (int i = 0; i < ops.length; ++i)
+			operations[i].copy(ops[i]);
+	}
+
+	/**
+	 * Opens an algebra that was previously saved into the given file.
+	 *
+	 * @param writable
+	 *            if <code>true</code>, then the operation tables can be
+	 *            modified and the changes are written back to the file.
+	 * @throws IOException
+	 *             if the file cannot be read or was not created by this class
+	 */
+	public static MappedAlgebraBuffer open(File file, boolean writable)
+			throws IOException {
+		return new MappedAlgebraBuffer(file, writable);
+	}
+
+	private MappedAlgebraBuffer(File file, boolean writable)
+			throws IOException {
+		this.writable = writable;
+
+		RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw"
+				: "r");
+		try {
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+				throw new IOException("not an algebra buffer file");
+
+			size = raf.readInt();
+			int width = raf.readInt();
+			if (size <= 0 || width != AlgebraBuffer.getCellWidth(size))
+				throw new IOException("corrupted algebra buffer file");
+
+			Symbol[] symbols = new Symbol[raf.readInt()];
+			for (int i = 0; i < symbols.length; ++i) {
+				int arity = raf.readInt();
+				int priority = raf.readInt();
+				int properties = raf.readInt();
+				symbols[i] = new Symbol(raf.readUTF(), arity, priority,
+						properties);
+			}
+
+			long offset = align(raf.getFilePointer());
+			if (raf.length() != offset + getTotalBytes(symbols))
+				throw new IOException("truncated algebra buffer file");
+
+			map(raf, symbols, offset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void create(File file, Symbol[] symbols) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(size);
+			raf.writeInt(AlgebraBuffer.getCellWidth(size));
+			raf.writeInt(symbols.length);
+			for (int i = 0; i < symbols.length; ++i) {
+				raf.writeInt(symbols[i].getArity());
+				raf.writeInt(symbols[i].getPriority());
+				raf.writeInt(symbols[i].properties);
+				raf.writeUTF(symbols[i].getName());
+			}
+
+			long offset = align(raf.getFilePointer());
+			raf.setLength(offset + getTotalBytes(symbols));
+
+			map(raf, symbols, offset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void map(RandomAccessFile raf, Symbol[] symbols, long offset)
+			throws IOException {
+		FileChannel channel = raf.getChannel();
+
+		operations = new Op[symbols.length];
+		for (int i = 0; i < symbols.length; ++i) {
+			operations[i] = new Op(symbols[i], channel, offset);
+			offset += align(operations[i].getLength() * getCellWidth());
+		}
+	}
+
+	private long getTotalBytes(Symbol[] symbols) {
+		long total = 0;
+		for (int i = 0; i < symbols.length; ++i)
+			total += align(power(size, symbols[i].getArity())
+					* getCellWidth());
+
+		return total;
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	/**
+	 * Calculates <code>base^exponent</code>. The exponent must be non-negative.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the exponent is negative, or the result does not fit in a
+	 *             Long.
+	 */
+	protected static long power(int base, int exponent) {
+		if (exponent < 0)
+			throw new IllegalArgumentException(
+					"the exponent must be non-negative");
+
+		long result = 1;
+		while (--exponent >= 0) {
+			if (result > Long.MAX_VALUE / 8 / base)
+				throw new IllegalArgumentException(
+						"the power is too big (does not fit in a Long)");
+
+			result *= base;
+		}
+
+		return result;
+	}
+
+	protected int size;
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes used to store a single entry of the
+	 * operation tables.
+	 *
+	 * @see AlgebraBuffer#getCellWidth(int)
+	 */
+	public final int getCellWidth() {
+		return AlgebraBuffer.getCellWidth(size);
+	}
+
+	protected boolean writable;
+
+	/**
+	 * Returns <code>true</code> if the operation tables can be modified.
+	 */
+	public boolean isWritable() {
+		return writable;
+	}
+
+	public Object getElement(int index) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("invalid index");
+
+		return Integer.valueOf(index);
+	}
+
+	public int getIndex(Object elem) {
+		return ((Integer) elem).intValue();
+	}
+
+	public String toString(Object elem) {
+		return Integer.toString(getIndex(elem));
+	}
+
+	public Object parse(String string) {
+		int index = Integer.parseInt(string.trim());
+
+		if (0 <= index && index < size)
+			return getElement(index);
+		else
+			throw new IllegalArgumentException();
+	}
+
+	/**
+	 * Writes all modifications of the operation tables to the disk.
+	 */
+	public void force() {
+		for (int i = 0; i < operations.length; ++i)
+			operations[i].force();
+	}
+
+	/**
+	 * Writes all modifications to the disk and releases the operation tables.
+	 * This object cannot be used after this call. The mapped memory is
+	 * unmapped when the buffers are garbage collected.
+	 */
+	public void close() {
+		if (writable)
+			force();
+
+		for (int i = 0; i < operations.length; ++i)
+			operations[i].chunks = null;
+	}
+
+	/**
+	 * The list of fundamental operations of the algebra.
+	 */
+	protected Op[] operations;
+
+	public final Op[] getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Returns the operation table for the given operation
+	 */
+	public final Op getOperationTable(int index) {
+		return operations[index];
+	}
+
+	protected Relation[] relations = new Relation[0];
+
+	public Relation[] getRelations() {
+		return relations;
+	}
+
+	/**
+	 * An operation table stored in a memory mapped file. The table is split
+	 * into chunks of at most {@link #CHUNK_BYTES} bytes, each mapped into a
+	 * separate buffer.
+	 */
+	public class Op extends Operation {
+		/**
+		 * The symbol of the operation.
+		 */
+		protected Symbol symbol;
+
+		public final Symbol getSymbol() {
+			return symbol;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * The mapped chunks of the operation table.
+		 */
+		protected ByteBuffer[] chunks;
+
+		/**
+		 * The base 2 logarithm of the number of entries in a chunk.
+		 */
+		protected int shift;
+
+		/**
+		 * The number of entries in the table.
+		 */
+		protected long length;
+
+		protected Op(Symbol symbol, FileChannel channel, long offset)
+				throws IOException {
+			this.symbol = symbol;
+			this.length = power(size, symbol.arity);
+
+			int width = getCellWidth();
+			shift = width == 1 ? 30 : width == 2 ? 29 : 28;
+
+			long bytes = length * width;
+			chunks = new ByteBuffer[(int) ((bytes + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+
+			FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+					: FileChannel.MapMode.READ_ONLY;
+			for (int i = 0; i < chunks.length; ++i) {
+				long start = (long) i * CHUNK_BYTES;
+				chunks[i] = channel.map(mode, offset + start, Math.min(
+						CHUNK_BYTES, bytes - start));
+			}
+		}
+
+		/**
+		 * Overwrites the operation table with the values of the given
+		 * operation.
+		 */
+		protected void copy(Operation operation) {
+			int[] args = new int[symbol.arity];
+			long index = 0;
+			for (;;) {
+				setValueByPosition(index, operation.getValue(args));
+				if (++index >= length)
+					break;
+
+				int i = symbol.arity;
+				while (++args[--i] >= size)
+					args[i] = 0;
+			}
+		}
+
+		/**
+		 * Returns the number of entries in the operation table, which is
+		 * <code>size^arity</code>.
+		 */
+		public final long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the position of the specified entry in the operation table.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if the number of arguments is not valid.
+		 * @throws IndexOutOfBoundsException
+		 *             if one of the arguments is not in the interval
+		 *             <code>[0,size-1]</code>.
+		 */
+		public final long getPosition(int[] args) {
+			if (args.length != symbol.arity)
+				throw new IllegalArgumentException(
+						"the length of args must be the arity");
+
+			long a = 0;
+			for (int i = 0; i < symbol.arity; ++i) {
+				if (args[i] < 0 || args[i] >= size)
+					throw new IndexOutOfBoundsException(
+							"invalid argument at index " + i);
+
+				a *= size;
+				a += args[i];
+			}
+
+			return a;
+		}
+
+		/**
+		 * Returns the position of the specified entry in the operation table.
+		 */
+		public final long getPosition(Object[] args) {
+			if (args.length != symbol.arity)
+				throw new IllegalArgumentException(
+						"the length of args must be the arity");
+
+			long a = 0;
+			for (int i = 0; i < symbol.arity; ++i) {
+				int b = getIndex(args[i]);
+				if (b < 0 || b >= size)
+					throw new IndexOutOfBoundsException(
+							"invalid argument at index " + i);
+
+				a *= size;
+				a += b;
+			}
+
+			return a;
+		}
+
+		/**
+		 * Returns the position of an entry in a table of the given arity,
+		 * where the arguments are not given in an array.
+		 */
+		private long getPosition(int arity, int arg0, int arg1, int arg2) {
+			if (symbol.arity != arity)
+				throw new UnsupportedOperationException(
+						"this operation is not of arity " + arity);
+
+			if (arg0 < 0 || arg0 >= size || arg1 < 0 || arg1 >= size
+					|| arg2 < 0 || arg2 >= size)
+				throw new IndexOutOfBoundsException("invalid argument");
+
+			return ((long) arg0 * size + arg1) * size + arg2;
+		}
+
+		/**
+		 * Returns the entry at the specified position.
+		 *
+		 * @see #getPosition(int[])
+		 */
+		public final int getValueByPosition(long position) {
+			ByteBuffer chunk = chunks[(int) (position >>> shift)];
+			int offset = (int) position & ((1 << shift) - 1);
+
+			if (shift == 30)
+				return chunk.get(offset);
+			else if (shift == 29)
+				return chunk.getShort(offset << 1);
+			else
+				return chunk.getInt(offset << 2);
+		}
+
+		/**
+		 * Sets the entry at the specified position. The value must be in the
+		 * range <code>[-1,size-1]</code>.
+		 *
+		 * @throws ReadOnlyBufferException
+		 *             if the algebra was not opened for writing.
+		 * @see #getPosition(int[])
+		 */
+		public final void setValueByPosition(long position, int value) {
+			ByteBuffer chunk = chunks[(int) (position >>> shift)];
+			int offset = (int) position & ((1 << shift) - 1);
+
+			if (shift == 30)
+				chunk.put(offset, (byte) value);
+			else if (shift == 29)
+				chunk.putShort(offset << 1, (short) value);
+			else
+				chunk.putInt(offset << 2, value);
+		}
+
+		public final int getValue(int[] args) {
+			return getValueByPosition(getPosition(args));
+		}
+
+		public final Object getValue(Object[] args) {
+			return getElement(getValueByPosition(getPosition(args)));
+		}
+
+		public final int getConstant() {
+			return getValueByPosition(getPosition(0, 0, 0, 0));
+		}
+
+		public final int getValue(int arg0) {
+			return getValueByPosition(getPosition(1, 0, 0, arg0));
+		}
+
+		public final int getValue(int arg0, int arg1) {
+			return getValueByPosition(getPosition(2, 0, arg0, arg1));
+		}
+
+		public final int getValue(int arg0, int arg1, int arg2) {
+			return getValueByPosition(getPosition(3, arg0, arg1, arg2));
+		}
+
+		/**
+		 * Sets the value of the mapping at the arguments.
+		 */
+		public final void setValue(int[] args, int value) {
+			setValueByPosition(getPosition(args), value);
+		}
+
+		/**
+		 * Sets the value of the mapping at the arguments.
+		 */
+		public final void setValue(Object[] args, Object value) {
+			setValueByPosition(getPosition(args), getIndex(value));
+		}
+
+		/**
+		 * Writes the modifications of this operation table to the disk.
+		 */
+		public void force() {
+			if (writable)
+				for (int i = 0; i < chunks.length; ++i)
+					((MappedByteBuffer) chunks[i]).force();
+		}
+	}
+}
@@ -81,6 +81,39 @@ public abstract class Operation {
 	 */
 	public abstract Object getValue(Object[] args);
 
+	/**
+	 * Evaluates the operation at many arguments at once. The arguments are
+	 * given in columns: the <code>i</code>-th argument of the
+	 * <code>k</code>-th tuple is <code>argumentColumns[i][k]</code>, and its
+	 * value is stored in <code>out[k]</code>. Subclasses should override this
+	 * method if they can evaluate a batch faster than one tuple at a time.
+	 * 
+	 * @param argumentColumns
+	 *            the list of argument columns. It must be the case that
+	 *            <code>argumentColumns.length == getArity()</code> and each
+	 *            column has at least <code>count</code> entries.
+	 * @param count
+	 *            the number of tuples to be evaluated.
+	 * @param out
+	 *            the array receiving the indices of the resulting elements.
+	 * @throws UnsupportedOperationException
+	 *             if the elements of the algebra are not (or cannot be)
+	 *             enumerated.
+	 */
+	public void getValues(int[][] argumentColumns, int count, int[] out) {
+		if (argumentColumns.length != getArity())
+			throw new IllegalArgumentException(
+					"the number of columns must be the arity");
+
+		int[] args = new int[argumentColumns.length];
+		for (int k = 0; k < count; ++k) {
+			for (int i = 0; i < args.length; ++i)
+				args[i] = argumentColumns[i][k];
+
+			out[k] = getValue(args);
+		}
+	}
+
 	/**
 	 * Evaluates a constant operation.
 	 */
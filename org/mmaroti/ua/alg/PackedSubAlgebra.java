@@ -0,0 +1,632 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.alg;
+
+import java.util.Arrays;
+
+import org.mmaroti.ua.util.*;
+
+/**
+ * A subalgebra of a product of finite algebras whose elements are stored as
+ * bit-packed coordinate tuples. Each element occupies
+ * <code>getWordCount()</code> many longs in a single array, and the elements
+ * are found through a primitive open addressing hash table, so no objects are
+ * allocated per element. The elements are labeled by arrays of labels of the
+ * factor algebras, just like in {@link ProductAlgebra}, and these labels are
+ * created on demand. This class has the same contract as {@link SubAlgebra},
+ * and {@link #generate(int)} adds the elements in the same order.
+ *
+ * @author mmaroti@math.u-szeged.hu
+ */
+public class PackedSubAlgebra extends Algebra {
+	/**
+	 * Holds the factor algebras of the product.
+	 */
+	protected Algebra[] factors;
+
+	/**
+	 * Returns the factor algebras of the product.
+	 */
+	public Algebra[] getFactors() {
+		return factors;
+	}
+
+	/**
+	 * The number of bits used to store a coordinate.
+	 */
+	protected final int bits;
+
+	/**
+	 * The number of coordinates stored in a single long.
+	 */
+	protected final int perWord;
+
+	/**
+	 * The number of longs used to store an element.
+	 */
+	protected final int words;
+
+	/**
+	 * Returns the number of longs used to store an element.
+	 */
+	public final int getWordCount() {
+		return words;
+	}
+
+	/**
+	 * Constructs a new empty subalgebra of the product of the given finite
+	 * algebras.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the list is empty or the algebras are not similar.
+	 * @throws UnsupportedOperationException
+	 *             if one of the factors is not enumerated.
+	 */
+	public PackedSubAlgebra(Algebra[] factors) {
+		if (factors.length <= 0)
+			throw new IllegalArgumentException(
+					"At least one algebra must be specified");
+
+		if (!Algebra.areCompatible(Arrays.asList(factors)))
+			throw new IllegalArgumentException("the provided list of algebras "
+					+ "are not of the same signature");
+
+		this.factors = factors.clone();
+
+		int max = 1;
+		for (int i = 0; i < factors.length; ++i)
+			max = Math.max(max, factors[i].getSize() - 1);
+
+		bits = 32 - Integer.numberOfLeadingZeros(max);
+		perWord = 64 / bits;
+		words = (factors.length + perWord - 1) / perWord;
+
+		keys = new long[16 * words];
+		slots = new int[32];
+		Arrays.fill(slots, EMPTY);
+
+		Operation[] ops = factors[0].getOperations();
+		operations = new Op[ops.length];
+		for (int i = 0; i < ops.length; ++i)
+			operations[i] = new Op(i);
+
+		coords = new int[factors.length];
+		key = new long[words];
+	}
+
+	/**
+	 * Constructs a new empty subalgebra of the given product of finite
+	 * algebras.
+	 */
+	public PackedSubAlgebra(ProductAlgebra product) {
+		this(product.getFactors());
+	}
+
+	protected static final int EMPTY = -1;
+
+	/**
+	 * The packed coordinates of the elements in index order.
+	 */
+	protected long[] keys;
+
+	/**
+	 * The hash table holding the indices of the elements. Its length is a
+	 * power of two and at most half of the slots are used.
+	 */
+	protected int[] slots;
+
+	/**
+	 * The number of elements contained in this set.
+	 */
+	protected int size;
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Scratch arrays used by the methods working with single elements.
+	 */
+	protected int[] coords;
+	protected long[] key;
+
+	/**
+	 * Packs the coordinates into <code>words</code> many longs starting at
+	 * <code>offset</code>.
+	 */
+	protected final void pack(int[] coords, long[] dest, int offset) {
+		for (int w = 0; w < words; ++w)
+			dest[offset + w] = 0;
+
+		for (int i = 0; i < coords.length; ++i)
+			dest[offset + i / perWord] |= (long) coords[i] << (i % perWord)
+					* bits;
+	}
+
+	/**
+	 * Returns the coordinate of the element at the given factor.
+	 */
+	public final int getCoordinate(int index, int factor) {
+		long word = keys[index * words + factor / perWord];
+		return (int) (word >>> (factor % perWord) * bits)
+				& ((1 << bits) - 1);
+	}
+
+	/**
+	 * Stores the coordinates of the element with the given index in
+	 * <code>coords</code>.
+	 */
+	public final void getCoordinates(int index, int[] coords) {
+		for (int i = 0; i < factors.length; ++i)
+			coords[i] = getCoordinate(index, i);
+	}
+
+	protected final int hash(long[] key, int offset) {
+		long h = 0x12a3fe2d37abe8f9L;
+		for (int w = 0; w < words; ++w) {
+			h ^= key[offset + w];
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+		}
+
+		return (int) h ^ (int) (h >>> 32);
+	}
+
+	protected final boolean equals(int index, long[] key, int offset) {
+		int base = index * words;
+		for (int w = 0; w < words; ++w)
+			if (keys[base + w] != key[offset + w])
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Returns the index of the packed element, or <code>-1</code> if it is
+	 * not in this subalgebra.
+	 */
+	protected final int find(long[] key, int offset) {
+		int mask = slots.length - 1;
+		int slot = hash(key, offset) & mask;
+
+		for (;;) {
+			int index = slots[slot];
+			if (index == EMPTY)
+				return -1;
+			else if (equals(index, key, offset))
+				return index;
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Adds the packed element to this subalgebra if it is not already there,
+	 * and returns its index.
+	 */
+	protected final int insert(long[] key, int offset) {
+		int mask = slots.length - 1;
+		int slot = hash(key, offset) & mask;
+
+		for (;;) {
+			int index = slots[slot];
+			if (index == EMPTY)
+				break;
+			else if (equals(index, key, offset))
+				return index;
+
+			slot = (slot + 1) & mask;
+		}
+
+		if ((size + 1) * words > keys.length)
+			keys = Arrays.copyOf(keys, 2 * keys.length);
+
+		System.arraycopy(key, offset, keys, size * words, words);
+		slots[slot] = size;
+
+		if (++size * 2 > slots.length)
+			rehash();
+
+		return size - 1;
+	}
+
+	private void rehash() {
+		slots = new int[2 * slots.length];
+		Arrays.fill(slots, EMPTY);
+
+		int mask = slots.length - 1;
+		for (int index = 0; index < size; ++index) {
+			int slot = hash(keys, index * words) & mask;
+			while (slots[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+
+			slots[slot] = index;
+		}
+	}
+
+	/**
+	 * Returns the index of the element with the given coordinates, or
+	 * <code>-1</code> if it is not in this subalgebra.
+	 */
+	public int getIndex(int[] coords) {
+		pack(coords, key, 0);
+		return find(key, 0);
+	}
+
+	/**
+	 * Adds the element with the given coordinates to this subalgebra if it is
+	 * not already there, and returns its index.
+	 */
+	public int add(int[] coords) {
+		if (coords.length != factors.length)
+			throw new IllegalArgumentException("invalid number of coordinates");
+
+		for (int i = 0; i < coords.length; ++i)
+			if (coords[i] < 0 || coords[i] >= factors[i].getSize())
+				throw new IllegalArgumentException("invalid coordinate");
+
+		pack(coords, key, 0);
+		return insert(key, 0);
+	}
+
+	private void setCoordinates(Object element) {
+		Object[] vector = (Object[]) element;
+		if (vector.length != factors.length)
+			throw new IllegalArgumentException("invaid size of array");
+
+		for (int i = 0; i < factors.length; ++i)
+			coords[i] = factors[i].getIndex(vector[i]);
+	}
+
+	public int getIndex(Object element) {
+		if (element == null)
+			return -1;
+
+		setCoordinates(element);
+		return getIndex(coords);
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified element is contained in this
+	 * subset, <code>false</code> otherwise.
+	 */
+	public boolean contains(Object element) {
+		return getIndex(element) >= 0;
+	}
+
+	public Object getElement(int index) {
+		if (index < 0)
+			return null;
+		else if (index >= size)
+			throw new IllegalArgumentException("invalid index");
+
+		Object[] vector = new Object[factors.length];
+		for (int i = 0; i < factors.length; ++i)
+			vector[i] = factors[i].getElement(getCoordinate(index, i));
+
+		return vector;
+	}
+
+	/**
+	 * Adds a new element to the subset. The element must be an array of
+	 * labels of the factor algebras. If an equal element is already contained,
+	 * then the subset is not changed.
+	 *
+	 * @return the label of the element in this subalgebra.
+	 */
+	public Object add(Object element) {
+		setCoordinates(element);
+		return getElement(add(coords));
+	}
+
+	public boolean areEquals(Object elem1, Object elem2) {
+		Object[] vector1 = (Object[]) elem1;
+		Object[] vector2 = (Object[]) elem2;
+
+		for (int i = 0; i < factors.length; ++i)
+			if (!factors[i].areEquals(vector1[i], vector2[i]))
+				return false;
+
+		return true;
+	}
+
+	public int hashCode(Object element) {
+		setCoordinates(element);
+		pack(coords, key, 0);
+		return hash(key, 0);
+	}
+
+	public String toString(Object element) {
+		Object[] vector = (Object[]) element;
+		String s = "(";
+
+		for (int i = 0; i < vector.length; ++i) {
+			if (i > 0)
+				s += ",";
+			s += factors[i].getIndex(vector[i]);
+		}
+
+		return s + ")";
+	}
+
+	public Object parse(String string) {
+		Parser parser = new Parser();
+
+		String[] substrings = parser.parseList(
+				parser.parseEnclosingTokens(string.trim(), "(", ")"), ",");
+
+		if (substrings == null || substrings.length != factors.length)
+			return null;
+
+		Object[] vector = new Object[substrings.length];
+		for (int i = 0; i < vector.length; ++i)
+			if ((vector[i] = factors[i].parse(substrings[i])) == null)
+				return null;
+
+		return vector;
+	}
+
+	/**
+	 * The number of argument tuples evaluated at once by {@link #generate}.
+	 */
+	protected static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Generates new elements in this subalgebra. The operations are evaluated
+	 * coordinate-wise in batches, and the results are packed directly without
+	 * creating element objects.
+	 *
+	 * @param maxSize
+	 *            the maximum number of elements this subset should have. If
+	 *            Integer.MAX_VALUE is specified, then the whole subalgebra is
+	 *            generated.
+	 */
+	public void generate(int maxSize) {
+		if (getSize() >= maxSize)
+			return;
+
+		long[] results = new long[BATCH_SIZE * words];
+		boolean[] undefined = new boolean[BATCH_SIZE];
+
+		int radius = -1;
+		while (++radius <= getSize()) {
+			for (int i = 0; i < operations.length; ++i) {
+				Op op = operations[i];
+				SphereArgument arg = new SphereArgument(op.getSymbol().arity,
+						radius);
+				int[] iargs = arg.vector;
+				int[][] columns = new int[iargs.length][BATCH_SIZE];
+
+				if (arg.reset()) {
+					boolean more;
+					do {
+						int count = 0;
+						do {
+							for (int j = 0; j < iargs.length; ++j)
+								columns[j][count] = iargs[j];
+
+							++count;
+							more = arg.next();
+						} while (more && count < BATCH_SIZE);
+
+						op.evaluate(columns, count, results, undefined);
+
+						for (int k = 0; k < count; ++k) {
+							if (undefined[k])
+								continue;
+
+							insert(results, k * words);
+							if (getSize() >= maxSize)
+								return;
+						}
+					} while (more);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the subalgebra generated by the contained elements.
+	 */
+	public void generate() {
+		generate(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * The operations of the subalgebra
+	 */
+	protected Op[] operations;
+
+	public Operation[] getOperations() {
+		return operations;
+	}
+
+	/**
+	 * An operation of the subalgebra, which is calculated coordinate-wise on
+	 * the packed elements. If one of the coordinates is undefined, then the
+	 * result is undefined.
+	 */
+	public class Op extends Operation {
+		protected Operation[] operations;
+		protected Symbol symbol;
+
+		protected Op(int opIndex) {
+			operations = new Operation[factors.length];
+			for (int i = 0; i < factors.length; ++i)
+				operations[i] = factors[i].getOperations()[opIndex];
+
+			symbol = operations[0].getSymbol();
+
+			coords = new int[symbol.arity][factors.length];
+			args = new int[symbol.arity];
+			tuple = new int[symbol.arity];
+		}
+
+		public Symbol getSymbol() {
+			return symbol;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * Evaluates the operation on a batch of argument tuples given in
+		 * columns of element indices, and stores the packed results in
+		 * <code>results</code>. The undefined results are marked in
+		 * <code>undefined</code>.
+		 */
+		protected void evaluate(int[][] columns, int count, long[] results,
+				boolean[] undefined) {
+			Arrays.fill(results, 0, count * words, 0);
+			Arrays.fill(undefined, 0, count, false);
+
+			int[][] coordColumns = new int[symbol.arity][count];
+			int[] values = new int[count];
+
+			long[] keys = PackedSubAlgebra.this.keys;
+			int mask = (1 << bits) - 1;
+
+			for (int i = 0; i < factors.length; ++i) {
+				int word = i / perWord;
+				int shift = (i % perWord) * bits;
+
+				for (int j = 0; j < symbol.arity; ++j) {
+					int[] column = columns[j];
+					int[] coordColumn = coordColumns[j];
+					for (int k = 0; k < count; ++k)
+						coordColumn[k] = (int) (keys[column[k] * words + word] >>> shift)
+								& mask;
+				}
+
+				operations[i].getValues(coordColumns, count, values);
+
+				for (int k = 0; k < count; ++k) {
+					if (values[k] < 0)
+						undefined[k] = true;
+					else
+						results[k * words + word] |= (long) values[k] << shift;
+				}
+			}
+		}
+
+		protected int[][] coords;
+		protected int[] args;
+
+		/**
+		 * The argument tuple of the arity specialized methods, so they do not
+		 * allocate argument arrays.
+		 */
+		protected int[] tuple;
+
+		public int getConstant() {
+			return getValue(tuple);
+		}
+
+		public int getValue(int a0) {
+			tuple[0] = a0;
+			return getValue(tuple);
+		}
+
+		public int getValue(int a0, int a1) {
+			tuple[0] = a0;
+			tuple[1] = a1;
+			return getValue(tuple);
+		}
+
+		public int getValue(int a0, int a1, int a2) {
+			tuple[0] = a0;
+			tuple[1] = a1;
+			tuple[2] = a2;
+			return getValue(tuple);
+		}
+
+		public int getValue(int[] args) {
+			for (int j = 0; j < symbol.arity; ++j) {
+				if (args[j] < 0)
+					return -1;
+
+				getCoordinates(args[j], coords[j]);
+			}
+
+			int[] result = PackedSubAlgebra.this.coords;
+			for (int i = 0; i < factors.length; ++i) {
+				for (int j = 0; j < symbol.arity; ++j)
+					this.args[j] = coords[j][i];
+
+				if ((result[i] = operations[i].getValue(this.args)) < 0)
+					return -1;
+			}
+
+			return getIndex(result);
+		}
+
+		public void getValues(int[][] argumentColumns, int count, int[] out) {
+			if (argumentColumns.length != symbol.arity)
+				throw new IllegalArgumentException(
+						"the number of columns must be the arity");
+
+			// undefined arguments are evaluated at zero
+			int[][] columns = new int[symbol.arity][];
+			for (int j = 0; j < symbol.arity; ++j) {
+				columns[j] = argumentColumns[j];
+				for (int k = 0; k < count; ++k)
+					if (columns[j][k] < 0) {
+						if (columns[j] == argumentColumns[j])
+							columns[j] = argumentColumns[j].clone();
+
+						columns[j][k] = 0;
+					}
+			}
+
+			long[] results = new long[count * words];
+			boolean[] undefined = new boolean[count];
+			evaluate(columns, count, results, undefined);
+
+			for (int k = 0; k < count; ++k) {
+				for (int j = 0; j < symbol.arity; ++j)
+					if (argumentColumns[j][k] < 0)
+						undefined[k] = true;
+
+				out[k] = undefined[k] ? -1 : find(results, k * words);
+			}
+		}
+
+		public Object getValue(Object[] args) {
+			Object[] vector = new Object[factors.length];
+			Object[] arg = new Object[symbol.arity];
+
+			for (int i = 0; i < factors.length; ++i) {
+				for (int j = 0; j < symbol.arity; ++j)
+					arg[j] = ((Object[]) args[j])[i];
+
+				if ((vector[i] = operations[i].getValue(arg)) == null)
+					return null;
+			}
+
+			return vector;
+		}
+	}
+
+	Relation[] relations = new Relation[0];
+
+	public Relation[] getRelations() {
+		return relations;
+	}
+}
@@ -161,6 +161,31 @@ public class ProductAlgebra extends Algebra {
 	 *            this array must be equal to the number of factors of this
 	 *            product and each coordinate must be of the proper size.
 	 * @return The index of the element identified by the coordinates, or
+	 *         <code>-1</code> if one of the coordinates is <code>-1</code>.
+	 */
+	public int getIndex(int[] coords) {
+		if (size <= 0)
+			throw new UnsupportedOperationException();
+
+		int index = 0;
+
+		for (int i = 0; i < factorSizes.length; ++i) {
+			if (coords[i] < 0)
+				return -1;
+
+			index *= factorSizes[i];
+			index += coords[i];
+		}
+
+		return index;
+	}
+
+	/**
+	 * Calculates the index of an element.
+	 * 
+	 * @param vector
+	 *            The labels of the coordinates of an element.
+	 * @return The index of the element identified by the coordinates, or
 	 *         <code>-1</code> if the object is <code>null</code>.
 	 */
 	public int getIndex(Object[] vector) {
@@ -354,7 +379,7 @@ public class ProductAlgebra extends Algebra {
 
 			int i = operations.length;
 			while (--i >= 0) {
-				int s = factors[i].getSize();
+				int s = factorSizes[i];
 				for (int j = 0; j < symbol.arity; ++j) {
 					arg2[j] = arg1[j] % s;
 					arg1[j] /= s;
@@ -365,6 +390,188 @@ public class ProductAlgebra extends Algebra {
 			return getIndex(indexTuple);
 		}
 
+		/**
+		 * Evaluates a constant operation without allocating argument arrays.
+		 */
+		public int getConstant() {
+			if (getSize() <= 0)
+				throw new UnsupportedOperationException(
+						"The elements of the underlying set cannot be enumerated");
+
+			int index = 0;
+			for (int i = 0; i < operations.length; ++i) {
+				int v = operations[i].getConstant();
+				if (v < 0)
+					return -1;
+
+				index = index * factorSizes[i] + v;
+			}
+
+			return index;
+		}
+
+		/**
+		 * Evaluates a unary operation coordinate-wise without allocating
+		 * argument arrays.
+		 */
+		public int getValue(int a0) {
+			if (getSize() <= 0)
+				throw new UnsupportedOperationException(
+						"The elements of the underlying set cannot be enumerated");
+
+			if (a0 < 0)
+				return -1;
+
+			int index = 0;
+			int scale = 1;
+
+			int i = operations.length;
+			while (--i >= 0) {
+				int s = factorSizes[i];
+				int v = operations[i].getValue(a0 % s);
+				if (v < 0)
+					return -1;
+
+				a0 /= s;
+				index += v * scale;
+				scale *= s;
+			}
+
+			return index;
+		}
+
+		/**
+		 * Evaluates a binary operation coordinate-wise without allocating
+		 * argument arrays.
+		 */
+		public int getValue(int a0, int a1) {
+			if (getSize() <= 0)
+				throw new UnsupportedOperationException(
+						"The elements of the underlying set cannot be enumerated");
+
+			if (a0 < 0 || a1 < 0)
+				return -1;
+
+			int index = 0;
+			int scale = 1;
+
+			int i = operations.length;
+			while (--i >= 0) {
+				int s = factorSizes[i];
+				int v = operations[i].getValue(a0 % s, a1 % s);
+				if (v < 0)
+					return -1;
+
+				a0 /= s;
+				a1 /= s;
+				index += v * scale;
+				scale *= s;
+			}
+
+			return index;
+		}
+
+		/**
+		 * Evaluates a ternary operation coordinate-wise without allocating
+		 * argument arrays.
+		 */
+		public int getValue(int a0, int a1, int a2) {
+			if (getSize() <= 0)
+				throw new UnsupportedOperationException(
+						"The elements of the underlying set cannot be enumerated");
+
+			if (a0 < 0 || a1 < 0 || a2 < 0)
+				return -1;
+
+			int index = 0;
+			int scale = 1;
+
+			int i = operations.length;
+			while (--i >= 0) {
+				int s = factorSizes[i];
+				int v = operations[i].getValue(a0 % s, a1 % s, a2 % s);
+				if (v < 0)
+					return -1;
+
+				a0 /= s;
+				a1 /= s;
+				a2 /= s;
+				index += v * scale;
+				scale *= s;
+			}
+
+			return index;
+		}
+
+		/**
+		 * Evaluates the operation at many arguments at once. The argument
+		 * columns are decoded factor by factor, and each factor operation is
+		 * evaluated on the whole batch of its coordinates.
+		 * 
+		 * @see Operation#getValues(int[][], int, int[])
+		 */
+		public void getValues(int[][] argumentColumns, int count, int[] out) {
+			if (getSize() <= 0)
+				throw new UnsupportedOperationException(
+						"The elements of the underlying set cannot be enumerated");
+
+			if (argumentColumns.length != symbol.arity)
+				throw new IllegalArgumentException(
+						"the number of columns must be the arity");
+
+			int[][] rests = new int[symbol.arity][count];
+			int[][] coords = new int[symbol.arity][count];
+			int[] values = new int[count];
+
+			for (int k = 0; k < count; ++k)
+				out[k] = 0;
+
+			for (int j = 0; j < symbol.arity; ++j) {
+				int[] column = argumentColumns[j];
+				int[] rest = rests[j];
+				for (int k = 0; k < count; ++k) {
+					int a = column[k];
+					if (a < 0) {
+						// undefined argument, evaluate at zero
+						out[k] = -1;
+						a = 0;
+					}
+					rest[k] = a;
+				}
+			}
+
+			int scale = 1;
+			int i = operations.length;
+			while (--i >= 0) {
+				int s = factorSizes[i];
+				// divide by s with a multiplication, exact for non-negative ints
+				int shift = 63 - Integer.numberOfLeadingZeros(s - 1);
+				long magic = (1L << shift) / s + 1;
+				for (int j = 0; j < symbol.arity; ++j) {
+					int[] rest = rests[j];
+					int[] coord = coords[j];
+					for (int k = 0; k < count; ++k) {
+						int a = rest[k];
+						int q = (int) ((a * magic) >>> shift);
+						coord[k] = a - q * s;
+						rest[k] = q;
+					}
+				}
+
+				operations[i].getValues(coords, count, values);
+
+				for (int k = 0; k < count; ++k) {
+					int v = values[k];
+					if (v < 0)
+						out[k] = -1;
+					else if (out[k] >= 0)
+						out[k] += v * scale;
+				}
+
+				scale *= s;
+			}
+		}
+
 		protected Object[] arg3;
 
 		public Object getValue(Object[] args) {
@@ -20,6 +20,10 @@ package org.mmaroti.ua.alg;
 
 import org.mmaroti.ua.util.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This structure captures a Hilbert system over an absolutely free algebra.
@@ -286,6 +290,172 @@ public class ProofSystem {
 		return s;
 	}
 
+	/**
+	 * A bounded table of the statements whose derivability is already
+	 * decided, shared by the derivations of a proof system. A derivation
+	 * records the outcomes that did not use its premises, so they can be
+	 * reused by later queries. The refuted statements are reused only by
+	 * derivations without premises. The statements are kept in a concurrent
+	 * hash map, so lookups take no lock. When the table is full, a statement
+	 * is evicted by the CLOCK algorithm: the inserted statements are kept in
+	 * a ring, and the hand of the clock evicts the first one that was not
+	 * looked up since the hand last passed it. Only the insertions of new
+	 * statements lock the ring.
+	 */
+	public static class LemmaTable {
+		/**
+		 * Creates a lemma table holding at most <code>capacity</code>
+		 * statements.
+		 */
+		public LemmaTable(int capacity) {
+			if (capacity < 0)
+				throw new IllegalArgumentException();
+
+			this.capacity = capacity;
+			lemmas = new ConcurrentHashMap<TermAlgebra.Term, Lemma>();
+			clock = new TermAlgebra.Term[Math.min(capacity, 16)];
+		}
+
+		protected static class Lemma {
+			protected final boolean derivable;
+			protected volatile boolean referenced;
+
+			protected Lemma(boolean derivable) {
+				this.derivable = derivable;
+			}
+		}
+
+		protected final int capacity;
+		protected final ConcurrentHashMap<TermAlgebra.Term, Lemma> lemmas;
+
+		/**
+		 * The ring of the inserted statements, its number of used slots and
+		 * the position of the hand, all guarded by the lock of the ring.
+		 */
+		protected TermAlgebra.Term[] clock;
+		protected int filled;
+		protected int hand;
+
+		protected final LongAdder hits = new LongAdder();
+		protected final LongAdder misses = new LongAdder();
+		protected final LongAdder evictions = new LongAdder();
+
+		/**
+		 * Returns <code>Boolean.TRUE</code> if the statement is known to be
+		 * derivable, <code>Boolean.FALSE</code> if it is known not to be
+		 * derivable, and <code>null</code> otherwise.
+		 */
+		public Boolean get(TermAlgebra.Term statement) {
+			Lemma lemma = lemmas.get(statement);
+			if (lemma == null) {
+				misses.increment();
+				return null;
+			}
+
+			hits.increment();
+			if (!lemma.referenced)
+				lemma.referenced = true;
+
+			return Boolean.valueOf(lemma.derivable);
+		}
+
+		/**
+		 * Records whether the statement is derivable.
+		 */
+		public void put(TermAlgebra.Term statement, boolean derivable) {
+			if (capacity == 0)
+				return;
+
+			if (lemmas.put(statement, new Lemma(derivable)) != null)
+				return;
+
+			synchronized (this) {
+				if (filled < capacity) {
+					if (filled == clock.length)
+						clock = java.util.Arrays.copyOf(clock, Math.min(
+								2 * filled, capacity));
+
+					clock[filled++] = statement;
+					return;
+				}
+
+				for (;;) {
+					TermAlgebra.Term victim = clock[hand];
+					Lemma lemma = lemmas.get(victim);
+
+					if (lemma != null && lemma.referenced)
+						lemma.referenced = false;
+					else {
+						if (lemma != null) {
+							lemmas.remove(victim);
+							evictions.increment();
+						}
+
+						clock[hand] = statement;
+						hand = (hand + 1) % capacity;
+						return;
+					}
+
+					hand = (hand + 1) % capacity;
+				}
+			}
+		}
+
+		public synchronized void clear() {
+			lemmas.clear();
+			java.util.Arrays.fill(clock, null);
+			filled = 0;
+			hand = 0;
+		}
+
+		public int getCapacity() {
+			return capacity;
+		}
+
+		public int size() {
+			return lemmas.size();
+		}
+
+		public long getHits() {
+			return hits.sum();
+		}
+
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		public long getEvictions() {
+			return evictions.sum();
+		}
+
+		public String toString() {
+			return "lemmas " + size() + "/" + capacity + ", hits "
+					+ getHits() + ", misses " + getMisses() + ", evictions "
+					+ getEvictions();
+		}
+	}
+
+	/**
+	 * The default capacity of the lemma table.
+	 */
+	public static final int LEMMAS = 1 << 18;
+
+	protected LemmaTable lemmas = new LemmaTable(LEMMAS);
+
+	/**
+	 * Returns the lemma table shared by the derivations.
+	 */
+	public LemmaTable getLemmaTable() {
+		return lemmas;
+	}
+
+	/**
+	 * Replaces the lemma table, for example to change its capacity.
+	 */
+	public void setLemmaTable(LemmaTable lemmas) {
+		this.lemmas = lemmas;
+	}
+
 	/**
 	 * This method returns <code>true</code> if the provided inequality is
 	 * derivable using the set of rules, <code>false</code> otherwise.
@@ -320,13 +490,29 @@ public class ProofSystem {
 		 */
 		public HashMap<TermAlgebra.Term, Integer> cache = new HashMap<TermAlgebra.Term, Integer>();
 
+		/**
+		 * The premises and the statements whose outcome depends on them.
+		 * These are not recorded in the lemma table, and the refuted lemmas
+		 * cannot be used once there are premises.
+		 */
+		protected HashSet<TermAlgebra.Term> dependent = new HashSet<TermAlgebra.Term>();
+
+		/**
+		 * The number of times a dependent statement was looked up. If it does
+		 * not change while a statement is decided, then the outcome does not
+		 * depend on the premises.
+		 */
+		protected int dependencies;
+
 		/**
 		 * Adds each of the premises as derivable statements.
 		 */
 		public void addPremises(TermAlgebra.Term[] premises) {
 			int i = premises.length;
-			while (--i >= 0)
-				cache.put(premises[i], new Integer(0));
+			while (--i >= 0) {
+				cache.put(premises[i], Integer.valueOf(0));
+				dependent.add(premises[i]);
+			}
 		}
 
 		/**
@@ -342,11 +528,23 @@ public class ProofSystem {
 		public int isDerivable(TermAlgebra.Term root, int level) {
 			// check first the cache
 			Integer o = cache.get(root);
-			if (o != null)
+			if (o != null) {
+				if (!dependent.isEmpty() && dependent.contains(root))
+					++dependencies;
 				return o.intValue();
+			}
+
+			// then the lemmas of earlier derivations
+			Boolean lemma = lemmas.get(root);
+			if (lemma != null && (lemma.booleanValue() || dependent.isEmpty())) {
+				int a = lemma.booleanValue() ? 0 : Integer.MAX_VALUE;
+				cache.put(root, Integer.valueOf(a));
+				return a;
+			}
 
 			// update the cache to avoid infinite cycles
 			cache.put(root, new Integer(level));
+			int known = dependencies;
 
 			int a = Integer.MAX_VALUE; // disjunction over all rules
 			outer: for (int i = 0; i < rules.length; ++i) {
@@ -369,6 +567,7 @@ public class ProofSystem {
 					if (a == 0) // we found a derivation
 					{
 						cache.put(root, new Integer(0));
+						record(root, true, known);
 						return 0;
 					}
 				}
@@ -380,6 +579,7 @@ public class ProofSystem {
 			 */
 			if (level <= a) {
 				cache.put(root, new Integer(Integer.MAX_VALUE));
+				record(root, false, known);
 				return Integer.MAX_VALUE;
 			}
 
@@ -390,6 +590,18 @@ public class ProofSystem {
 			cache.remove(root);
 			return a;
 		}
+
+		/**
+		 * Records the outcome in the lemma table if it does not depend on the
+		 * premises, otherwise marks the statement as dependent.
+		 */
+		protected void record(TermAlgebra.Term root, boolean derivable,
+				int known) {
+			if (dependencies == known)
+				lemmas.put(root, derivable);
+			else
+				dependent.add(root);
+		}
 	}
 
 	/**
@@ -473,6 +685,18 @@ public class ProofSystem {
 						.getValue(implication.conclusion));
 	}
 
+	/**
+	 * Adds the normalized refinements of the implication at the given premise
+	 * that are not derivable to the list, in the order of the rules.
+	 */
+	protected void refineAt(Rule implication, int index, List<Rule> refinements) {
+		for (int i = 0; i < rules.length; ++i) {
+			Rule refinement = refine(implication, index, rules[i]);
+			if (refinement != null && !isDerivable(refinement))
+				refinements.add(normalize(refinement));
+		}
+	}
+
 	/**
 	 * Returns all refinements of depth one.
 	 */
@@ -485,14 +709,8 @@ public class ProofSystem {
 			ArrayList<Rule> refinements = new ArrayList<Rule>();
 
 			Iterator<Rule> iter = list.iterator();
-			while (iter.hasNext()) {
-				implication = iter.next();
-				for (int i = 0; i < rules.length; ++i) {
-					Rule refinement = refine(implication, index, rules[i]);
-					if (refinement != null && !isDerivable(refinement))
-						refinements.add(normalize(refinement));
-				}
-			}
+			while (iter.hasNext())
+				refineAt(iter.next(), index, refinements);
 
 			list = refinements;
 		}
@@ -517,18 +735,108 @@ public class ProofSystem {
 		return implications;
 	}
 
+	/**
+	 * Returns all refinements of depth <code>depth</code> using the threads
+	 * of the given pool. Every implication, and every implication of every
+	 * stage of {@link #refine(Rule)}, is refined by its own task, and the
+	 * results of the tasks are concatenated in order, so the returned list is
+	 * the same as that of {@link #refine(List, int)}. The derivations of the
+	 * tasks share the concurrent lemma table.
+	 */
+	public List<Rule> refine(List<Rule> implications, int depth,
+			ForkJoinPool pool) {
+		while (--depth >= 0) {
+			RefineTask task = new RefineTask(implications, 0, implications
+					.size(), -1);
+			pool.invoke(task);
+			implications = task.result;
+		}
+
+		return implications;
+	}
+
+	/**
+	 * Refines a range of implications. If the premise index is negative, then
+	 * each implication is refined at all of its premises as in
+	 * {@link #refine(Rule)}, otherwise only at the given premise. Ranges
+	 * longer than one are split in halves.
+	 */
+	@SuppressWarnings("serial")
+	protected class RefineTask extends RecursiveAction {
+		protected final List<Rule> implications;
+		protected final int start;
+		protected final int end;
+		protected final int index;
+
+		/**
+		 * The refinements in the same order as the sequential methods.
+		 */
+		protected List<Rule> result;
+
+		protected RefineTask(List<Rule> implications, int start, int end,
+				int index) {
+			this.implications = implications;
+			this.start = start;
+			this.end = end;
+			this.index = index;
+		}
+
+		protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				RefineTask left = new RefineTask(implications, start, middle,
+						index);
+				RefineTask right = new RefineTask(implications, middle, end,
+						index);
+				invokeAll(left, right);
+
+				result = left.result;
+				result.addAll(right.result);
+				return;
+			}
+
+			result = new ArrayList<Rule>();
+			if (start == end)
+				return;
+
+			Rule implication = implications.get(start);
+			if (index >= 0) {
+				refineAt(implication, index, result);
+				return;
+			}
+
+			result.add(implication);
+			int i = implication.getPremiseCount();
+			while (--i >= 0) {
+				RefineTask task = new RefineTask(result, 0, result.size(), i);
+				task.invoke();
+				result = task.result;
+			}
+		}
+	}
+
 	/**
 	 * Prints out all refinements of the given implication of the specified
 	 * depth.
 	 */
 	public void printRefinements(Rule implication, int depth) {
+		printRefinements(implication, depth, null);
+	}
+
+	/**
+	 * Prints out all refinements of the given implication of the specified
+	 * depth, which are computed using the threads of the given pool if it is
+	 * not <code>null</code>. The output is the same for every pool.
+	 */
+	public void printRefinements(Rule implication, int depth,
+			ForkJoinPool pool) {
 		implication = normalize(implication);
 		System.out.println("refinements of " + implication);
 
 		List<Rule> list = new ArrayList<Rule>();
 		list.add(implication);
 
-		list = refine(list, depth);
+		list = pool != null ? refine(list, depth, pool) : refine(list, depth);
 
 		Iterator<Rule> iter = list.iterator();
 		while (iter.hasNext()) {
@@ -622,10 +930,14 @@ public class ProofSystem {
 		if (count <= 0)
 			return statements;
 
+		// the same terms, indexed for the specialization checks
+		TermIndex index = new TermIndex(terms);
+
 		// add trivial derivable terms
 		for (int i = 0; i < rules.length; ++i)
 			if (rules[i].getPremiseCount() == 0) {
 				statements.add(rules[i].getConclusion());
+				index.add(rules[i].getConclusion());
 				if (--count <= 0)
 					return statements;
 			}
@@ -647,9 +959,9 @@ public class ProofSystem {
 						Rule statement = derive(rules[i], statements,
 								args.vector);
 						if (statement != null
-								&& !terms.isSpecialization(
-										statement.conclusion, statements)) {
+								&& !index.hasGeneralization(statement.conclusion)) {
 							statements.add(statement.conclusion);
+							index.add(statement.conclusion);
 							if (--count <= 0)
 								return statements;
 						}
@@ -33,12 +33,12 @@ public class RewriteSystem extends TermAlgebra
 	 */
 	public RewriteSystem(TermAlgebra terms, Rule[] rules)
 	{
-		operations = new Op[terms.getOperations().length];
-		
-		for(int i = 0; i < operations.length; ++i)
-			this.operations[i] = new Op(terms.getOperations()[i].getSymbol());
+		super(new Signature(terms), terms.getVariableCount());
 
 		this.rules = rules;
+
+		for(int i = 0; i < rules.length; ++i)
+			root.insert(rules[i].template, i);
 	}
 
 	public static class Rule
@@ -88,8 +88,8 @@ public class RewriteSystem extends TermAlgebra
 
 		if( pair != null )
 		{
-			Term template = Term.parse(terms, pair[0]);
-			Term replacement = Term.parse(terms, pair[1]);
+			Term template = terms.parse(pair[0]);
+			Term replacement = terms.parse(pair[1]);
 		
 			if( template != null && replacement != null )
 				return new Rule(template, replacement);
@@ -112,48 +112,216 @@ public class RewriteSystem extends TermAlgebra
 	}
 
 	/**
-	 * We apply the rewriting rules recursively to simplify 
-	 * the term only at the topmost occurrence.
+	 * A node of the perfect discrimination tree indexing the templates of the
+	 * rules. The path from the root to a leaf spells the template in preorder,
+	 * where an operation symbol is followed by its subterms, and a variable
+	 * is a separate edge for each variable index, so non-linear templates are
+	 * checked while walking down.
 	 */
-	protected Term rewriteTopLevel(Term term)
+	protected class Node
 	{
-		int count = rules.length;
+		/**
+		 * The children indexed by the operation and the variable indices,
+		 * created lazily.
+		 */
+		protected Node[] ops;
+		protected Node[] vars;
 
-		if( count == 0 )
-			return term;
+		/**
+		 * The least index of the rules whose template ends at this node,
+		 * or <code>Integer.MAX_VALUE</code>.
+		 */
+		protected int rule = Integer.MAX_VALUE;
 
-		for(;;)
+		protected void insert(Term template, int index)
+		{
+			Node node = this;
+
+			Term[] stack = new Term[template.getLength()];
+			stack[0] = template;
+			int sp = 1;
+
+			while( sp > 0 )
+			{
+				Term term = stack[--sp];
+				Node[] children;
+				int key;
+
+				if( term.isVariable() )
+				{
+					if( node.vars == null )
+						node.vars = new Node[generators];
+					children = node.vars;
+					key = term.getVariableIndex();
+				}
+				else
+				{
+					if( node.ops == null )
+						node.ops = new Node[operations.length];
+					children = node.ops;
+					key = term.getSymbolIndex();
+
+					for(int i = term.subterms.length - 1; i >= 0; --i)
+						stack[sp++] = term.subterms[i];
+				}
+
+				if( children[key] == null )
+					children[key] = new Node();
+				node = children[key];
+			}
+
+			if( index < node.rule )
+				node.rule = index;
+
+			if( stack.length > maxLength )
+				maxLength = stack.length;
+		}
+	}
+
+	/**
+	 * The root of the rule index.
+	 */
+	protected final Node root = new Node();
+
+	/**
+	 * The maximal length of the templates, which bounds the stack used
+	 * when matching.
+	 */
+	protected int maxLength = 1;
+
+	/**
+	 * The state of one retrieval from the rule index. The bindings of the
+	 * variables are reused across the matching attempts, and they are copied
+	 * only when a rule with smaller index is found.
+	 */
+	protected class Matcher
+	{
+		protected final Term[] stack = new Term[maxLength + 1];
+		protected final Term[] bindings = new Term[generators];
+		protected final Term[] best = new Term[generators];
+		protected int rule;
+
+		/**
+		 * Finds the matching rule with the least index and returns its
+		 * index, or <code>Integer.MAX_VALUE</code> if no rule matches.
+		 */
+		protected int match(Term term)
 		{
-			for(int i = 0; i < rules.length; ++i)
+			rule = Integer.MAX_VALUE;
+			stack[0] = term;
+			match(root, 1);
+			return rule;
+		}
+
+		protected void match(Node node, int sp)
+		{
+			if( sp == 0 )
+			{
+				if( node.rule < rule )
+				{
+					rule = node.rule;
+					System.arraycopy(bindings, 0, best, 0, bindings.length);
+				}
+				return;
+			}
+
+			Term term = stack[--sp];
+
+			if( node.ops != null && !term.isVariable() )
+			{
+				Node child = node.ops[term.getSymbolIndex()];
+				if( child != null )
+				{
+					Term[] subterms = term.subterms;
+					for(int i = subterms.length - 1; i >= 0; --i)
+						stack[sp + subterms.length - 1 - i] = subterms[i];
+
+					match(child, sp + subterms.length);
+					stack[sp] = term;
+				}
+			}
+
+			if( node.vars != null )
 			{
-				if( --count < 0 )
-					return term;
-				
-				Rule rule = rules[i];
-			
-				Evaluation endomorphism = createEndomorphism();
-				if( endomorphism.extend(rule.template, term) )
+				for(int i = 0; i < node.vars.length; ++i)
 				{
-					term = (Term)endomorphism.getValue(rule.replacement);
-					count = rules.length;
+					Node child = node.vars[i];
+					if( child == null )
+						continue;
+
+					if( bindings[i] == null )
+					{
+						bindings[i] = term;
+						match(child, sp);
+						bindings[i] = null;
+					}
+					else if( bindings[i] == term )
+						match(child, sp);
 				}
 			}
 		}
 	}
-	
-	protected class Op extends TermAlgebra.Op
+
+	/**
+	 * Returns the instance of the replacement term under the bindings. The
+	 * new terms are created by this algebra, so they are rewritten too.
+	 */
+	protected Term substitute(Term replacement, Term[] bindings)
 	{
-		Op(Symbol symbol)
+		if( replacement.isVariable() )
 		{
-			super(symbol);
+			Term image = bindings[replacement.getVariableIndex()];
+			if( image == null )
+				throw new IllegalArgumentException(
+					"the image of a variable is not set");
+
+			return image;
 		}
 
-		public Object getValue(Object[] args)
+		Term[] subterms = new Term[replacement.subterms.length];
+		for(int i = 0; i < subterms.length; ++i)
+			subterms[i] = substitute(replacement.subterms[i], bindings);
+
+		return createTerm(replacement.getSymbolIndex(), subterms);
+	}
+
+	/**
+	 * We apply the rewriting rules recursively to simplify 
+	 * the term only at the topmost occurrence. The rules are retrieved
+	 * from the discrimination tree, and the matching rule with the least
+	 * index is applied until no rule matches.
+	 */
+	protected Term rewriteTopLevel(Term term)
+	{
+		if( rules.length == 0 )
+			return term;
+
+		Matcher matcher = new Matcher();
+		for(;;)
 		{
-			return rewriteTopLevel((Term)super.getValue(args));
+			int rule = matcher.match(term);
+			if( rule == Integer.MAX_VALUE )
+				return term;
+
+			term = substitute(rules[rule].replacement, matcher.best);
 		}
 	}
 
+	/**
+	 * Every new term is rewritten at the top level. Since the subterms were
+	 * created by this method too, the terms of this algebra are in normal
+	 * form.
+	 */
+	protected Term createTerm(int index, Term[] subterms)
+	{
+		Term term = super.createTerm(index, subterms);
+
+		if( index < 0 || root == null )
+			return term;
+
+		return rewriteTopLevel(term);
+	}
+
 	/**
 	 * Returns a string representation of this object.
 	 */
@@ -18,7 +18,11 @@
 
 package org.mmaroti.ua.alg;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.mmaroti.ua.util.*;
 
@@ -369,7 +373,40 @@ public class SubAlgebra extends Algebra {
 	}
 
 	/**
-	 * Generates new elements in this subalgera.
+	 * Returns <code>true</code> if the elements of the base algebra are
+	 * enumerated, in which case the operations can be evaluated on indices of
+	 * the base algebra.
+	 */
+	protected boolean isBaseEnumerable() {
+		try {
+			base.getSize();
+			return true;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the index in the base algebra of the element with the given
+	 * index, or <code>-1</code> if the index is <code>-1</code>.
+	 */
+	protected int getBaseIndex(int index) {
+		if (index < 0)
+			return -1;
+
+		return base.getIndex(getElement(index));
+	}
+
+	/**
+	 * The number of argument tuples evaluated at once by {@link #generate}.
+	 */
+	protected static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Generates new elements in this subalgera. If the base algebra is
+	 * enumerated, then the operations are evaluated in batches of
+	 * {@link #BATCH_SIZE} argument tuples on the indices of the base algebra.
+	 * The elements are added in the same order in both cases.
 	 * 
 	 * @param maxSize
 	 *            the maximum number of elements this subset should have. If
@@ -380,6 +417,141 @@ public class SubAlgebra extends Algebra {
 		if (getSize() >= maxSize)
 			return;
 
+		if (!isBaseEnumerable()) {
+			generateByElements(maxSize);
+			return;
+		}
+
+		int[] baseIndices = new int[Math.max(16, getSize())];
+		int[] values = new int[BATCH_SIZE];
+
+		// base indices of the elements, so duplicates are not converted
+		IndexSet found = new IndexSet();
+		for (int i = 0; i < getSize(); ++i)
+			found.add(getBaseIndex(i));
+
+		int radius = -1;
+		while (++radius <= getSize()) {
+			if (radius > baseIndices.length)
+				baseIndices = Arrays.copyOf(baseIndices, 2 * radius);
+			if (radius > 0)
+				baseIndices[radius - 1] = getBaseIndex(radius - 1);
+
+			for (int i = 0; i < operations.length; ++i) {
+				Operation op = operations[i].base;
+				SphereArgument arg = new SphereArgument(op.getSymbol().arity,
+						radius);
+				int[] iargs = arg.vector;
+				int[][] columns = new int[iargs.length][BATCH_SIZE];
+
+				if (arg.reset()) {
+					boolean more;
+					do {
+						int count = 0;
+						do {
+							for (int j = 0; j < iargs.length; ++j)
+								columns[j][count] = baseIndices[iargs[j]];
+
+							++count;
+							more = arg.next();
+						} while (more && count < BATCH_SIZE);
+
+						op.getValues(columns, count, values);
+
+						for (int k = 0; k < count; ++k) {
+							if (values[k] < 0 || !found.add(values[k]))
+								continue;
+
+							add(base.getElement(values[k]));
+							if (getSize() >= maxSize)
+								return;
+						}
+					} while (more);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A set of non-negative integers stored in an open addressing hash table
+	 * with linear probing.
+	 */
+	protected static class IndexSet {
+		protected int[] slots = new int[64];
+		protected int count;
+
+		public IndexSet() {
+			Arrays.fill(slots, EMPTY);
+		}
+
+		/**
+		 * Adds a non-negative integer to the set, and returns
+		 * <code>true</code> if it was not already contained.
+		 */
+		public boolean add(int value) {
+			int mask = slots.length - 1;
+			int slot = hash(value) & mask;
+
+			while (slots[slot] != EMPTY) {
+				if (slots[slot] == value)
+					return false;
+
+				slot = (slot + 1) & mask;
+			}
+
+			slots[slot] = value;
+			if (++count * 2 > slots.length)
+				rehash();
+
+			return true;
+		}
+
+		/**
+		 * Returns <code>true</code> if the given integer is in the set. This
+		 * method can be called concurrently if the set is not modified.
+		 */
+		public boolean contains(int value) {
+			int mask = slots.length - 1;
+			int slot = hash(value) & mask;
+
+			while (slots[slot] != EMPTY) {
+				if (slots[slot] == value)
+					return true;
+
+				slot = (slot + 1) & mask;
+			}
+
+			return false;
+		}
+
+		private static int hash(int value) {
+			int hash = value * 0x9e3779b9;
+			return hash ^ (hash >>> 16);
+		}
+
+		private void rehash() {
+			int[] old = slots;
+			slots = new int[2 * old.length];
+			Arrays.fill(slots, EMPTY);
+
+			int mask = slots.length - 1;
+			for (int i = 0; i < old.length; ++i)
+				if (old[i] != EMPTY) {
+					int slot = hash(old[i]) & mask;
+					while (slots[slot] != EMPTY)
+						slot = (slot + 1) & mask;
+
+					slots[slot] = old[i];
+				}
+		}
+	}
+
+	/**
+	 * Generates new elements in this subalgebra by evaluating the operations
+	 * on the elements one argument tuple at a time. This is used when the base
+	 * algebra is not enumerated.
+	 */
+	protected void generateByElements(int maxSize) {
 		int radius = -1;
 		while (++radius <= getSize()) {
 			for (int i = 0; i < operations.length; ++i) {
@@ -403,6 +575,193 @@ public class SubAlgebra extends Algebra {
 		}
 	}
 
+	/**
+	 * Returns <code>true</code> if the batch evaluation of the operations of
+	 * the algebra is known to be thread safe. This is the case for
+	 * {@link AlgebraBuffer}, and for the products and enumerated subalgebras
+	 * of thread safe algebras. Other operations may use shared scratch space.
+	 */
+	protected static boolean isThreadSafe(Algebra algebra) {
+		if (algebra instanceof AlgebraBuffer)
+			return true;
+		else if (algebra instanceof SubAlgebra)
+			return isThreadSafe(((SubAlgebra) algebra).base);
+		else if (algebra instanceof ProductAlgebra) {
+			for (Algebra factor : ((ProductAlgebra) algebra).getFactors())
+				if (!isThreadSafe(factor))
+					return false;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * The number of argument tuples evaluated by a single task of the parallel
+	 * generation.
+	 */
+	protected static final int TASK_SIZE = 16 * BATCH_SIZE;
+
+	/**
+	 * Generates new elements in this subalgebra using the threads of the given
+	 * pool. All argument tuples of a radius use only elements that are present
+	 * when the radius is started, so the index range of each sphere is split
+	 * into tasks that evaluate the operations in parallel. The new elements
+	 * found by the tasks are then added in task order, so the elements and
+	 * their indices are the same as with {@link #generate(int)}, including
+	 * the <code>maxSize</code> cut-off. The batch evaluation of the base
+	 * operations must be thread safe, see {@link #isThreadSafe(Algebra)}. If
+	 * it is not known to be, or the base algebra is not enumerated, then the
+	 * elements are generated sequentially by {@link #generate(int)}.
+	 * 
+	 * @param maxSize
+	 *            the maximum number of elements this subset should have.
+	 * @param pool
+	 *            the pool running the evaluation tasks.
+	 */
+	public void generate(int maxSize, ForkJoinPool pool) {
+		if (getSize() >= maxSize)
+			return;
+
+		if (!isBaseEnumerable() || !isThreadSafe(base)) {
+			generate(maxSize);
+			return;
+		}
+
+		int[] baseIndices = new int[Math.max(16, getSize())];
+
+		IndexSet found = new IndexSet();
+		for (int i = 0; i < getSize(); ++i)
+			found.add(getBaseIndex(i));
+
+		int wave = 4 * pool.getParallelism();
+		List<GenerateTask> tasks = new ArrayList<GenerateTask>();
+
+		int radius = -1;
+		while (++radius <= getSize()) {
+			if (radius > baseIndices.length)
+				baseIndices = Arrays.copyOf(baseIndices, 2 * radius);
+			if (radius > 0)
+				baseIndices[radius - 1] = getBaseIndex(radius - 1);
+
+			for (int i = 0; i < operations.length; ++i) {
+				Operation op = operations[i].base;
+				int total = new SphereArgument(op.getSymbol().arity, radius)
+						.getMaxIndex();
+
+				for (int start = 0; start < total; start += TASK_SIZE) {
+					tasks.add(new GenerateTask(op, radius, start, Math.min(
+							total, start + TASK_SIZE), baseIndices, found));
+
+					if (tasks.size() >= wave) {
+						if (mergeTasks(tasks, pool, found, maxSize))
+							return;
+					}
+				}
+			}
+
+			if (mergeTasks(tasks, pool, found, maxSize))
+				return;
+		}
+	}
+
+	/**
+	 * Runs the tasks in the pool and adds their new elements in task order.
+	 * Returns <code>true</code> if <code>maxSize</code> is reached.
+	 */
+	private boolean mergeTasks(List<GenerateTask> tasks, ForkJoinPool pool,
+			IndexSet found, int maxSize) {
+		for (GenerateTask task : tasks)
+			pool.execute(task);
+
+		// the tasks read the found set, so it is modified only after all of
+		// them are finished
+		for (GenerateTask task : tasks)
+			task.join();
+
+		try {
+			for (GenerateTask task : tasks) {
+				for (int k = 0; k < task.count; ++k) {
+					if (!found.add(task.values[k]))
+						continue;
+
+					add(base.getElement(task.values[k]));
+					if (getSize() >= maxSize)
+						return true;
+				}
+			}
+		} finally {
+			tasks.clear();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Evaluates an operation at a range of argument tuples of a sphere and
+	 * collects the base indices of the results that are not yet found.
+	 */
+	@SuppressWarnings("serial")
+	protected class GenerateTask extends RecursiveAction {
+		protected final Operation op;
+		protected final int radius;
+		protected final int start;
+		protected final int end;
+		protected final int[] baseIndices;
+		protected final IndexSet found;
+
+		/**
+		 * The new base indices in the order they were found.
+		 */
+		protected int[] values;
+		protected int count;
+
+		protected GenerateTask(Operation op, int radius, int start, int end,
+				int[] baseIndices, IndexSet found) {
+			this.op = op;
+			this.radius = radius;
+			this.start = start;
+			this.end = end;
+			this.baseIndices = baseIndices;
+			this.found = found;
+		}
+
+		protected void compute() {
+			SphereArgument arg = new SphereArgument(op.getSymbol().arity,
+					radius);
+			int[] iargs = arg.vector;
+			if (!arg.reset())
+				return;
+			arg.setIndex(start);
+
+			int[][] columns = new int[iargs.length][BATCH_SIZE];
+			int[] batch = new int[BATCH_SIZE];
+			IndexSet local = new IndexSet();
+			values = new int[end - start];
+
+			int index = start;
+			while (index < end) {
+				int n = Math.min(BATCH_SIZE, end - index);
+				for (int k = 0; k < n; ++k) {
+					for (int j = 0; j < iargs.length; ++j)
+						columns[j][k] = baseIndices[iargs[j]];
+
+					arg.next();
+				}
+				index += n;
+
+				op.getValues(columns, n, batch);
+
+				for (int k = 0; k < n; ++k) {
+					int v = batch[k];
+					if (v >= 0 && !found.contains(v) && local.add(v))
+						values[count++] = v;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Calculates the subalgebra generated by the contained elements.
 	 */
@@ -426,7 +785,11 @@ public class SubAlgebra extends Algebra {
 		protected Operation base;
 
 		/**
-		 * Static vector of integers holding the transformed indices.
+		 * Static vector of objects holding the transformed indices. This is
+		 * reused by every evaluation, so the <code>int</code> methods do not
+		 * allocate argument arrays. The base operation may still allocate its
+		 * result, for example an {@link AlgebraBuffer} boxes the index of the
+		 * result, which allocates above <code>127</code>.
 		 */
 		protected Object[] os;
 
@@ -450,6 +813,67 @@ public class SubAlgebra extends Algebra {
 			return getIndex(base.getValue(os));
 		}
 
+		public int getConstant() {
+			return getIndex(base.getValue(os));
+		}
+
+		public int getValue(int a0) {
+			os[0] = getElement(a0);
+			return getIndex(base.getValue(os));
+		}
+
+		public int getValue(int a0, int a1) {
+			os[0] = getElement(a0);
+			os[1] = getElement(a1);
+			return getIndex(base.getValue(os));
+		}
+
+		public int getValue(int a0, int a1, int a2) {
+			os[0] = getElement(a0);
+			os[1] = getElement(a1);
+			os[2] = getElement(a2);
+			return getIndex(base.getValue(os));
+		}
+
+		/**
+		 * Evaluates the operation at many arguments at once. If the base
+		 * algebra is enumerated, then the arguments are translated to indices
+		 * of the base algebra and evaluated there as a single batch.
+		 * Otherwise the elements are evaluated one by one in a local argument
+		 * array, not in {@link #os}, so batches can be evaluated concurrently
+		 * if the base operation allows it.
+		 * 
+		 * @see Operation#getValues(int[][], int, int[])
+		 */
+		public void getValues(int[][] argumentColumns, int count, int[] out) {
+			if (argumentColumns.length != os.length)
+				throw new IllegalArgumentException(
+						"the number of columns must be the arity");
+
+			if (!isBaseEnumerable()) {
+				Object[] args = new Object[os.length];
+				for (int k = 0; k < count; ++k) {
+					for (int j = 0; j < args.length; ++j)
+						args[j] = getElement(argumentColumns[j][k]);
+
+					out[k] = getIndex(base.getValue(args));
+				}
+				return;
+			}
+
+			int[][] columns = new int[argumentColumns.length][count];
+			for (int j = 0; j < columns.length; ++j)
+				for (int k = 0; k < count; ++k)
+					columns[j][k] = getBaseIndex(argumentColumns[j][k]);
+
+			base.getValues(columns, count, out);
+
+			Algebra algebra = SubAlgebra.this.base;
+			for (int k = 0; k < count; ++k)
+				if (out[k] >= 0)
+					out[k] = getIndex(algebra.getElement(out[k]));
+		}
+
 		public int getSize() {
 			return size;
 		}
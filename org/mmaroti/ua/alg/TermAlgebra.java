@@ -19,6 +19,7 @@
 package org.mmaroti.ua.alg;
 
 import org.mmaroti.ua.util.*;
+import org.mmaroti.ua.util.Comparator;
 
 import java.util.*;
 
@@ -86,7 +87,7 @@ public class TermAlgebra extends Algebra {
 	public Term getVariable(int index) {
 		assert (0 <= index && index < generators);
 
-		return new Term(-index - 1, NOSUBTERM);
+		return createTerm(-index - 1, NOSUBTERM);
 	}
 
 	protected Op[] operations;
@@ -97,6 +98,80 @@ public class TermAlgebra extends Algebra {
 
 	private static final Term[] NOSUBTERM = new Term[0];
 
+	/**
+	 * All terms of this algebra are hash-consed through these memoizers, that
+	 * is, structurally equal terms are represented by the same object. Since
+	 * the subterms are canonical already, two terms are compared by their
+	 * index and the identity of their subterms, and the hash code is computed
+	 * only once when the term is created. The terms are distributed among
+	 * the memoizers by the high bits of their hash code, and each memoizer is
+	 * locked separately, so terms can be created by several threads at once.
+	 */
+	protected final Memoizer<Term>[] terms = createMemoizers();
+
+	/**
+	 * The binary logarithm of the number of memoizers holding the terms.
+	 */
+	protected static final int TERM_STRIPE_BITS = 5;
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Memoizer<Term>[] createMemoizers() {
+		Comparator<Term> comparator = new Comparator<Term>() {
+			public int hashCode(Term term) {
+				return term.hashcode;
+			}
+
+			public boolean equals(Term a, Term b) {
+				if (a.index != b.index)
+					return false;
+
+				for (int i = 0; i < a.subterms.length; ++i)
+					if (a.subterms[i] != b.subterms[i])
+						return false;
+
+				return true;
+			}
+
+			public Term clone(Term term) {
+				return term;
+			}
+		};
+
+		Memoizer<Term>[] memoizers = new Memoizer[1 << TERM_STRIPE_BITS];
+		for (int i = 0; i < memoizers.length; ++i)
+			memoizers[i] = new Memoizer<Term>(comparator);
+
+		return memoizers;
+	}
+
+	/**
+	 * Returns the canonical term with the given topmost operation and
+	 * subterms. All terms of this algebra must be created by this method.
+	 */
+	protected Term createTerm(int index, Term[] subterms) {
+		Term term = new Term(index, subterms);
+
+		// the memoizers hash by the low bits, so we pick them by the high ones
+		int hash = term.hashcode * 0x9e3779b9;
+		Memoizer<Term> stripe = terms[hash >>> (32 - TERM_STRIPE_BITS)];
+		synchronized (stripe) {
+			return stripe.memoize(term);
+		}
+	}
+
+	/**
+	 * Returns the number of distinct terms that are currently referenced.
+	 */
+	public int getTermCount() {
+		int count = 0;
+		for (Memoizer<Term> stripe : terms)
+			synchronized (stripe) {
+				count += stripe.size();
+			}
+
+		return count;
+	}
+
 	public class Term {
 		/**
 		 * Constructs a term whose topmost operation is indexed by
@@ -112,10 +187,22 @@ public class TermAlgebra extends Algebra {
 
 			this.index = index;
 			this.subterms = subterms;
+
+			int hashcode = index;
+			for (int i = 0; i < subterms.length; ++i) {
+				hashcode *= 1973;
+				hashcode += subterms[i].hashcode;
+			}
+			this.hashcode = hashcode;
 		}
 
 		protected final int index;
 
+		/**
+		 * The hash code of the term, calculated at construction.
+		 */
+		protected final int hashcode;
+
 		/**
 		 * Returns the topmost symbol of this term. If this term is a variable,
 		 * then this method throws an exception.
@@ -278,29 +365,15 @@ public class TermAlgebra extends Algebra {
 		}
 
 		public int hashCode() {
-			int hashcode = index;
-
-			for (int i = 0; i < subterms.length; ++i) {
-				hashcode *= 1973;
-				hashcode += subterms[i].hashCode();
-			}
-
 			return hashcode;
 		}
 
+		/**
+		 * Terms are hash-consed, so structurally equal terms of the same
+		 * algebra are identical.
+		 */
 		public boolean equals(Object object) {
-			Term other = (Term) object;
-
-			if (index != other.index)
-				return false;
-
-			assert (subterms.length == other.subterms.length);
-
-			for (int i = 0; i < subterms.length; ++i)
-				if (!subterms[i].equals(other.subterms[i]))
-					return false;
-
-			return true;
+			return this == object;
 		}
 	}
 
@@ -333,7 +406,7 @@ public class TermAlgebra extends Algebra {
 			int n = Integer.parseInt(string.substring(1));
 			if (string.equals("x" + n)) {
 				bracedLastParse = false;
-				return new Term(-1 - n, null);
+				return createTerm(-1 - n, NOSUBTERM);
 			}
 		}
 
@@ -344,14 +417,14 @@ public class TermAlgebra extends Algebra {
 			if (symbol.hasProperty(Symbol.INFIX)) {
 				if (symbol.getArity() == 0 && string.equals(name)) {
 					bracedLastParse = false;
-					return new Term(index, new Term[0]);
+					return createTerm(index, new Term[0]);
 				} else if (symbol.getArity() == 1 && string.startsWith(name)) {
 					Term subterm = parseSubterm(symbol, 0,
 							string.substring(name.length()));
 
 					if (subterm != null) {
 						bracedLastParse = false;
-						return new Term(index, new Term[] { subterm });
+						return createTerm(index, new Term[] { subterm });
 					}
 				} else if (symbol.getArity() == 2) {
 					int pos = -1;
@@ -367,7 +440,7 @@ public class TermAlgebra extends Algebra {
 
 						if (subterm1 != null && subterm2 != null) {
 							bracedLastParse = false;
-							return new Term(index, new Term[] { subterm1,
+							return createTerm(index, new Term[] { subterm1,
 									subterm2 });
 						}
 					}
@@ -386,7 +459,7 @@ public class TermAlgebra extends Algebra {
 							break;
 
 					if (j < 0)
-						return new Term(index, subterms);
+						return createTerm(index, subterms);
 				}
 			}
 		}
@@ -446,7 +519,7 @@ public class TermAlgebra extends Algebra {
 			// for(int i = 0; i < symbol.arity; ++i)
 			// subterms[i] = (Term)args[i];
 
-			return new Term(index, subterms);
+			return createTerm(index, subterms);
 		}
 
 		/**
@@ -456,7 +529,44 @@ public class TermAlgebra extends Algebra {
 		 * modified after this call.
 		 */
 		public Term getValue(Term[] args) {
-			return new Term(index, args);
+			return createTerm(index, args);
+		}
+
+		public Object getConstantElement() {
+			return createTerm(index, new Term[0]);
+		}
+
+		public Object getValue(Object a0) {
+			return createTerm(index, new Term[] { (Term) a0 });
+		}
+
+		public Object getValue(Object a0, Object a1) {
+			return createTerm(index, new Term[] { (Term) a0, (Term) a1 });
+		}
+
+		public Object getValue(Object a0, Object a1, Object a2) {
+			return createTerm(index, new Term[] { (Term) a0, (Term) a1,
+					(Term) a2 });
+		}
+
+		public int getConstant() {
+			throw new UnsupportedOperationException(
+					"the elements of a term algebra cannot be enumerated");
+		}
+
+		public int getValue(int a0) {
+			throw new UnsupportedOperationException(
+					"the elements of a term algebra cannot be enumerated");
+		}
+
+		public int getValue(int a0, int a1) {
+			throw new UnsupportedOperationException(
+					"the elements of a term algebra cannot be enumerated");
+		}
+
+		public int getValue(int a0, int a1, int a2) {
+			throw new UnsupportedOperationException(
+					"the elements of a term algebra cannot be enumerated");
 		}
 
 		public int getSize() {
@@ -622,7 +732,7 @@ public class TermAlgebra extends Algebra {
 			if (i >= generators)
 				throw new IllegalArgumentException("not enough generators");
 
-			endomorphism.set(var, getVariable(i));
+			endomorphism.set(var, getVariable(i++));
 		}
 
 		return endomorphism;
@@ -0,0 +1,300 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.alg;
+
+import java.util.*;
+
+/**
+ * A subsumption index over a set of terms of a term algebra. It answers the
+ * forward query, which stored terms have the given term as a specialization,
+ * and the backward query, which stored terms are specializations of the
+ * given term.
+ * <p>
+ * The terms are stored in a discrimination tree. The path from the root to a
+ * leaf spells the term in preorder, where an operation symbol is followed by
+ * its subterms and every variable is replaced by the same wildcard. A query
+ * walks the tree once and collects the terms at the leaves it reaches. These
+ * candidates agree with the query everywhere but at the repeated variables,
+ * so only they are passed to {@link Evaluation#extend}.
+ *
+ * @author mmaroti@math.u-szeged.hu
+ */
+public class TermIndex {
+	/**
+	 * Creates an empty index for terms of the given algebra.
+	 */
+	public TermIndex(TermAlgebra algebra) {
+		this.algebra = algebra;
+
+		arities = new int[algebra.getOperations().length];
+		for (int i = 0; i < arities.length; ++i)
+			arities[i] = algebra.getOperations()[i].getArity();
+	}
+
+	protected final TermAlgebra algebra;
+	protected final int[] arities;
+
+	protected class Node {
+		/**
+		 * The children indexed by the operations, created lazily, and the
+		 * child of the wildcard.
+		 */
+		protected Node[] ops;
+		protected Node variable;
+
+		/**
+		 * The terms ending at this node, or <code>null</code>.
+		 */
+		protected List<TermAlgebra.Term> terms;
+
+		protected Node getChild(TermAlgebra.Term term, boolean create) {
+			if (term.isVariable()) {
+				if (variable == null && create)
+					variable = new Node();
+				return variable;
+			}
+
+			if (ops == null) {
+				if (!create)
+					return null;
+				ops = new Node[arities.length];
+			}
+
+			int index = term.getSymbolIndex();
+			if (ops[index] == null && create)
+				ops[index] = new Node();
+			return ops[index];
+		}
+	}
+
+	protected final Node root = new Node();
+	protected int size;
+
+	/**
+	 * Returns the number of terms in the index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the leaf of the term, or <code>null</code> if it does not
+	 * exist and <code>create</code> is <code>false</code>.
+	 */
+	protected Node getLeaf(TermAlgebra.Term term, boolean create) {
+		Node node = root;
+
+		TermAlgebra.Term[] stack = new TermAlgebra.Term[term.getLength()];
+		stack[0] = term;
+		int sp = 1;
+
+		while (sp > 0 && node != null) {
+			term = stack[--sp];
+			node = node.getChild(term, create);
+
+			for (int i = term.subterms.length - 1; i >= 0; --i)
+				stack[sp++] = term.subterms[i];
+		}
+
+		return node;
+	}
+
+	/**
+	 * Adds a term to the index. Returns <code>false</code> if the term was
+	 * already there.
+	 */
+	public boolean add(TermAlgebra.Term term) {
+		Node leaf = getLeaf(term, true);
+
+		if (leaf.terms == null)
+			leaf.terms = new ArrayList<TermAlgebra.Term>(1);
+		else if (leaf.terms.contains(term))
+			return false;
+
+		leaf.terms.add(term);
+		++size;
+		return true;
+	}
+
+	/**
+	 * Removes a term from the index. Returns <code>false</code> if the term
+	 * was not there.
+	 */
+	public boolean remove(TermAlgebra.Term term) {
+		Node leaf = getLeaf(term, false);
+
+		if (leaf == null || leaf.terms == null || !leaf.terms.remove(term))
+			return false;
+
+		--size;
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the term is in the index.
+	 */
+	public boolean contains(TermAlgebra.Term term) {
+		Node leaf = getLeaf(term, false);
+		return leaf != null && leaf.terms != null && leaf.terms.contains(term);
+	}
+
+	protected TermAlgebra.Term[] stack;
+	protected List<TermAlgebra.Term> candidates = new ArrayList<TermAlgebra.Term>();
+
+	/**
+	 * Collects the terms whose path, with the wildcard matching any subterm,
+	 * matches the first <code>sp</code> terms of the stack.
+	 */
+	protected void collectGeneralizations(Node node, int sp) {
+		if (sp == 0) {
+			if (node.terms != null)
+				candidates.addAll(node.terms);
+			return;
+		}
+
+		TermAlgebra.Term term = stack[--sp];
+
+		if (node.variable != null)
+			collectGeneralizations(node.variable, sp);
+
+		if (node.ops != null && !term.isVariable()) {
+			Node child = node.ops[term.getSymbolIndex()];
+			if (child != null) {
+				TermAlgebra.Term[] subterms = term.subterms;
+				for (int i = subterms.length - 1; i >= 0; --i)
+					stack[sp + subterms.length - 1 - i] = subterms[i];
+
+				collectGeneralizations(child, sp + subterms.length);
+				stack[sp] = term;
+			}
+		}
+	}
+
+	/**
+	 * Collects the terms whose path matches the first <code>sp</code> terms
+	 * of the stack, where a variable of the stack matches any subterm of the
+	 * path. The value of <code>skip</code> is the number of subterms of the
+	 * path that still have to be matched by a variable.
+	 */
+	protected void collectInstances(Node node, int sp, int skip) {
+		if (skip > 0) {
+			if (node.variable != null)
+				collectInstances(node.variable, sp, skip - 1);
+
+			if (node.ops != null)
+				for (int i = 0; i < node.ops.length; ++i)
+					if (node.ops[i] != null)
+						collectInstances(node.ops[i], sp, skip - 1
+								+ arities[i]);
+
+			return;
+		}
+
+		if (sp == 0) {
+			if (node.terms != null)
+				candidates.addAll(node.terms);
+			return;
+		}
+
+		TermAlgebra.Term term = stack[--sp];
+
+		if (term.isVariable())
+			collectInstances(node, sp, 1);
+		else if (node.ops != null) {
+			Node child = node.ops[term.getSymbolIndex()];
+			if (child != null) {
+				TermAlgebra.Term[] subterms = term.subterms;
+				for (int i = subterms.length - 1; i >= 0; --i)
+					stack[sp + subterms.length - 1 - i] = subterms[i];
+
+				collectInstances(child, sp + subterms.length, 0);
+				stack[sp] = term;
+			}
+		}
+	}
+
+	/**
+	 * Returns the stored terms that can be mapped to the given term by an
+	 * endomorphism of the term algebra.
+	 */
+	public List<TermAlgebra.Term> getGeneralizations(TermAlgebra.Term term) {
+		return find(term, true, false);
+	}
+
+	/**
+	 * Returns the stored terms to which the given term can be mapped by an
+	 * endomorphism of the term algebra.
+	 */
+	public List<TermAlgebra.Term> getInstances(TermAlgebra.Term term) {
+		return find(term, false, false);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given term is a specialization of a
+	 * stored term. This is the same as
+	 * {@link TermAlgebra#isSpecialization(TermAlgebra.Term, Collection)} for
+	 * the stored terms.
+	 */
+	public boolean hasGeneralization(TermAlgebra.Term term) {
+		return !find(term, true, true).isEmpty();
+	}
+
+	/**
+	 * Removes the stored terms that are specializations of the given term,
+	 * and returns them.
+	 */
+	public List<TermAlgebra.Term> removeInstances(TermAlgebra.Term term) {
+		List<TermAlgebra.Term> list = getInstances(term);
+		for (TermAlgebra.Term t : list)
+			remove(t);
+
+		return list;
+	}
+
+	protected List<TermAlgebra.Term> find(TermAlgebra.Term term,
+			boolean generalizations, boolean first) {
+		stack = new TermAlgebra.Term[term.getLength()];
+		stack[0] = term;
+
+		if (generalizations)
+			collectGeneralizations(root, 1);
+		else
+			collectInstances(root, 1, 0);
+
+		List<TermAlgebra.Term> list = new ArrayList<TermAlgebra.Term>();
+		Evaluation endomorphism = algebra.createEndomorphism();
+
+		for (TermAlgebra.Term candidate : candidates) {
+			boolean found = generalizations ? endomorphism.extend(candidate,
+					term) : endomorphism.extend(term, candidate);
+			endomorphism.clear();
+
+			if (found) {
+				list.add(candidate);
+				if (first)
+					break;
+			}
+		}
+
+		candidates.clear();
+		stack = null;
+
+		return list;
+	}
+}
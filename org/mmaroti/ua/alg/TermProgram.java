@@ -0,0 +1,310 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.alg;
+
+import java.util.*;
+
+/**
+ * A list of terms compiled into a straight-line program that evaluates them in
+ * a finite algebra for all assignments of the variables. Every distinct
+ * subterm gets its own register, so common subterms are evaluated only once.
+ * The program is run on blocks of assignments, where every register holds a
+ * column of element indices and every instruction is a single call of
+ * {@link Operation#getValues(int[][], int, int[])}.
+ * <p>
+ * The assignments are the tuples of the variables that occur in the terms,
+ * listed in increasing order of their index. The position of an assignment is
+ * computed as for operation tables: the first variable is the most
+ * significant.
+ *
+ * @author mmaroti@math.u-szeged.hu
+ */
+public class TermProgram {
+	/**
+	 * The number of assignments evaluated in a single run of the program.
+	 */
+	protected static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * Compiles the given terms of <code>domain</code> to be evaluated in the
+	 * finite algebra <code>codomain</code>.
+	 */
+	public TermProgram(TermAlgebra domain, Algebra codomain,
+			TermAlgebra.Term[] terms) {
+		if (!domain.isCompatible(codomain))
+			throw new IllegalArgumentException("codomain is not compatible");
+
+		this.codomain = codomain;
+		this.size = codomain.getSize();
+
+		TreeSet<Integer> vars = new TreeSet<Integer>();
+		for (int i = 0; i < terms.length; ++i)
+			terms[i].addMyVariablesTo(vars);
+
+		variables = new int[vars.size()];
+		Iterator<Integer> iter = vars.iterator();
+		for (int i = 0; i < variables.length; ++i) {
+			variables[i] = iter.next();
+			registers.put(domain.getVariable(variables[i]), i);
+		}
+
+		outputs = new int[terms.length];
+		for (int i = 0; i < terms.length; ++i)
+			outputs[i] = compile(terms[i]);
+
+		operations = new Operation[opcodes.size()];
+		arguments = new int[opcodes.size()][];
+		for (int i = 0; i < operations.length; ++i) {
+			operations[i] = codomain.getOperations()[opcodes.get(i)];
+			arguments[i] = argumentLists.get(i);
+		}
+
+		opcodes = null;
+		argumentLists = null;
+		registers = null;
+
+		columns = new int[variables.length + operations.length][BLOCK_SIZE];
+		digits = new int[variables.length];
+	}
+
+	protected final Algebra codomain;
+	protected final int size;
+
+	/**
+	 * The indices of the variables of the terms, in increasing order. The
+	 * first registers hold the values of these variables.
+	 */
+	protected final int[] variables;
+
+	/**
+	 * Returns the indices of the variables that occur in the terms, in
+	 * increasing order.
+	 */
+	public int[] getVariables() {
+		return variables;
+	}
+
+	/**
+	 * The instructions of the program. Instruction <code>i</code> evaluates
+	 * <code>operations[i]</code> on the registers listed in
+	 * <code>arguments[i]</code>, and stores the result in register
+	 * <code>variables.length + i</code>.
+	 */
+	protected final Operation[] operations;
+	protected final int[][] arguments;
+
+	/**
+	 * The registers holding the values of the compiled terms.
+	 */
+	protected final int[] outputs;
+
+	/**
+	 * Returns the number of instructions of the program, which is the number
+	 * of distinct non-variable subterms of the terms.
+	 */
+	public int getInstructionCount() {
+		return operations.length;
+	}
+
+	private HashMap<TermAlgebra.Term, Integer> registers = new HashMap<TermAlgebra.Term, Integer>();
+	private List<Integer> opcodes = new ArrayList<Integer>();
+	private List<int[]> argumentLists = new ArrayList<int[]>();
+
+	/**
+	 * Emits the instructions computing the given term, and returns the
+	 * register holding its value. Terms are hash-consed, so the register map
+	 * finds the common subterms in constant time.
+	 */
+	private int compile(TermAlgebra.Term term) {
+		Integer register = registers.get(term);
+		if (register != null)
+			return register.intValue();
+
+		TermAlgebra.Term[] subterms = term.getSubterms();
+		int[] args = new int[subterms.length];
+		for (int i = 0; i < args.length; ++i)
+			args[i] = compile(subterms[i]);
+
+		int reg = variables.length + opcodes.size();
+		opcodes.add(term.getSymbolIndex());
+		argumentLists.add(args);
+		registers.put(term, reg);
+
+		return reg;
+	}
+
+	/**
+	 * Returns the number of assignments, that is the size of the algebra
+	 * raised to the number of variables.
+	 */
+	public long getAssignmentCount() {
+		long count = 1;
+		for (int i = 0; i < variables.length; ++i) {
+			if (count > Long.MAX_VALUE / size)
+				throw new IllegalArgumentException("too many assignments");
+
+			count *= size;
+		}
+
+		return count;
+	}
+
+	/**
+	 * The registers, each holding the values for a block of assignments.
+	 */
+	protected final int[][] columns;
+
+	/**
+	 * The assignment at the start of the next block.
+	 */
+	protected final int[] digits;
+
+	/**
+	 * Sets the assignment where the next block starts.
+	 */
+	protected void seek(long position) {
+		int i = digits.length;
+		while (--i >= 0) {
+			digits[i] = (int) (position % size);
+			position /= size;
+		}
+	}
+
+	/**
+	 * Runs the program on the next <code>count</code> assignments starting at
+	 * the one stored in {@link #digits}, and advances to the next block.
+	 */
+	protected void run(int count) {
+		for (int k = 0; k < count; ++k) {
+			int i = digits.length;
+			while (--i >= 0)
+				columns[i][k] = digits[i];
+
+			i = digits.length;
+			while (--i >= 0 && ++digits[i] >= size)
+				digits[i] = 0;
+		}
+
+		int[][] args = new int[0][];
+		for (int i = 0; i < operations.length; ++i) {
+			int[] out = columns[variables.length + i];
+			int[] regs = arguments[i];
+
+			if (regs.length == 0) {
+				Arrays.fill(out, 0, count, operations[i].getConstant());
+				continue;
+			}
+
+			if (args.length != regs.length)
+				args = new int[regs.length][];
+			for (int j = 0; j < regs.length; ++j)
+				args[j] = columns[regs[j]];
+
+			operations[i].getValues(args, count, out);
+		}
+	}
+
+	/**
+	 * Returns the tables of the term operations of all compiled terms. Table
+	 * <code>i</code> lists the values of term <code>i</code> at all
+	 * assignments, indexed by the position of the assignment.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the tables would have more than
+	 *             <code>Integer.MAX_VALUE</code> entries.
+	 */
+	public int[][] getTables() {
+		long total = getAssignmentCount();
+		if (total > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("the table is too large");
+
+		int[][] tables = new int[outputs.length][(int) total];
+
+		seek(0);
+		for (int start = 0; start < total; start += BLOCK_SIZE) {
+			int count = (int) Math.min(BLOCK_SIZE, total - start);
+			run(count);
+
+			for (int i = 0; i < outputs.length; ++i)
+				System.arraycopy(columns[outputs[i]], 0, tables[i], start,
+						count);
+		}
+
+		return tables;
+	}
+
+	/**
+	 * Returns the position of the first assignment where the terms with the
+	 * given indices take different values, or <code>-1</code> if they are
+	 * equal everywhere.
+	 */
+	public long findDifference(int term1, int term2) {
+		int[] a = columns[outputs[term1]];
+		int[] b = columns[outputs[term2]];
+
+		long total = getAssignmentCount();
+
+		seek(0);
+		for (long start = 0; start < total; start += BLOCK_SIZE) {
+			int count = (int) Math.min(BLOCK_SIZE, total - start);
+			run(count);
+
+			for (int k = 0; k < count; ++k)
+				if (a[k] != b[k])
+					return start + k;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the assignment with the given position as an array indexed by
+	 * the variables of the term algebra. The variables not occurring in the
+	 * terms are mapped to zero.
+	 */
+	public int[] getAssignment(long position, int variableCount) {
+		int[] assignment = new int[variableCount];
+
+		int i = variables.length;
+		while (--i >= 0) {
+			assignment[variables[i]] = (int) (position % size);
+			position /= size;
+		}
+
+		return assignment;
+	}
+
+	/**
+	 * Checks if the identity <code>left = right</code> holds in the
+	 * <code>codomain</code> algebra. Returns the first falsifying assignment
+	 * of the variables of <code>domain</code>, or <code>null</code> if the
+	 * identity holds.
+	 */
+	public static int[] findFalsifyingAssignment(TermAlgebra domain,
+			Algebra codomain, TermAlgebra.Term left, TermAlgebra.Term right) {
+		TermProgram program = new TermProgram(domain, codomain,
+				new TermAlgebra.Term[] { left, right });
+
+		long position = program.findDifference(0, 1);
+		if (position < 0)
+			return null;
+
+		return program.getAssignment(position, domain.getVariableCount());
+	}
+}
@@ -142,6 +142,14 @@ public class Integers extends Algebra implements Ring {
 			assert (args.length == 2);
 			return sum(args[0], args[1]);
 		}
+
+		public int getValue(int a0, int a1) {
+			return sum(a0, a1);
+		}
+
+		public Object getValue(Object a0, Object a1) {
+			return sum(a0, a1);
+		}
 	}, new Operation() {
 		public Symbol getSymbol() {
 			return NEG;
@@ -160,6 +168,14 @@ public class Integers extends Algebra implements Ring {
 			assert (args.length == 1);
 			return negative(args[0]);
 		}
+
+		public int getValue(int a0) {
+			return negative(a0);
+		}
+
+		public Object getValue(Object a0) {
+			return negative(a0);
+		}
 	}, new Operation() {
 		public Symbol getSymbol() {
 			return ZERO;
@@ -178,6 +194,14 @@ public class Integers extends Algebra implements Ring {
 			assert (args.length == 0);
 			return zeroElement();
 		}
+
+		public int getConstant() {
+			return zero();
+		}
+
+		public Object getConstantElement() {
+			return zeroElement();
+		}
 	}, new Operation() {
 		public Symbol getSymbol() {
 			return PROD;
@@ -196,6 +220,14 @@ public class Integers extends Algebra implements Ring {
 			assert (args.length == 2);
 			return product(args[0], args[1]);
 		}
+
+		public int getValue(int a0, int a1) {
+			return product(a0, a1);
+		}
+
+		public Object getValue(Object a0, Object a1) {
+			return product(a0, a1);
+		}
 	}, new Operation() {
 		public Symbol getSymbol() {
 			return UNIT;
@@ -214,6 +246,14 @@ public class Integers extends Algebra implements Ring {
 			assert (args.length == 0);
 			return unitElement();
 		}
+
+		public int getConstant() {
+			return unit();
+		}
+
+		public Object getConstantElement() {
+			return unitElement();
+		}
 	} };
 
 	public Operation[] getOperations() {
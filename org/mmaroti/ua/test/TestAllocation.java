@@ -0,0 +1,258 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+
+import org.mmaroti.ua.alg.*;
+import org.mmaroti.ua.math.Integers;
+
+/**
+ * Checks that the arity specialized evaluation methods of the operations
+ * return the same values as the array based ones, and that they do not
+ * allocate memory. The index based paths of buffers, products and packed
+ * subalgebras must not allocate at any size. The element based paths box
+ * indices, which allocates above <code>127</code>, so they are checked on
+ * small algebras only.
+ */
+public class TestAllocation
+{
+	static final Symbol TERNARY = new Symbol("t", 3, 0, 0);
+
+	static AlgebraBuffer createAlgebra(int size)
+	{
+		Signature signature = new Signature(new Symbol[] {
+				Signature.GROUPOID.getOperations()[0], TERNARY });
+		AlgebraBuffer algebra = new AlgebraBuffer(signature, size);
+
+		AlgebraBuffer.Op binary = algebra.getOperationTable(0);
+		AlgebraBuffer.Op ternary = algebra.getOperationTable(1);
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+			{
+				binary.setValue(a, b, (a * b + 1) % size);
+				for(int c = 0; c < size; ++c)
+					ternary.setValue(a, b, c, (a + b * c) % size);
+			}
+
+		return algebra;
+	}
+
+	static int evaluate(Operation op, int size, int rounds)
+	{
+		int x = 0;
+		for(int r = 0; r < rounds; ++r)
+			for(int a = 0; a < size; ++a)
+				for(int b = 0; b < size; ++b)
+				{
+					if( op.getArity() == 2 )
+						x += op.getValue(a, b);
+					else
+						x += op.getValue(a, b, (a + r) % size);
+				}
+
+		return x;
+	}
+
+	static void compare(Operation op, int size)
+	{
+		int[] args = new int[op.getArity()];
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+			{
+				args[0] = a;
+				args[1] = b;
+				int value;
+				if( args.length == 2 )
+					value = op.getValue(a, b);
+				else
+				{
+					args[2] = (a + b) % size;
+					value = op.getValue(a, b, args[2]);
+				}
+
+				if( value != op.getValue(args) )
+					throw new IllegalStateException("specialized evaluation differs");
+			}
+	}
+
+	static long allocatedBytes()
+	{
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)
+				ManagementFactory.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	static void test(String name, Operation op, int size)
+	{
+		compare(op, size);
+
+		// warm up the JIT and the allocation counter, small tables need more
+		// rounds to get compiled before the measurement
+		evaluate(op, size, Math.max(100, 200000 / (size * size)));
+		allocatedBytes();
+
+		// the JIT may allocate during a single run, so take the best of three
+		long bytes = Long.MAX_VALUE;
+		int x = 0;
+		for(int i = 0; i < 3; ++i)
+		{
+			long before = allocatedBytes();
+			x = evaluate(op, size, 100);
+			bytes = Math.min(bytes, allocatedBytes() - before);
+		}
+
+		long calls = 100L * size * size;
+		System.out.println(name + ": " + calls + " calls, " + bytes
+				+ " bytes allocated (" + x + ")");
+
+		check(name, bytes);
+	}
+
+	static void check(String name, long bytes)
+	{
+		// allow for the few objects created by the measurement itself
+		if( bytes > 1024 )
+			throw new IllegalStateException(name + " allocates memory");
+	}
+
+	static Object evaluateElements(Operation op, Object element, int rounds)
+	{
+		Object x = null;
+		for(int r = 0; r < rounds; ++r)
+		{
+			if( op.getArity() == 0 )
+				x = op.getConstantElement();
+			else if( op.getArity() == 1 )
+				x = op.getValue(element);
+			else
+				x = op.getValue(element, element);
+		}
+
+		return x;
+	}
+
+	static void compareElements(Algebra algebra, Operation op, Object[] elements)
+	{
+		for(int a = 0; a < elements.length; ++a)
+			for(int b = 0; b < elements.length; ++b)
+			{
+				Object[] args = new Object[op.getArity()];
+				Object value;
+				if( args.length == 0 )
+					value = op.getConstantElement();
+				else if( args.length == 1 )
+				{
+					args[0] = elements[a];
+					value = op.getValue(elements[a]);
+				}
+				else
+				{
+					args[0] = elements[a];
+					args[1] = elements[b];
+					value = op.getValue(elements[a], elements[b]);
+				}
+
+				if( !algebra.areEquals(value, op.getValue(args)) )
+					throw new IllegalStateException("specialized evaluation differs");
+			}
+	}
+
+	/**
+	 * Checks the element based evaluation of an operation of a non enumerable
+	 * algebra. The allocation is measured at an element where the result
+	 * itself needs no new object, so only the argument arrays would count.
+	 */
+	static void testElements(String name, Algebra algebra, Operation op,
+			Object[] elements, Object element)
+	{
+		compareElements(algebra, op, elements);
+
+		evaluateElements(op, element, 100000);
+		allocatedBytes();
+
+		long bytes = Long.MAX_VALUE;
+		Object x = null;
+		for(int i = 0; i < 3; ++i)
+		{
+			long before = allocatedBytes();
+			x = evaluateElements(op, element, 100000);
+			bytes = Math.min(bytes, allocatedBytes() - before);
+		}
+
+		System.out.println(name + ": 100000 calls, " + bytes
+				+ " bytes allocated (" + x + ")");
+
+		check(name, bytes);
+	}
+
+	public static void main(String[] args)
+	{
+		AlgebraBuffer algebra = createAlgebra(5);
+		test("buffer binary", algebra.getOperations()[0], 5);
+		test("buffer ternary", algebra.getOperations()[1], 5);
+
+		ProductAlgebra product = new ProductAlgebra(algebra, 3);
+		test("product binary", product.getOperations()[0], product.getSize());
+		test("product ternary", product.getOperations()[1], 40);
+
+		// short entries, and indices that are not in the Integer cache
+		AlgebraBuffer large = createAlgebra(150);
+		test("large buffer binary", large.getOperations()[0], 150);
+		test("large buffer ternary", large.getOperations()[1], 150);
+
+		ProductAlgebra largeProduct = new ProductAlgebra(large, 2);
+		test("large product binary", largeProduct.getOperations()[0], 400);
+
+		PackedSubAlgebra packed = new PackedSubAlgebra(product);
+		packed.add(new int[] { 0, 1, 2 });
+		packed.add(new int[] { 3, 1, 4 });
+		packed.generate();
+		test("packed binary", packed.getOperations()[0], packed.getSize());
+		test("packed ternary", packed.getOperations()[1],
+				Math.min(40, packed.getSize()));
+
+		// the elements of a product are new tuples, and the results of a
+		// buffer are boxed, so the base is a small buffer
+		SubAlgebra subalgebra = new SubAlgebra(algebra);
+		subalgebra.add(algebra.getElement(2));
+		subalgebra.generate();
+		test("subalgebra binary", subalgebra.getOperations()[0],
+				subalgebra.getSize());
+		test("subalgebra ternary", subalgebra.getOperations()[1],
+				subalgebra.getSize());
+
+		// the negation is left out, it always allocates its result
+		Integers integers = new Integers();
+		Operation[] ops = integers.getOperations();
+		Object[] elements = new Object[] { BigInteger.valueOf(-2),
+				BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(3) };
+		testElements("integers sum", integers, ops[0], elements,
+				BigInteger.ZERO);
+		testElements("integers zero", integers, ops[2], elements,
+				BigInteger.ZERO);
+		testElements("integers product", integers, ops[3], elements,
+				BigInteger.ZERO);
+		testElements("integers unit", integers, ops[4], elements,
+				BigInteger.ZERO);
+
+		System.out.println("test passed");
+	}
+}
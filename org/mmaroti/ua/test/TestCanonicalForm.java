@@ -0,0 +1,161 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.test;
+
+import java.util.*;
+
+import org.mmaroti.ua.util.Arrays;
+import org.mmaroti.ua.util.CanonicalForm;
+import org.mmaroti.ua.util.PermArgument;
+
+/**
+ * Counts the isomorphism classes of all small magmas and digraphs by their
+ * canonical forms, and checks that the canonical form does not change when
+ * the structure is relabeled.
+ */
+public class TestCanonicalForm
+{
+	static final int[] BINARY = { 2 };
+	static final int[] NONE = {};
+
+	/**
+	 * Returns the table with the given index in the lexicographic order of
+	 * the tables of the given arity with values below <code>values</code>.
+	 */
+	public static int[] table(int size, int arity, int values, int index)
+	{
+		int length = 1;
+		for(int i = 0; i < arity; ++i)
+			length *= size;
+
+		int[] table = new int[length];
+		for(int i = length - 1; i >= 0; --i)
+		{
+			table[i] = index % values;
+			index /= values;
+		}
+
+		return table;
+	}
+
+	/**
+	 * Relabels the binary table by the permutation. The values are relabeled
+	 * as well for operations, but not for relations.
+	 */
+	public static int[] relabel(int[] table, int[] perm, boolean operation)
+	{
+		int size = perm.length;
+		int[] result = new int[table.length];
+
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+			{
+				int value = table[a * size + b];
+				result[perm[a] * size + perm[b]] = operation ? perm[value] : value;
+			}
+
+		return result;
+	}
+
+	public static CanonicalForm magma(int size, int[] table)
+	{
+		return new CanonicalForm(size, BINARY, new int[][] { table }, NONE, new int[0][]);
+	}
+
+	public static CanonicalForm digraph(int size, int[] table)
+	{
+		return new CanonicalForm(size, NONE, new int[0][], BINARY, new int[][] { table });
+	}
+
+	static void check(CanonicalForm form, int[] table, boolean operation)
+	{
+		int[] canonical = relabel(table, form.getLabeling(), operation);
+		if( !Arrays.equals(canonical, form.getTable(0)) )
+			throw new IllegalStateException("the labeling does not give the canonical table");
+
+		Iterator<int[]> iter = form.getAutomorphisms().iterator();
+		while( iter.hasNext() )
+			if( !Arrays.equals(relabel(table, iter.next(), operation), table) )
+				throw new IllegalStateException("not an automorphism");
+	}
+
+	/**
+	 * Counts the isomorphism classes of the binary operations or relations,
+	 * and checks the labeling and the automorphisms of every form.
+	 */
+	public static int countClasses(int size, boolean operation)
+	{
+		int values = operation ? size : 2;
+		int count = 1;
+		for(int i = 0; i < size * size; ++i)
+			count *= values;
+
+		Set<CanonicalForm> classes = new HashSet<CanonicalForm>();
+		for(int index = 0; index < count; ++index)
+		{
+			int[] table = table(size, 2, values, index);
+			CanonicalForm form = operation ? magma(size, table) : digraph(size, table);
+
+			check(form, table, operation);
+			classes.add(form);
+		}
+
+		return classes.size();
+	}
+
+	/**
+	 * Checks that every relabeling of a random operation gives the same
+	 * canonical form.
+	 */
+	public static void testRelabeling(Random random, int size)
+	{
+		int[] table = new int[size * size];
+		for(int i = 0; i < table.length; ++i)
+			table[i] = random.nextInt(size);
+
+		CanonicalForm form = magma(size, table);
+		check(form, table, true);
+
+		PermArgument arg = new PermArgument(size);
+		if( arg.reset() ) do
+		{
+			CanonicalForm other = magma(size, relabel(table, arg.vector, true));
+			if( !form.equals(other) || form.getHash() != other.getHash()
+				|| !Arrays.equals(form.getCertificate(), other.getCertificate()) )
+				throw new IllegalStateException("relabeling changes the canonical form");
+		} while( arg.next() );
+	}
+
+	public static void main(String[] args)
+	{
+		if( countClasses(1, true) != 1 || countClasses(2, true) != 10
+			|| countClasses(3, true) != 3330 )
+			throw new IllegalStateException("incorrect number of magmas");
+
+		if( countClasses(1, false) != 2 || countClasses(2, false) != 10
+			|| countClasses(3, false) != 104 || countClasses(4, false) != 3044 )
+			throw new IllegalStateException("incorrect number of digraphs");
+
+		Random random = new Random(1);
+		for(int i = 0; i < 20; ++i)
+			testRelabeling(random, 2 + random.nextInt(4));
+
+		System.out.println("test passed");
+	}
+}
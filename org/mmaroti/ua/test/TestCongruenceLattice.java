@@ -0,0 +1,285 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.test;
+
+import java.util.*;
+
+import mmaroti.ua.alg.*;
+
+/**
+ * Compares the congruence lattices of small random algebras with the
+ * compatible partitions found by brute force, and checks the lattice
+ * operations and properties against their definitions.
+ */
+public class TestCongruenceLattice
+{
+	/**
+	 * The number of partitions of an <code>n</code>-element set.
+	 */
+	static final int[] BELL = { 1, 1, 2, 5, 15, 52, 203 };
+
+	static void partitions(int[] rgs, int index, int blocks, List<Equivalence> list)
+	{
+		if( index == rgs.length )
+		{
+			Equivalence equ = Equivalence.zero(rgs.length);
+			for(int i = 0; i < rgs.length; ++i)
+				for(int j = 0; j < i; ++j)
+					if( rgs[i] == rgs[j] )
+						equ.join(i, j);
+
+			list.add(equ);
+			return;
+		}
+
+		for(int b = 0; b <= blocks; ++b)
+		{
+			rgs[index] = b;
+			partitions(rgs, index + 1, Math.max(blocks, b + 1), list);
+		}
+	}
+
+	/**
+	 * Returns all partitions of the given set by enumerating the restricted
+	 * growth strings.
+	 */
+	public static List<Equivalence> partitions(int size)
+	{
+		List<Equivalence> list = new ArrayList<Equivalence>();
+		partitions(new int[size], 0, 0, list);
+		return list;
+	}
+
+	/**
+	 * Returns <code>true</code> if every operation preserves the partition
+	 * when a single argument is changed within its block.
+	 */
+	public static boolean isCongruence(Algebra algebra, Equivalence equ)
+	{
+		int size = algebra.size();
+		Function[] ops = algebra.operations();
+
+		for(int i = 0; i < ops.length; ++i)
+		{
+			Function op = ops[i];
+			int arity = op.arity();
+			int[] args = new int[arity];
+			int[] other = new int[arity];
+
+			int count = FunctionBuffer.power(size, arity);
+			for(int p = 0; p < count; ++p)
+			{
+				int q = p;
+				for(int j = 0; j < arity; ++j)
+				{
+					args[j] = q % size;
+					q /= size;
+				}
+
+				int value = op.value(args);
+				for(int j = 0; j < arity; ++j)
+					for(int b = 0; b < size; ++b)
+						if( equ.related(args[j], b) )
+						{
+							System.arraycopy(args, 0, other, 0, arity);
+							other[j] = b;
+							if( !equ.related(value, op.value(other)) )
+								return false;
+						}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a random algebra. If <code>blocks</code> is less than the size,
+	 * then the operations are compatible with a random partition with that
+	 * many blocks, so the algebra has nontrivial congruences.
+	 */
+	public static Algebra randomAlgebra(Random random, int size, int[] arities, int blocks)
+	{
+		int[] block = new int[size];
+		for(int i = 0; i < size; ++i)
+			block[i] = i < blocks ? i : random.nextInt(blocks);
+
+		Function[] ops = new Function[arities.length];
+		for(int i = 0; i < ops.length; ++i)
+		{
+			int arity = arities[i];
+			int[] factor = new int[FunctionBuffer.power(blocks, arity)];
+			for(int q = 0; q < factor.length; ++q)
+				factor[q] = random.nextInt(blocks);
+
+			FunctionBuffer op = new FunctionBuffer(size, arity);
+			int[] buffer = op.buffer();
+			for(int p = 0; p < buffer.length; ++p)
+			{
+				int q = 0;
+				for(int r = p, j = 0; j < arity; ++j, r /= size)
+					q = q * blocks + block[r % size];
+
+				int a;
+				do
+				{
+					a = random.nextInt(size);
+				} while( block[a] != factor[q] );
+
+				buffer[p] = a;
+			}
+
+			ops[i] = op;
+		}
+
+		return new AlgebraBuffer(size, ops, new Function[0]);
+	}
+
+	public static void test(Algebra algebra)
+	{
+		CongruenceLattice lattice = new CongruenceLattice(algebra);
+
+		List<Equivalence> congruences = new ArrayList<Equivalence>();
+		Iterator<Equivalence> iter = partitions(algebra.size()).iterator();
+		while( iter.hasNext() )
+		{
+			Equivalence equ = iter.next();
+			int index = lattice.indexOf(equ);
+
+			if( isCongruence(algebra, equ) )
+			{
+				if( index < 0 || !lattice.get(index).equals(equ) )
+					throw new IllegalStateException("congruence is not found");
+
+				congruences.add(equ);
+			}
+			else if( index >= 0 )
+				throw new IllegalStateException("not a congruence is found");
+		}
+
+		int size = lattice.size();
+		if( size != congruences.size() )
+			throw new IllegalStateException("incorrect number of congruences");
+
+		if( !lattice.get(lattice.zero()).isZero() || !lattice.get(lattice.one()).isOne() )
+			throw new IllegalStateException("incorrect bounds");
+
+		int[][] joins = lattice.joinTable();
+		int[][] meets = lattice.meetTable();
+
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+			{
+				Equivalence x = lattice.get(a);
+				Equivalence y = lattice.get(b);
+				Equivalence meet = Equivalence.meet(x, y);
+
+				if( !lattice.get(meets[a][b]).equals(meet) )
+					throw new IllegalStateException("incorrect meet");
+
+				if( !lattice.get(joins[a][b]).equals(Equivalence.join(x, y)) )
+					throw new IllegalStateException("incorrect join");
+
+				if( lattice.leq(a, b) != meet.equals(x) )
+					throw new IllegalStateException("incorrect order");
+			}
+
+		Set<Integer> irreducibles = new HashSet<Integer>();
+		for(int a = 0; a < size; ++a)
+		{
+			int covers = 0;
+			for(int b = 0; b < size; ++b)
+				if( lattice.covers(b, a) != isCover(lattice, b, a) )
+					throw new IllegalStateException("incorrect cover");
+				else if( lattice.covers(b, a) )
+					++covers;
+
+			if( covers != lattice.lowerCovers(a).length )
+				throw new IllegalStateException("incorrect lower covers");
+
+			if( covers == 1 )
+				irreducibles.add(a);
+		}
+
+		Set<Integer> found = new HashSet<Integer>();
+		int[] list = lattice.joinIrreducibles();
+		for(int i = 0; i < list.length; ++i)
+			found.add(list[i]);
+
+		if( !found.equals(irreducibles) )
+			throw new IllegalStateException("incorrect join irreducibles");
+
+		boolean modular = true;
+		boolean distributive = true;
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+				for(int c = 0; c < size; ++c)
+				{
+					if( lattice.leq(a, c) && joins[a][meets[b][c]] != meets[joins[a][b]][c] )
+						modular = false;
+
+					if( meets[a][joins[b][c]] != joins[meets[a][b]][meets[a][c]] )
+						distributive = false;
+				}
+
+		if( lattice.isModular() != modular )
+			throw new IllegalStateException("incorrect modularity");
+
+		if( lattice.isDistributive() != distributive )
+			throw new IllegalStateException("incorrect distributivity");
+	}
+
+	static boolean isCover(CongruenceLattice lattice, int a, int b)
+	{
+		if( a == b || !lattice.leq(a, b) )
+			return false;
+
+		for(int c = 0; c < lattice.size(); ++c)
+			if( c != a && c != b && lattice.leq(a, c) && lattice.leq(c, b) )
+				return false;
+
+		return true;
+	}
+
+	public static void main(String[] args)
+	{
+		for(int size = 1; size < BELL.length; ++size)
+		{
+			if( partitions(size).size() != BELL[size] )
+				throw new IllegalStateException("incorrect number of partitions");
+
+			Algebra set = new AlgebraBuffer(size);
+			if( new CongruenceLattice(set).size() != BELL[size] )
+				throw new IllegalStateException("incorrect congruence lattice of a set");
+
+			test(set);
+		}
+
+		int[][] arities = { { 1 }, { 1, 1 }, { 2 }, { 1, 2 }, { 3 } };
+
+		Random random = new Random(1);
+		for(int i = 0; i < 1000; ++i)
+		{
+			int size = 2 + random.nextInt(4);
+			int blocks = 1 + random.nextInt(size);
+			test(randomAlgebra(random, size, arities[i % arities.length], blocks));
+		}
+
+		System.out.println("test passed");
+	}
+}
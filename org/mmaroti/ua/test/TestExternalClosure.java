@@ -0,0 +1,296 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.test;
+
+import java.io.*;
+import java.util.*;
+
+import mmaroti.ua.alg.*;
+
+/**
+ * Compares the levels computed by {@link ExternalClosure} with a breadth
+ * first search in memory. The sort buffers are small, so the candidates of
+ * most levels are spilled in many runs, and the larger levels are merged in
+ * several passes.
+ */
+public class TestExternalClosure
+{
+	static Function randomFunction(Random random, int size, int arity)
+	{
+		FunctionBuffer op = new FunctionBuffer(size, arity);
+		int[] buffer = op.buffer();
+		for(int i = 0; i < buffer.length; ++i)
+			buffer[i] = random.nextInt(size);
+
+		return op;
+	}
+
+	/**
+	 * Creates a list of random algebras with a binary and a unary operation,
+	 * and sometimes a constant.
+	 */
+	public static List<Algebra> randomAlgebras(Random random, int count, int maxSize, boolean constant)
+	{
+		List<Algebra> algebras = new ArrayList<Algebra>();
+		for(int i = 0; i < count; ++i)
+		{
+			int size = 2 + random.nextInt(maxSize - 1);
+			Function[] ops = constant ? new Function[3] : new Function[2];
+
+			ops[0] = randomFunction(random, size, 2);
+			ops[1] = randomFunction(random, size, 1);
+			if( constant )
+				ops[2] = randomFunction(random, size, 0);
+
+			algebras.add(new AlgebraBuffer(size, ops, new Function[0]));
+		}
+
+		return algebras;
+	}
+
+	/**
+	 * Creates algebras of size <code>100000</code>, whose tuples do not fit
+	 * into a single word. The unary operation maps into a small set and the
+	 * binary one is the minimum, so the generated subuniverses stay small.
+	 */
+	public static List<Algebra> wideAlgebras(Random random, int count)
+	{
+		final int size = 100000;
+
+		Function min = new Function()
+		{
+			public int arity()
+			{
+				return 2;
+			}
+
+			public int size()
+			{
+				return size;
+			}
+
+			public int value(int[] args)
+			{
+				return Math.min(args[0], args[1]);
+			}
+		};
+
+		List<Algebra> algebras = new ArrayList<Algebra>();
+		for(int i = 0; i < count; ++i)
+		{
+			FunctionBuffer unary = new FunctionBuffer(size, 1);
+			int[] buffer = unary.buffer();
+			for(int a = 0; a < size; ++a)
+				buffer[a] = size - 1 - random.nextInt(3);
+
+			algebras.add(new AlgebraBuffer(size, new Function[] { min, unary }, new Function[0]));
+		}
+
+		return algebras;
+	}
+
+	static List<Integer> randomTuple(Random random, List<Algebra> algebras)
+	{
+		List<Integer> tuple = new ArrayList<Integer>();
+		for(int i = 0; i < algebras.size(); ++i)
+			tuple.add(random.nextInt(algebras.get(i).size()));
+
+		return tuple;
+	}
+
+	static List<Integer> apply(List<Algebra> algebras, int op, List<List<Integer>> args)
+	{
+		List<Integer> value = new ArrayList<Integer>();
+		int[] coords = new int[args.size()];
+
+		for(int i = 0; i < algebras.size(); ++i)
+		{
+			for(int k = 0; k < coords.length; ++k)
+				coords[k] = args.get(k).get(i);
+
+			value.add(algebras.get(i).operations()[op].value(coords));
+		}
+
+		return value;
+	}
+
+	/**
+	 * Returns the levels of the generated subuniverse by a breadth first
+	 * search, each level as a set of tuples.
+	 */
+	public static List<Set<List<Integer>>> levels(List<Algebra> algebras, List<List<Integer>> generators)
+	{
+		Function[] ops = algebras.get(0).operations();
+
+		Set<List<Integer>> level = new HashSet<List<Integer>>(generators);
+		for(int op = 0; op < ops.length; ++op)
+			if( ops[op].arity() == 0 )
+				level.add(apply(algebras, op, new ArrayList<List<Integer>>()));
+
+		List<Set<List<Integer>>> levels = new ArrayList<Set<List<Integer>>>();
+		Set<List<Integer>> all = new HashSet<List<Integer>>();
+
+		while( !level.isEmpty() )
+		{
+			levels.add(level);
+			all.addAll(level);
+
+			List<List<Integer>> elements = new ArrayList<List<Integer>>(all);
+			Set<List<Integer>> next = new HashSet<List<Integer>>();
+
+			for(int op = 0; op < ops.length; ++op)
+			{
+				int arity = ops[op].arity();
+				if( arity == 0 )
+					continue;
+
+				int[] indices = new int[arity];
+				List<List<Integer>> args = new ArrayList<List<Integer>>();
+				for(;;)
+				{
+					args.clear();
+					boolean fresh = false;
+					for(int k = 0; k < arity; ++k)
+					{
+						List<Integer> arg = elements.get(indices[k]);
+						fresh |= level.contains(arg);
+						args.add(arg);
+					}
+
+					if( fresh )
+					{
+						List<Integer> value = apply(algebras, op, args);
+						if( !all.contains(value) )
+							next.add(value);
+					}
+
+					int k = arity;
+					while( --k >= 0 && ++indices[k] >= elements.size() )
+						indices[k] = 0;
+
+					if( k < 0 )
+						break;
+				}
+			}
+
+			level = next;
+		}
+
+		return levels;
+	}
+
+	static int compare(int[] a, int[] b)
+	{
+		for(int i = 0; i < a.length; ++i)
+			if( a[i] != b[i] )
+				return a[i] < b[i] ? -1 : 1;
+
+		return 0;
+	}
+
+	public static void test(List<Algebra> algebras, List<List<Integer>> generators, int bufferSize)
+		throws IOException
+	{
+		List<Set<List<Integer>>> expected = levels(algebras, generators);
+
+		File directory = File.createTempFile("closure", "");
+		if( !directory.delete() || !directory.mkdir() )
+			throw new IOException("could not create the temporary directory");
+
+		ExternalClosure closure = new ExternalClosure(algebras, generators, directory, bufferSize);
+		long size = closure.generate();
+
+		// the last level is always empty
+		if( closure.levelCount() != expected.size() + 1 )
+			throw new IllegalStateException("incorrect number of levels");
+
+		long index = 0;
+		int[] coords = new int[algebras.size()];
+		int[] last = new int[algebras.size()];
+
+		for(int level = 0; level < expected.size(); ++level)
+		{
+			Set<List<Integer>> elements = expected.get(level);
+			if( closure.levelElements(level) != elements.size() )
+				throw new IllegalStateException("incorrect level size");
+
+			for(int i = 0; i < elements.size(); ++i)
+			{
+				closure.getElement(index++, coords);
+
+				List<Integer> tuple = new ArrayList<Integer>();
+				for(int j = 0; j < coords.length; ++j)
+					tuple.add(coords[j]);
+
+				if( !elements.contains(tuple) )
+					throw new IllegalStateException("incorrect element");
+
+				if( i > 0 && compare(last, coords) >= 0 )
+					throw new IllegalStateException("the level is not sorted");
+
+				System.arraycopy(coords, 0, last, 0, coords.length);
+			}
+		}
+
+		if( index != size || closure.size() != size )
+			throw new IllegalStateException("incorrect size");
+
+		ComplexProdAlgebra complex = new ComplexProdAlgebra(algebras);
+		DecisionDiagram.Node universe = closure.toUniverse(complex);
+		if( universe.count != size )
+			throw new IllegalStateException("incorrect universe");
+
+		closure.delete();
+		if( !directory.delete() )
+			throw new IllegalStateException("temporary files are left");
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		Random random = new Random(1);
+
+		for(int i = 0; i < 60; ++i)
+		{
+			List<Algebra> algebras = randomAlgebras(random, 2 + random.nextInt(3), 4, i % 3 == 0);
+
+			List<List<Integer>> generators = new ArrayList<List<Integer>>();
+			int count = 1 + random.nextInt(3);
+			for(int j = 0; j < count; ++j)
+				generators.add(randomTuple(random, algebras));
+
+			test(algebras, generators, 32 << random.nextInt(3));
+		}
+
+		for(int i = 0; i < 5; ++i)
+		{
+			List<Algebra> algebras = wideAlgebras(random, 4);
+
+			List<List<Integer>> generators = new ArrayList<List<Integer>>();
+			for(int j = 0; j < 3; ++j)
+				generators.add(randomTuple(random, algebras));
+
+			test(algebras, generators, 1 + random.nextInt(8));
+		}
+
+		// an empty generating set without constants
+		test(randomAlgebras(random, 2, 3, false), new ArrayList<List<Integer>>(), 4);
+
+		System.out.println("test passed");
+	}
+}
@@ -0,0 +1,343 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.test;
+
+import java.math.BigInteger;
+import java.util.*;
+
+import org.mmaroti.ua.util.Arrays;
+import org.mmaroti.ua.util.CanonicalForm;
+import org.mmaroti.ua.util.PermArgument;
+import org.mmaroti.ua.util.PermutationGroup;
+
+/**
+ * Compares the permutation groups computed by the Schreier-Sims algorithm
+ * with the groups generated by brute force, and with the automorphism groups
+ * of random magmas found by checking every permutation.
+ */
+public class TestPermutationGroup
+{
+	/**
+	 * Encodes the permutation as an integer, which fits for degrees up to
+	 * <code>10</code>.
+	 */
+	static int encode(int[] perm)
+	{
+		int code = 0;
+		for(int i = perm.length - 1; i >= 0; --i)
+			code = code * perm.length + perm[i];
+
+		return code;
+	}
+
+	/**
+	 * Returns the codes of the elements of the group generated by the given
+	 * permutations by a breadth first search.
+	 */
+	public static Set<Integer> generate(int degree, List<int[]> generators)
+	{
+		int[] identity = new int[degree];
+		for(int i = 0; i < degree; ++i)
+			identity[i] = i;
+
+		Set<Integer> elements = new HashSet<Integer>();
+		LinkedList<int[]> queue = new LinkedList<int[]>();
+
+		elements.add(encode(identity));
+		queue.add(identity);
+
+		while( !queue.isEmpty() )
+		{
+			int[] perm = queue.removeFirst();
+
+			Iterator<int[]> iter = generators.iterator();
+			while( iter.hasNext() )
+			{
+				int[] gen = iter.next();
+				int[] product = new int[degree];
+				for(int i = 0; i < degree; ++i)
+					product[i] = gen[perm[i]];
+
+				if( elements.add(encode(product)) )
+					queue.add(product);
+			}
+		}
+
+		return elements;
+	}
+
+	static int[] randomPerm(Random random, int degree)
+	{
+		int[] perm = new int[degree];
+		for(int i = 0; i < degree; ++i)
+		{
+			int j = random.nextInt(i + 1);
+			perm[i] = perm[j];
+			perm[j] = i;
+		}
+
+		return perm;
+	}
+
+	/**
+	 * Returns a random permutation, a transposition or a cycle, so that
+	 * small subgroups are generated as well.
+	 */
+	static int[] randomGenerator(Random random, int degree)
+	{
+		int kind = random.nextInt(3);
+		if( kind == 0 )
+			return randomPerm(random, degree);
+
+		int[] perm = new int[degree];
+		for(int i = 0; i < degree; ++i)
+			perm[i] = i;
+
+		if( kind == 1 )
+		{
+			int a = random.nextInt(degree);
+			int b = random.nextInt(degree);
+			perm[a] = b;
+			perm[b] = a;
+		}
+		else
+		{
+			int length = 1 + random.nextInt(degree);
+			for(int i = 0; i < length; ++i)
+				perm[i] = (i + 1) % length;
+		}
+
+		return perm;
+	}
+
+	/**
+	 * Checks the order, the membership test, the orbits and the stabilizers
+	 * against the brute force closure of the generators.
+	 */
+	public static void test(int degree, List<int[]> generators)
+	{
+		PermutationGroup group = new PermutationGroup(degree, generators);
+		Set<Integer> elements = generate(degree, generators);
+
+		if( !group.getOrder().equals(BigInteger.valueOf(elements.size())) )
+			throw new IllegalStateException("incorrect order");
+
+		if( !generate(degree, group.getGenerators()).equals(elements) )
+			throw new IllegalStateException("the generators generate another group");
+
+		int[] orbitSizes = new int[degree];
+		int[] stabilizerSizes = new int[degree];
+
+		PermArgument arg = new PermArgument(degree);
+		if( arg.reset() ) do
+		{
+			int[] perm = arg.vector;
+			boolean member = elements.contains(encode(perm));
+
+			if( group.contains(perm) != member )
+				throw new IllegalStateException("incorrect membership");
+
+			if( member )
+				for(int i = 0; i < degree; ++i)
+					if( perm[i] == i )
+						++stabilizerSizes[i];
+		} while( arg.next() );
+
+		for(int i = 0; i < degree; ++i)
+		{
+			orbitSizes[i] = group.getOrbit(i).length;
+
+			if( !group.getStabilizer(i).getOrder().equals(BigInteger.valueOf(stabilizerSizes[i])) )
+				throw new IllegalStateException("incorrect stabilizer");
+
+			if( orbitSizes[i] * stabilizerSizes[i] != elements.size() )
+				throw new IllegalStateException("incorrect orbit");
+		}
+	}
+
+	static int[] table(int size, int[] table, int[] perm)
+	{
+		int[] result = new int[table.length];
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+				result[perm[a] * size + perm[b]] = perm[table[a * size + b]];
+
+		return result;
+	}
+
+	/**
+	 * Returns a random binary operation that has the given permutation as an
+	 * automorphism. The pairs are visited along their orbits, and the value
+	 * of the first pair of an orbit of length <code>k</code> is chosen from
+	 * the elements whose orbits have length dividing <code>k</code>.
+	 */
+	static int[] invariantTable(Random random, int[] perm)
+	{
+		int size = perm.length;
+		int[] table = new int[size * size];
+		for(int i = 0; i < table.length; ++i)
+			table[i] = -1;
+
+		int[] cycles = new int[size];
+		for(int a = 0; a < size; ++a)
+		{
+			int b = perm[a];
+			cycles[a] = 1;
+			while( b != a )
+			{
+				b = perm[b];
+				++cycles[a];
+			}
+		}
+
+		for(int a = 0; a < size; ++a)
+			for(int b = 0; b < size; ++b)
+				if( table[a * size + b] < 0 )
+				{
+					int length = 1;
+					for(int x = perm[a], y = perm[b]; x != a || y != b; x = perm[x], y = perm[y])
+						++length;
+
+					int value;
+					do
+					{
+						value = random.nextInt(size);
+					} while( length % cycles[value] != 0 );
+
+					for(int x = a, y = b, i = 0; i < length; ++i)
+					{
+						table[x * size + y] = value;
+						x = perm[x];
+						y = perm[y];
+						value = perm[value];
+					}
+				}
+
+		return table;
+	}
+
+	/**
+	 * Checks that the automorphisms found by the canonical form generate the
+	 * whole automorphism group of a random magma. Most magmas are built to
+	 * be invariant under a random permutation, so that the groups are not
+	 * trivial.
+	 */
+	public static void testAutomorphisms(Random random, int size)
+	{
+		int[] table;
+		if( random.nextInt(4) == 0 )
+		{
+			table = new int[size * size];
+			for(int i = 0; i < table.length; ++i)
+				table[i] = random.nextInt(size);
+		}
+		else
+			table = invariantTable(random, randomGenerator(random, size));
+
+		CanonicalForm form = new CanonicalForm(size, new int[] { 2 },
+			new int[][] { table }, new int[0], new int[0][]);
+		PermutationGroup group = new PermutationGroup(size, form.getAutomorphisms());
+
+		int count = 0;
+		PermArgument arg = new PermArgument(size);
+		if( arg.reset() ) do
+		{
+			boolean automorphism = Arrays.equals(table(size, table, arg.vector), table);
+			if( automorphism )
+				++count;
+
+			if( group.contains(arg.vector) != automorphism )
+				throw new IllegalStateException("incorrect automorphism group");
+		} while( arg.next() );
+
+		if( !group.getOrder().equals(BigInteger.valueOf(count)) )
+			throw new IllegalStateException("incorrect order of the automorphism group");
+	}
+
+	/**
+	 * Checks the orders of the symmetric and alternating groups, generated by
+	 * a transposition and a cycle, and by the 3-cycles through two points.
+	 */
+	public static void testSymmetric(int degree)
+	{
+		BigInteger factorial = BigInteger.ONE;
+		for(int i = 2; i <= degree; ++i)
+			factorial = factorial.multiply(BigInteger.valueOf(i));
+
+		List<int[]> symmetric = new ArrayList<int[]>();
+		List<int[]> alternating = new ArrayList<int[]>();
+
+		int[] cycle = new int[degree];
+		for(int i = 0; i < degree; ++i)
+			cycle[i] = (i + 1) % degree;
+		symmetric.add(cycle);
+
+		if( degree >= 2 )
+		{
+			int[] transposition = new int[degree];
+			for(int i = 0; i < degree; ++i)
+				transposition[i] = i;
+			transposition[0] = 1;
+			transposition[1] = 0;
+			symmetric.add(transposition);
+		}
+
+		for(int c = 2; c < degree; ++c)
+		{
+			int[] perm = new int[degree];
+			for(int i = 0; i < degree; ++i)
+				perm[i] = i;
+			perm[0] = 1;
+			perm[1] = c;
+			perm[c] = 0;
+			alternating.add(perm);
+		}
+
+		if( !new PermutationGroup(degree, symmetric).getOrder().equals(factorial) )
+			throw new IllegalStateException("incorrect order of the symmetric group");
+
+		BigInteger order = degree >= 2 ? factorial.shiftRight(1) : BigInteger.ONE;
+		if( !new PermutationGroup(degree, alternating).getOrder().equals(order) )
+			throw new IllegalStateException("incorrect order of the alternating group");
+	}
+
+	public static void main(String[] args)
+	{
+		for(int degree = 1; degree <= 40; ++degree)
+			testSymmetric(degree);
+
+		Random random = new Random(1);
+		for(int i = 0; i < 500; ++i)
+		{
+			int degree = 1 + random.nextInt(7);
+			List<int[]> generators = new ArrayList<int[]>();
+
+			int count = random.nextInt(4);
+			for(int j = 0; j < count; ++j)
+				generators.add(randomGenerator(random, degree));
+
+			test(degree, generators);
+		}
+
+		for(int i = 0; i < 500; ++i)
+			testAutomorphisms(random, 1 + random.nextInt(6));
+
+		System.out.println("test passed");
+	}
+}
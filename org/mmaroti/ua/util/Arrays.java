@@ -46,6 +46,26 @@ public class Arrays
 		return true;
 	}
 	
+	/**
+	 * Returns <code>true</code> if the two arrays have the same length 
+	 * and the same entries.
+	 */
+	public static boolean equals(int[] a, int[] b)
+	{
+		if( a == null || b == null )
+			return a == b;
+		
+		int i = a.length;
+		if( i != b.length )
+			return false;
+		
+		while( --i >= 0 )
+			if( a[i] != b[i] )
+				return false;
+		
+		return true;
+	}
+	
 	/**
 	 * Calculates the hashcode from the list of integers.
 	 * This method is based on the code of Daniel Phillips 
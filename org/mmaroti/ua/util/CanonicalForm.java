@@ -0,0 +1,483 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.util;
+
+import static java.util.Arrays.copyOfRange;
+import static java.util.Arrays.fill;
+import static java.util.Arrays.sort;
+
+import java.util.*;
+import java.util.Comparator;
+
+/**
+ * The canonical form of a finite structure given by the tables of its
+ * operations and relations. The tables are indexed as operation tables: the
+ * first argument is the most significant. Two structures have equal canonical
+ * forms if and only if they are isomorphic.
+ * <p>
+ * The canonical labeling is found by individualization and refinement. The
+ * elements are colored, and the colors are refined by the colors of the
+ * tuples the elements occur in until the partition is stable. If it is not
+ * discrete, then every element of the first largest cell is
+ * individualized in turn. Every discrete partition is a labeling, and the
+ * canonical one produces the least relabeled table. Two labelings producing
+ * the same tables differ by an automorphism. These automorphisms are kept,
+ * and a child of a node is skipped if it is in the orbit of an earlier child
+ * under the automorphisms fixing the individualized elements.
+ *
+ * @author mmaroti@math.u-szeged.hu
+ */
+public class CanonicalForm {
+	/**
+	 * Computes the canonical form of the structure with the given operation
+	 * and relation tables. The values of the relation tables are not
+	 * elements, so they are not relabeled.
+	 */
+	public CanonicalForm(int size, int[] opArities, int[][] opTables,
+			int[] relArities, int[][] relTables) {
+		if (size <= 0 || opArities.length != opTables.length
+				|| relArities.length != relTables.length)
+			throw new IllegalArgumentException();
+
+		this.size = size;
+		this.arities = new int[opArities.length + relArities.length];
+		this.tables = new int[arities.length][];
+		this.opCount = opArities.length;
+
+		for (int i = 0; i < arities.length; ++i) {
+			arities[i] = i < opCount ? opArities[i] : relArities[i - opCount];
+			tables[i] = i < opCount ? opTables[i] : relTables[i - opCount];
+
+			if (tables[i].length != power(size, arities[i]))
+				throw new IllegalArgumentException("invalid table size");
+		}
+
+		for (int i = 0; i < opCount; ++i)
+			for (int a : tables[i])
+				if (a < 0 || a >= size)
+					throw new IllegalArgumentException("invalid table entry");
+
+		int[] colors = new int[size];
+		search(colors, new int[0]);
+
+		tables = null;
+	}
+
+	protected final int size;
+	protected final int[] arities;
+	protected final int opCount;
+	protected int[][] tables;
+
+	protected static int power(int base, int exp) {
+		long a = 1;
+		while (--exp >= 0) {
+			a *= base;
+			if (a > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("the table is too large");
+		}
+
+		return (int) a;
+	}
+
+	/**
+	 * Returns the size of the structure.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	protected static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Replaces the colors by their ranks in the order of the colors and then
+	 * of the keys, and returns the number of distinct colors.
+	 */
+	protected int rank(int[] colors, long[] keys) {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; ++i)
+			order[i] = i;
+
+		final int[] c = colors;
+		final long[] k = keys;
+		sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int x = a.intValue();
+				int y = b.intValue();
+
+				if (c[x] != c[y])
+					return c[x] < c[y] ? -1 : 1;
+				if (k[x] != k[y])
+					return k[x] < k[y] ? -1 : 1;
+				return 0;
+			}
+		});
+
+		int[] ranks = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; ++i) {
+			int x = order[i].intValue();
+			if (i > 0) {
+				int y = order[i - 1].intValue();
+				if (c[x] != c[y] || k[x] != k[y])
+					++count;
+			}
+			ranks[x] = count;
+		}
+
+		System.arraycopy(ranks, 0, colors, 0, size);
+		return count + 1;
+	}
+
+	/**
+	 * Refines the coloring until it is stable, and returns the number of
+	 * colors. The refined colors depend only on the old colors and the
+	 * tables, so the refinement commutes with the isomorphisms.
+	 */
+	protected int refine(int[] colors) {
+		int count = rank(colors, new long[size]);
+		long[] keys = new long[size];
+
+		while (count < size) {
+			fill(keys, 0);
+
+			for (int t = 0; t < tables.length; ++t) {
+				int[] table = tables[t];
+				int arity = arities[t];
+				boolean op = t < opCount;
+				int[] args = new int[arity];
+
+				for (int pos = 0; pos < table.length; ++pos) {
+					// the colors and the equality pattern of the tuple
+					long h = mix(t + 1);
+					for (int i = 0; i < arity; ++i)
+						h = mix(h + ((long) colors[args[i]] << 32)
+								+ first(args, i, args[i]));
+
+					int value = table[pos];
+					if (op)
+						h = mix(h + ((long) colors[value] << 32)
+								+ first(args, arity, value));
+					else
+						h = mix(h + value);
+
+					for (int i = 0; i < arity; ++i)
+						keys[args[i]] += mix(h + i + 1);
+					if (op)
+						keys[value] += mix(h);
+
+					int i = arity;
+					while (--i >= 0 && ++args[i] >= size)
+						args[i] = 0;
+				}
+			}
+
+			int c = rank(colors, keys);
+			if (c == count)
+				break;
+
+			count = c;
+		}
+
+		return count;
+	}
+
+	private static int first(int[] args, int end, int a) {
+		int i = 0;
+		while (i < end && args[i] != a)
+			++i;
+		return i;
+	}
+
+	protected int[] bestLabeling;
+	protected int[] bestCertificate;
+	protected int[] firstLabeling;
+	protected int[] firstCertificate;
+	protected List<int[]> automorphisms = new ArrayList<int[]>();
+	protected int leafCount;
+
+	protected void search(int[] colors, int[] prefix) {
+		int count = refine(colors);
+		if (count == size) {
+			leaf(colors);
+			return;
+		}
+
+		// the first largest cell
+		int[] sizes = new int[count];
+		for (int i = 0; i < size; ++i)
+			++sizes[colors[i]];
+
+		int cell = 0;
+		for (int i = 1; i < count; ++i)
+			if (sizes[i] > sizes[cell])
+				cell = i;
+
+		int[] child = new int[prefix.length + 1];
+		System.arraycopy(prefix, 0, child, 0, prefix.length);
+
+		List<Integer> explored = new ArrayList<Integer>();
+		int[] orbits = null;
+		int known = -1;
+
+		long[] keys = new long[size];
+		for (int v = 0; v < size; ++v) {
+			if (colors[v] != cell)
+				continue;
+
+			if (known != automorphisms.size()) {
+				known = automorphisms.size();
+				orbits = stabilizerOrbits(prefix);
+			}
+
+			boolean skip = false;
+			for (Integer w : explored)
+				if (orbits[w.intValue()] == orbits[v])
+					skip = true;
+
+			if (skip)
+				continue;
+
+			for (int i = 0; i < size; ++i)
+				keys[i] = colors[i] == cell && i != v ? 1 : 0;
+
+			int[] c = colors.clone();
+			rank(c, keys);
+
+			child[prefix.length] = v;
+			search(c, child);
+			explored.add(v);
+		}
+	}
+
+	/**
+	 * Returns the orbits, given by their least elements, of the group
+	 * generated by the automorphisms found so far that fix the given
+	 * elements.
+	 */
+	protected int[] stabilizerOrbits(int[] fixed) {
+		int[] orbits = new int[size];
+		for (int i = 0; i < size; ++i)
+			orbits[i] = i;
+
+		outer: for (int[] g : automorphisms) {
+			for (int a : fixed)
+				if (g[a] != a)
+					continue outer;
+
+			for (int i = 0; i < size; ++i) {
+				int a = find(orbits, i);
+				int b = find(orbits, g[i]);
+				if (a < b)
+					orbits[b] = a;
+				else if (b < a)
+					orbits[a] = b;
+			}
+		}
+
+		for (int i = 0; i < size; ++i)
+			orbits[i] = find(orbits, i);
+
+		return orbits;
+	}
+
+	private static int find(int[] parent, int a) {
+		while (parent[a] != a)
+			a = parent[a] = parent[parent[a]];
+		return a;
+	}
+
+	/**
+	 * Returns the tables relabeled by the given labeling, concatenated.
+	 */
+	protected int[] certificate(int[] labeling) {
+		int[] inverse = new int[size];
+		for (int i = 0; i < size; ++i)
+			inverse[labeling[i]] = i;
+
+		int length = 0;
+		for (int t = 0; t < tables.length; ++t)
+			length += tables[t].length;
+
+		int[] cert = new int[length];
+		int index = 0;
+
+		for (int t = 0; t < tables.length; ++t) {
+			int[] table = tables[t];
+			int arity = arities[t];
+			int[] args = new int[arity];
+			boolean op = t < opCount;
+
+			for (int pos = 0; pos < table.length; ++pos) {
+				int p = 0;
+				for (int i = 0; i < arity; ++i)
+					p = p * size + inverse[args[i]];
+
+				cert[index++] = op ? labeling[table[p]] : table[p];
+
+				int i = arity;
+				while (--i >= 0 && ++args[i] >= size)
+					args[i] = 0;
+			}
+		}
+
+		return cert;
+	}
+
+	protected static int compare(int[] a, int[] b) {
+		for (int i = 0; i < a.length; ++i)
+			if (a[i] != b[i])
+				return a[i] < b[i] ? -1 : 1;
+
+		return 0;
+	}
+
+	/**
+	 * Returns the automorphism mapping the element labeled by
+	 * <code>a</code> to the one labeled the same by <code>b</code>.
+	 */
+	protected int[] automorphism(int[] a, int[] b) {
+		int[] inverse = new int[size];
+		for (int i = 0; i < size; ++i)
+			inverse[b[i]] = i;
+
+		int[] g = new int[size];
+		for (int i = 0; i < size; ++i)
+			g[i] = inverse[a[i]];
+
+		return g;
+	}
+
+	protected void addAutomorphism(int[] g) {
+		for (int i = 0; i < size; ++i)
+			if (g[i] != i) {
+				automorphisms.add(g);
+				return;
+			}
+	}
+
+	protected void leaf(int[] labeling) {
+		++leafCount;
+		int[] cert = certificate(labeling);
+
+		if (firstCertificate == null) {
+			firstLabeling = labeling;
+			firstCertificate = cert;
+			bestLabeling = labeling;
+			bestCertificate = cert;
+			return;
+		}
+
+		if (compare(cert, firstCertificate) == 0) {
+			addAutomorphism(automorphism(firstLabeling, labeling));
+			return;
+		}
+
+		int c = compare(cert, bestCertificate);
+		if (c == 0)
+			addAutomorphism(automorphism(bestLabeling, labeling));
+		else if (c < 0) {
+			bestLabeling = labeling;
+			bestCertificate = cert;
+		}
+	}
+
+	/**
+	 * Returns the canonical labeling, which maps every element to its index
+	 * in the canonical form.
+	 */
+	public int[] getLabeling() {
+		return bestLabeling.clone();
+	}
+
+	/**
+	 * Returns the operation and relation tables relabeled by the canonical
+	 * labeling, concatenated in this order. The returned array must not be
+	 * modified.
+	 */
+	public int[] getCertificate() {
+		return bestCertificate;
+	}
+
+	/**
+	 * Returns the canonical table of the operation or relation with the given
+	 * index, where the relations are indexed after the operations.
+	 */
+	public int[] getTable(int index) {
+		int start = 0;
+		for (int t = 0; t < index; ++t)
+			start += power(size, arities[t]);
+
+		return copyOfRange(bestCertificate, start,
+				start + power(size, arities[index]));
+	}
+
+	/**
+	 * Returns a set of automorphisms generating the automorphism group. Every
+	 * automorphism maps the element <code>i</code> to <code>g[i]</code>.
+	 */
+	public List<int[]> getAutomorphisms() {
+		return Collections.unmodifiableList(automorphisms);
+	}
+
+	/**
+	 * Returns the number of leaves of the search tree, for statistics.
+	 */
+	public int getLeafCount() {
+		return leafCount;
+	}
+
+	/**
+	 * Returns a 64-bit hash of the canonical form.
+	 */
+	public long getHash() {
+		long h = mix(size);
+		for (int i = 0; i < arities.length; ++i)
+			h = mix(h + arities[i]);
+		for (int i = 0; i < bestCertificate.length; ++i)
+			h = mix(h + bestCertificate[i]);
+
+		return h;
+	}
+
+	public int hashCode() {
+		long h = getHash();
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Returns <code>true</code> if the other canonical form belongs to an
+	 * isomorphic structure.
+	 */
+	public boolean equals(Object other) {
+		if (!(other instanceof CanonicalForm))
+			return false;
+
+		CanonicalForm form = (CanonicalForm) other;
+		return size == form.size && opCount == form.opCount
+				&& Arrays.equals(arities, form.arities)
+				&& Arrays.equals(bestCertificate, form.bestCertificate);
+	}
+}
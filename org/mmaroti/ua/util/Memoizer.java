@@ -60,7 +60,12 @@ public final class Memoizer<T> {
 			if (this == other)
 				return true;
 
-			return comparator.equals(this.get(), other.get());
+			T a = this.get();
+			T b = other.get();
+			if (a == null || b == null)
+				return false;
+
+			return comparator.equals(a, b);
 		}
 	}
 
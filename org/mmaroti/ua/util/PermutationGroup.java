@@ -0,0 +1,426 @@
+/**
+ *	Copyright (C) Miklos Maroti, 2026
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package org.mmaroti.ua.util;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * A permutation group on the set <code>{0,...,degree-1}</code> given by a
+ * base and strong generating set computed with the Schreier-Sims algorithm.
+ * A permutation <code>g</code> maps the point <code>i</code> to
+ * <code>g[i]</code>, and the product <code>gh</code> first applies
+ * <code>g</code> and then <code>h</code>.
+ * <p>
+ * Level <code>i</code> of the stabilizer chain is the pointwise stabilizer
+ * of the first <code>i</code> base points. For every level we keep the
+ * strong generators in it, and for every point of the orbit of the next base
+ * point a permutation mapping the base point to it. The order, membership
+ * and the stabilizers of base prefixes are then read off the chain.
+ *
+ * @author mmaroti@math.u-szeged.hu
+ */
+public class PermutationGroup {
+	/**
+	 * Creates the permutation group generated by the given permutations.
+	 */
+	public PermutationGroup(int degree, Collection<int[]> generators) {
+		this(degree, generators, new int[0]);
+	}
+
+	/**
+	 * Creates the permutation group generated by the given permutations whose
+	 * base starts with the given points. The stabilizer of these points is
+	 * then available without further computation.
+	 */
+	public PermutationGroup(int degree, Collection<int[]> generators,
+			int[] base) {
+		if (degree < 0)
+			throw new IllegalArgumentException();
+
+		this.degree = degree;
+
+		identity = new int[degree];
+		for (int i = 0; i < degree; ++i)
+			identity[i] = i;
+
+		for (int b : base) {
+			if (b < 0 || b >= degree)
+				throw new IllegalArgumentException("invalid base point");
+			addLevel(b);
+		}
+
+		for (int[] g : generators) {
+			check(g);
+			if (!contains(g)) {
+				this.generators.add(g.clone());
+				extend(g);
+			}
+		}
+	}
+
+	protected final int degree;
+	protected final int[] identity;
+	protected final List<int[]> generators = new ArrayList<int[]>();
+
+	protected final List<Level> levels = new ArrayList<Level>();
+
+	protected class Level {
+		public final int base;
+		public final List<int[]> generators = new ArrayList<int[]>();
+
+		/**
+		 * The permutations mapping the base point to the points of its orbit,
+		 * or <code>null</code> for the points outside of the orbit.
+		 */
+		public final int[][] transversal = new int[degree][];
+
+		/**
+		 * The points of the orbit in the order they were found.
+		 */
+		public final int[] orbit = new int[degree];
+		public int orbitSize;
+
+		/**
+		 * The Schreier generators of the first <code>tested[k]</code> orbit
+		 * points and generator <code>k</code> are already in the next level.
+		 */
+		public int[] tested = new int[0];
+
+		public Level(int base) {
+			this.base = base;
+			transversal[base] = identity;
+			orbit[0] = base;
+			orbitSize = 1;
+		}
+
+		/**
+		 * Extends the orbit with the images under the given generator.
+		 */
+		public void addGenerator(int[] g) {
+			generators.add(g);
+			tested = java.util.Arrays.copyOf(tested, generators.size());
+
+			for (int head = 0; head < orbitSize; ++head) {
+				int p = orbit[head];
+				for (int[] s : generators) {
+					int q = s[p];
+					if (transversal[q] == null) {
+						transversal[q] = multiply(transversal[p], s);
+						orbit[orbitSize++] = q;
+					}
+				}
+			}
+		}
+	}
+
+	protected void check(int[] perm) {
+		if (perm.length != degree)
+			throw new IllegalArgumentException("invalid degree");
+
+		boolean[] seen = new boolean[degree];
+		for (int a : perm) {
+			if (a < 0 || a >= degree || seen[a])
+				throw new IllegalArgumentException("not a permutation");
+			seen[a] = true;
+		}
+	}
+
+	protected void addLevel(int base) {
+		for (Level level : levels)
+			if (level.base == base)
+				throw new IllegalArgumentException("repeated base point");
+
+		levels.add(new Level(base));
+	}
+
+	protected static int[] multiply(int[] g, int[] h) {
+		int[] p = new int[g.length];
+		for (int i = 0; i < p.length; ++i)
+			p[i] = h[g[i]];
+		return p;
+	}
+
+	protected static int[] inverse(int[] g) {
+		int[] p = new int[g.length];
+		for (int i = 0; i < p.length; ++i)
+			p[g[i]] = i;
+		return p;
+	}
+
+	protected boolean isIdentity(int[] g) {
+		for (int i = 0; i < degree; ++i)
+			if (g[i] != i)
+				return false;
+		return true;
+	}
+
+	protected int[] residue;
+
+	/**
+	 * Sifts the permutation through the levels starting at the given one,
+	 * sets the residue and returns the level where sifting stopped.
+	 */
+	protected int sift(int[] g, int level) {
+		for (; level < levels.size(); ++level) {
+			Level l = levels.get(level);
+			int[] u = l.transversal[g[l.base]];
+			if (u == null)
+				break;
+
+			g = multiply(g, inverse(u));
+		}
+
+		residue = g;
+		return level;
+	}
+
+	/**
+	 * Adds a new generator and restores the chain with the Schreier-Sims
+	 * algorithm. The levels below the one where a new strong generator is
+	 * added are always complete.
+	 */
+	protected void extend(int[] g) {
+		int i = sift(g, 0);
+		if (isIdentity(residue))
+			return;
+
+		i = addStrongGenerator(residue, i);
+
+		outer: while (i >= 0) {
+			Level l = levels.get(i);
+			for (int k = 0; k < l.generators.size(); ++k) {
+				int[] s = l.generators.get(k);
+
+				while (l.tested[k] < l.orbitSize) {
+					int p = l.orbit[l.tested[k]++];
+					int[] h = multiply(multiply(l.transversal[p], s),
+							inverse(l.transversal[s[p]]));
+
+					int j = sift(h, i + 1);
+					if (!isIdentity(residue)) {
+						i = addStrongGenerator(residue, j);
+						continue outer;
+					}
+				}
+			}
+
+			--i;
+		}
+	}
+
+	/**
+	 * Adds the strong generator to the levels up to <code>last</code>,
+	 * appending a new level if needed, and returns the last level.
+	 */
+	protected int addStrongGenerator(int[] g, int last) {
+		if (last == levels.size()) {
+			int b = 0;
+			while (g[b] == b)
+				++b;
+			addLevel(b);
+		}
+
+		for (int i = 0; i <= last; ++i)
+			levels.get(i).addGenerator(g);
+
+		return last;
+	}
+
+	/**
+	 * Returns the number of points the group acts on.
+	 */
+	public int getDegree() {
+		return degree;
+	}
+
+	/**
+	 * Returns a generating set of the group. The generators passed to the
+	 * constructor that are already in the group generated by the earlier
+	 * ones are omitted.
+	 */
+	public List<int[]> getGenerators() {
+		return Collections.unmodifiableList(generators);
+	}
+
+	/**
+	 * Returns the base points of the stabilizer chain.
+	 */
+	public int[] getBase() {
+		int[] base = new int[levels.size()];
+		for (int i = 0; i < base.length; ++i)
+			base[i] = levels.get(i).base;
+		return base;
+	}
+
+	/**
+	 * Returns the order of the group.
+	 */
+	public BigInteger getOrder() {
+		BigInteger order = BigInteger.ONE;
+		for (Level level : levels)
+			order = order.multiply(BigInteger.valueOf(level.orbitSize));
+		return order;
+	}
+
+	/**
+	 * Returns <code>true</code> if the permutation belongs to the group.
+	 */
+	public boolean contains(int[] perm) {
+		if (perm.length != degree)
+			throw new IllegalArgumentException("invalid degree");
+
+		sift(perm, 0);
+		boolean member = isIdentity(residue);
+		residue = null;
+		return member;
+	}
+
+	/**
+	 * Returns the orbit of the point in increasing order.
+	 */
+	public int[] getOrbit(int point) {
+		if (!levels.isEmpty() && levels.get(0).base == point) {
+			Level level = levels.get(0);
+			int[] orbit = java.util.Arrays.copyOf(level.orbit, level.orbitSize);
+			java.util.Arrays.sort(orbit);
+			return orbit;
+		}
+
+		boolean[] seen = new boolean[degree];
+		int[] queue = new int[degree];
+		int tail = 0;
+
+		seen[point] = true;
+		queue[tail++] = point;
+
+		for (int head = 0; head < tail; ++head)
+			for (int[] g : generators) {
+				int q = g[queue[head]];
+				if (!seen[q]) {
+					seen[q] = true;
+					queue[tail++] = q;
+				}
+			}
+
+		int[] orbit = java.util.Arrays.copyOf(queue, tail);
+		java.util.Arrays.sort(orbit);
+		return orbit;
+	}
+
+	/**
+	 * Returns the orbits of the group: every point is mapped to the least
+	 * point of its orbit.
+	 */
+	public int[] getOrbits() {
+		int[] orbits = new int[degree];
+		for (int i = 0; i < degree; ++i)
+			orbits[i] = i;
+
+		for (int[] g : generators)
+			for (int i = 0; i < degree; ++i) {
+				int a = find(orbits, i);
+				int b = find(orbits, g[i]);
+				if (a < b)
+					orbits[b] = a;
+				else if (b < a)
+					orbits[a] = b;
+			}
+
+		for (int i = 0; i < degree; ++i)
+			orbits[i] = find(orbits, i);
+
+		return orbits;
+	}
+
+	private static int find(int[] parent, int a) {
+		while (parent[a] != a)
+			a = parent[a] = parent[parent[a]];
+		return a;
+	}
+
+	/**
+	 * Returns the least points of the orbits in increasing order.
+	 */
+	public int[] getOrbitRepresentatives() {
+		int[] orbits = getOrbits();
+
+		int count = 0;
+		for (int i = 0; i < degree; ++i)
+			if (orbits[i] == i)
+				++count;
+
+		int[] reps = new int[count];
+		count = 0;
+		for (int i = 0; i < degree; ++i)
+			if (orbits[i] == i)
+				reps[count++] = i;
+
+		return reps;
+	}
+
+	/**
+	 * Returns the pointwise stabilizer of the given points.
+	 */
+	public PermutationGroup getStabilizer(int... points) {
+		int[] base = getBase();
+		boolean prefix = points.length <= base.length;
+		for (int i = 0; prefix && i < points.length; ++i)
+			prefix = base[i] == points[i];
+
+		PermutationGroup group = prefix ? this : new PermutationGroup(degree,
+				getStrongGenerators(), points);
+
+		List<int[]> gens = points.length < group.levels.size() ? group.levels
+				.get(points.length).generators : new ArrayList<int[]>();
+
+		return new PermutationGroup(degree, gens, java.util.Arrays
+				.copyOfRange(group.getBase(), points.length,
+						group.levels.size()));
+	}
+
+	/**
+	 * Returns the strong generating set of the group relative to the base.
+	 */
+	public List<int[]> getStrongGenerators() {
+		if (levels.isEmpty())
+			return new ArrayList<int[]>();
+
+		return Collections.unmodifiableList(levels.get(0).generators);
+	}
+
+	/**
+	 * Returns one pair from every orbit of the group on the pairs
+	 * <code>(a,b)</code> with <code>a != b</code>. The first coordinate is
+	 * the least point of its orbit, and the second is the least point of its
+	 * orbit under the stabilizer of the first.
+	 */
+	public List<int[]> getPairRepresentatives() {
+		List<int[]> pairs = new ArrayList<int[]>();
+
+		for (int a : getOrbitRepresentatives()) {
+			int[] orbits = getStabilizer(a).getOrbits();
+			for (int b = 0; b < degree; ++b)
+				if (b != a && orbits[b] == b)
+					pairs.add(new int[] { a, b });
+		}
+
+		return pairs;
+	}
+}